@@ -3,8 +3,11 @@ package com.example.proyectoparte1.configuration;
 import com.example.proyectoparte1.filter.AuthenticationFilter;
 import com.example.proyectoparte1.filter.AuthorizationFilter;
 import com.example.proyectoparte1.service.AuthenticationService;
+import com.example.proyectoparte1.service.LoginExecutor;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -58,15 +61,16 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http, AuthenticationManager authManager) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, AuthenticationManager authManager, MeterRegistry meterRegistry,
+                                                   LoginExecutor loginExecutor) throws Exception {
         http.cors().configurationSource(corsConfigurationSource())
                 .and()
                 .csrf().disable()
                 .authorizeHttpRequests(auth -> auth
                         .anyRequest().permitAll()
                 )
-                .addFilter(new AuthenticationFilter(authManager, tokenSignKey()))
-                .addFilter(new AuthorizationFilter(authManager, tokenSignKey()))
+                .addFilter(new AuthenticationFilter(authManager, tokenSignKey(), loginExecutor))
+                .addFilter(new AuthorizationFilter(authManager, tokenSignKey(), meterRegistry))
                 //No hacemos sesiones ya que usamos tokens en nuestra API, y asi no guardamos info en el server.
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 
@@ -85,9 +89,25 @@ public class SecurityConfiguration {
         return (web) -> web.expressionHandler(handler);
     }
 
+    /*El coste de bcrypt se configura con security.bcrypt.strength. Si una contraseña guardada tiene otro coste (mayor o
+     menor), al hacer login correctamente se vuelve a cifrar con el configurado: AuthenticationService implementa
+     UserDetailsPasswordService y Spring lo llama cuando upgradeEncoding devuelve true.*/
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int fuerza) {
+        return new BCryptPasswordEncoder(fuerza) {
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                //Los hashes de bcrypt tienen la forma $2a$10$..., con el coste en las posiciones 4 y 5
+                if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(6) != '$') {
+                    return false;
+                }
+                try {
+                    return Integer.parseInt(encodedPassword.substring(4, 6)) != fuerza;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        };
     }
 
     @Bean
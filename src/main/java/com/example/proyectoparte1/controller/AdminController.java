@@ -0,0 +1,128 @@
+package com.example.proyectoparte1.controller;
+
+import com.example.proyectoparte1.model.IndexReport;
+import com.example.proyectoparte1.model.Job;
+import com.example.proyectoparte1.service.IndexManager;
+import com.example.proyectoparte1.service.JobService;
+import com.example.proyectoparte1.service.RatingService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin")
+@Tag(name = "Admin API", description = "Operaciones de mantenimiento reservadas a administradores")
+@SecurityRequirement(name = "JWT")
+public class AdminController {
+
+    private final IndexManager indexManager;
+    private final RatingService ratingService;
+    private final JobService jobService;
+
+    @Autowired
+    public AdminController(IndexManager indexManager, RatingService ratingService, JobService jobService) {
+        this.indexManager = indexManager;
+        this.ratingService = ratingService;
+        this.jobService = jobService;
+    }
+
+    @GetMapping("/indexes")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "auditarIndices",
+            summary = "Auditar los índices de MongoDB",
+            description = "Compara los índices de las colecciones films, comments, users, propagations y jobs con los que declara la aplicación. Con create=true crea además los que falten.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Informe de índices",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = IndexReport.class))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No autorizado", content = @Content)
+            }
+    )
+    public ResponseEntity<IndexReport> auditarIndices(
+            @Parameter(description = "Crear los índices declarados que falten", example = "false")
+            @RequestParam(defaultValue = "false") boolean create) {
+        return ResponseEntity.ok(indexManager.auditar(create));
+    }
+
+    @PostMapping("/ratings/repair")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "recalcularValoraciones",
+            summary = "Recalcular el resumen de valoraciones",
+            description = "Lanza en segundo plano el recálculo de ratingCount, ratingSum, ratingAverage y ratingHistogram de todas las películas a partir de sus comentarios. La respuesta enlaza el trabajo para seguir su progreso.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Recálculo lanzado",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = Job.class))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No autorizado", content = @Content)
+            }
+    )
+    public ResponseEntity<EntityModel<Job>> recalcularValoraciones() {
+        Job job = ratingService.lanzarRecalculo();
+        Link trabajo = WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AdminController.class).obtenerTrabajo(job.getId())).withSelfRel();
+        return ResponseEntity.accepted().location(trabajo.toUri()).body(EntityModel.of(job, trabajo));
+    }
+
+    @GetMapping("/jobs")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "listarTrabajos",
+            summary = "Listar los trabajos en segundo plano",
+            description = "Devuelve los trabajos en marcha y los últimos terminados, empezando por los más recientes.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Trabajos obtenidos",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Job.class)))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No autorizado", content = @Content)
+            }
+    )
+    public ResponseEntity<List<Job>> listarTrabajos() {
+        return ResponseEntity.ok(jobService.listar());
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "obtenerTrabajo",
+            summary = "Consultar el progreso de un trabajo",
+            description = "Devuelve el estado y el progreso de un trabajo en segundo plano, como el borrado de los comentarios de una película.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Trabajo encontrado",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = Job.class))
+                    ),
+                    @ApiResponse(responseCode = "404", description = "Trabajo no encontrado o ya descartado", content = @Content),
+                    @ApiResponse(responseCode = "403", description = "No autorizado", content = @Content)
+            }
+    )
+    public ResponseEntity<Job> obtenerTrabajo(
+            @Parameter(description = "ID del trabajo", required = true) @PathVariable String jobId) {
+        Job job = jobService.obtener(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+}
@@ -19,6 +19,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
 import org.springframework.security.core.Authentication;
@@ -126,14 +127,19 @@ public class AssessmentController {
             @Parameter(description = "Correo del usuario", required = true) @PathVariable String email,
             @Parameter(description = "Número de página") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Tamaño de página") @RequestParam(defaultValue = "10") int size,
-            @Parameter(description = "Campo de ordenación") @RequestParam(defaultValue = "rating") String sortBy,
-            @Parameter(description = "Dirección de la ordenación") @RequestParam(defaultValue = "ASC") String direction) {
+            @Parameter(description = "Campo de ordenación: rating o id") @RequestParam(defaultValue = "rating") String sortBy,
+            @Parameter(description = "Dirección de la ordenación") @RequestParam(defaultValue = "ASC") String direction,
+            WebRequest request) {
 
         if (page < 0 || size <= 0) {
             page = 0;
             size = 10;
         }
 
+        //La versión de la página se calcula solo con los ids y _etag de sus comentarios
+        String etag = assessmentService.etagComentariosUsuario(email, page, size, sortBy, direction);
+        if (request.checkNotModified(etag)) return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+
         Page<Assessment> comentariosUsuario = assessmentService.obtenerComentariosUsuario(email, page, size, sortBy, direction);
         if (comentariosUsuario.isEmpty()) return ResponseEntity.noContent().build();
 
@@ -141,14 +147,14 @@ public class AssessmentController {
         PagedModel<Assessment> resource = PagedModel.of(
                 commentsModel,
                 new PagedModel.PageMetadata(comentariosUsuario.getSize(), comentariosUsuario.getNumber(), comentariosUsuario.getTotalElements()),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(email, page, size, sortBy, direction)).withSelfRel()
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(email, page, size, sortBy, direction, null)).withSelfRel()
         );
 
         if (page > 0) {
-            resource.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(email, page - 1, size, sortBy, direction)).withRel("prev-page"));
+            resource.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(email, page - 1, size, sortBy, direction, null)).withRel("prev-page"));
         }
 
-        return ResponseEntity.ok(resource);
+        return ResponseEntity.ok().eTag(etag).body(resource);
     }
 
     @GetMapping("/movie/{movieId}")
@@ -219,13 +225,17 @@ public class AssessmentController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "rating") String sortBy,
-            @RequestParam(defaultValue = "ASC") String direction) {
+            @RequestParam(defaultValue = "ASC") String direction,
+            WebRequest request) {
 
         if (page < 0 || size <= 0) {
             page = 0;
             size = 10;
         }
 
+        String etag = assessmentService.etagComentariosPelicula(movieId, page, size, sortBy, direction);
+        if (request.checkNotModified(etag)) return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+
         Page<Assessment> comentariosPelicula = assessmentService.obtenerComentariosPelicula(movieId, page, size, sortBy, direction);
         if (comentariosPelicula.isEmpty()) return ResponseEntity.noContent().build();
 
@@ -233,14 +243,14 @@ public class AssessmentController {
         PagedModel<Assessment> resource = PagedModel.of(
                 moviesModel,
                 new PagedModel.PageMetadata(comentariosPelicula.getSize(), comentariosPelicula.getNumber(), comentariosPelicula.getTotalElements()),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(movieId, page, size, sortBy, direction)).withSelfRel()
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(movieId, page, size, sortBy, direction, null)).withSelfRel()
         );
 
         if (page > 0) {
-            resource.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(movieId, page - 1, size, sortBy, direction)).withRel("prev-page"));
+            resource.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(movieId, page - 1, size, sortBy, direction, null)).withRel("prev-page"));
         }
 
-        return ResponseEntity.ok(resource);
+        return ResponseEntity.ok().eTag(etag).body(resource);
     }
 
     @PostMapping
@@ -298,7 +308,7 @@ public class AssessmentController {
         EntityModel<Assessment> resource = EntityModel.of(
                 assessment,
                 WebMvcLinkBuilder.linkTo(MovieController.class).slash(assessment.getMovie().getId()).withRel("get-movie"),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(assessment.getMovie().getId(), 0, 10, "rating", "DESC")).withRel("comments-movie")
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(assessment.getMovie().getId(), 0, 10, "rating", "DESC", null)).withRel("comments-movie")
         );
 
         return ResponseEntity.ok(resource);
@@ -354,14 +364,18 @@ public class AssessmentController {
             if (comentarioExistente == null) {
                 return ResponseEntity.notFound().build();
             }
-            Assessment comentarioModificado = patchUtils.patch(comentarioExistente, updates);
-            assessmentService.modificarComentario(commentId, comentarioModificado);
+            Assessment comentarioModificado = assessmentService.parchearComentario(comentarioExistente, updates);
+            if (comentarioModificado == null) {
+                //Operaciones que no se traducen a MongoDB: se aplica el parche sobre el comentario completo
+                comentarioModificado = patchUtils.patch(comentarioExistente, updates);
+                assessmentService.modificarComentario(commentId, comentarioModificado);
+            }
 
             EntityModel<Assessment> resource = EntityModel.of(
                     comentarioModificado,
                     WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).modificarComentarioParcialmente(commentId, updates)).withSelfRel(),
-                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(comentarioModificado.getMovie().getId(), 0, 10, "rating", "DESC")).withRel("get-film-comments"),
-                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(comentarioModificado.getUser().getEmail(), 0, 10, "rating", "DESC")).withRel("get-user-comments")
+                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(comentarioModificado.getMovie().getId(), 0, 10, "rating", "DESC", null)).withRel("get-film-comments"),
+                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(comentarioModificado.getUser().getEmail(), 0, 10, "rating", "DESC", null)).withRel("get-user-comments")
             );
 
             return ResponseEntity.ok(resource);
@@ -419,8 +433,8 @@ public class AssessmentController {
 
         EntityModel<Assessment> resource = EntityModel.of(
                 assessment,
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(assessment.getMovie().getId(), 0, 10, "rating", "DESC")).withRel("get-film-comments"),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(assessment.getUser().getEmail(), 0, 10, "rating", "DESC")).withRel("get-user-comments")
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosPelicula(assessment.getMovie().getId(), 0, 10, "rating", "DESC", null)).withRel("get-film-comments"),
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AssessmentController.class).obtenerComentariosUsuario(assessment.getUser().getEmail(), 0, 10, "rating", "DESC", null)).withRel("get-user-comments")
         );
         return ResponseEntity.ok(resource);
     }
@@ -1,12 +1,22 @@
 package com.example.proyectoparte1.controller;
 
+import com.example.proyectoparte1.model.CursorPage;
+import com.example.proyectoparte1.model.ImportReport;
+import com.example.proyectoparte1.model.Job;
+import com.example.proyectoparte1.model.LeaderboardEntry;
 import com.example.proyectoparte1.model.Movie;
+import com.example.proyectoparte1.model.MovieFacets;
+import com.example.proyectoparte1.model.MovieSummary;
+import com.example.proyectoparte1.model.Suggestion;
 import com.example.proyectoparte1.model.DateCustom;
+import com.example.proyectoparte1.service.LeaderboardService;
+import com.example.proyectoparte1.service.MovieImportService;
 import com.example.proyectoparte1.service.MovieService;
 import com.example.proyectoparte1.service.PatchUtils;
 import com.github.fge.jsonpatch.JsonPatchException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -16,18 +26,26 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.hateoas.PagedModel;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -41,11 +59,13 @@ public class MovieController {
 
     private final MovieService movieService;
     private final PatchUtils patchUtils;
+    private final MovieImportService movieImportService;
 
     @Autowired
-    public MovieController(MovieService movieService, PatchUtils patchUtils) {
+    public MovieController(MovieService movieService, PatchUtils patchUtils, MovieImportService movieImportService) {
         this.movieService = movieService;
         this.patchUtils = patchUtils;
+        this.movieImportService = movieImportService;
     }
 
     // Obtener todas las películas
@@ -119,7 +139,7 @@ public class MovieController {
                     @ApiResponse(responseCode = "403", description = "No tiene permisos para acceder a este recurso", content = @Content)
             }
     )
-    public ResponseEntity<PagedModel<EntityModel<Movie>>> obtenerTodasPeliculas(
+    public ResponseEntity<PagedModel<EntityModel<MovieSummary>>> obtenerTodasPeliculas(
             @Parameter(description = "Palabra clave") @RequestParam(required = false) String keyword,
             @Parameter(description = "Género de la película") @RequestParam(required = false) String genre,
             @Parameter(description = "Fecha de lanzamiento (formato: dd-MM-yyyy)") @RequestParam(required = false) String releaseDate,
@@ -128,37 +148,283 @@ public class MovieController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "title") String sortBy,
-            @RequestParam(defaultValue = "ASC") String direction) {
+            @RequestParam(defaultValue = "ASC") String direction,
+            @Parameter(description = "Si es false no se calcula el total de resultados: solo se indica si hay página siguiente") @RequestParam(defaultValue = "true") boolean withTotal,
+            @Parameter(description = "Cursor opaco devuelto en el enlace next; si se indica (aunque sea vacío) se pagina por cursor en lugar de por número de página") @RequestParam(required = false) String cursor) {
 
-        DateCustom convertedReleaseDate = null;
-        if(releaseDate != null) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-            LocalDate date = LocalDate.parse(releaseDate, formatter);
-            convertedReleaseDate = new DateCustom(date.getDayOfMonth(), date.getMonthValue(), date.getYear());
-        }
+        DateCustom convertedReleaseDate = convertirFecha(releaseDate);
 
         if (page < 0 || size <= 0) {
             page = 0;
             size = 10;
         }
 
-        Page<Movie> peliculas = movieService.obtenerTodasMovies(keyword, genre, convertedReleaseDate, crew, cast, page, size, sortBy, direction);
+        if (cursor != null) {
+            return obtenerPeliculasPorCursor(keyword, genre, releaseDate, convertedReleaseDate, crew, cast, cursor, size, sortBy, direction);
+        }
+
+        Slice<MovieSummary> peliculas = movieService.obtenerTodasMovies(keyword, genre, convertedReleaseDate, crew, cast, page, size, sortBy, direction, withTotal);
         
         // Siempre devolver un 200 con la lista vacía en lugar de 204
-        List<EntityModel<Movie>> movieModels = peliculas.getContent().stream()
+        List<EntityModel<MovieSummary>> movieModels = peliculas.getContent().stream()
+                .map(pelicula -> EntityModel.of(pelicula,
+                        WebMvcLinkBuilder.linkTo(methodOn(MovieController.class).obtenerPelicula(pelicula.getId(), null)).withSelfRel()))
+                .collect(Collectors.toList());
+
+        // Sin total no hay metadatos de página completos, la navegación se hace con los enlaces next/prev
+        PagedModel.PageMetadata metadata = peliculas instanceof Page<MovieSummary> pagina
+                ? new PagedModel.PageMetadata(pagina.getSize(), pagina.getNumber(), pagina.getTotalElements())
+                : null;
+
+        PagedModel<EntityModel<MovieSummary>> pagedModel = PagedModel.of(
+                movieModels,
+                metadata,
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas(keyword, genre, releaseDate, crew, cast, page, size, sortBy, direction, withTotal, null)).withSelfRel()
+        );
+
+        if (metadata == null) {
+            if (peliculas.hasNext()) {
+                pagedModel.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas(keyword, genre, releaseDate, crew, cast, page + 1, size, sortBy, direction, false, null)).withRel("next"));
+            }
+            if (peliculas.hasPrevious()) {
+                pagedModel.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas(keyword, genre, releaseDate, crew, cast, page - 1, size, sortBy, direction, false, null)).withRel("prev"));
+            }
+        }
+
+        return ResponseEntity.ok(pagedModel);
+    }
+
+    //Modo cursor del listado: no hay número de página ni total, solo el enlace next con el cursor de la siguiente página
+    private ResponseEntity<PagedModel<EntityModel<MovieSummary>>> obtenerPeliculasPorCursor(String keyword, String genre, String releaseDate, DateCustom convertedReleaseDate,
+                                                                                          String crew, String cast, String cursor, int size, String sortBy, String direction) {
+        CursorPage<MovieSummary> peliculas;
+        try {
+            peliculas = movieService.obtenerMoviesCursor(keyword, genre, convertedReleaseDate, crew, cast, cursor, size, sortBy, direction);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<EntityModel<MovieSummary>> movieModels = peliculas.getContent().stream()
+                .map(pelicula -> EntityModel.of(pelicula,
+                        WebMvcLinkBuilder.linkTo(methodOn(MovieController.class).obtenerPelicula(pelicula.getId(), null)).withSelfRel()))
+                .collect(Collectors.toList());
+
+        PagedModel<EntityModel<MovieSummary>> pagedModel = PagedModel.of(
+                movieModels,
+                (PagedModel.PageMetadata) null,
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas(keyword, genre, releaseDate, crew, cast, 0, size, sortBy, direction, true, cursor)).withSelfRel()
+        );
+
+        if (peliculas.hasNext()) {
+            pagedModel.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas(keyword, genre, releaseDate, crew, cast, 0, size, sortBy, direction, true, peliculas.getNextCursor())).withRel("next"));
+        }
+
+        return ResponseEntity.ok(pagedModel);
+    }
+
+    // Buscar películas por texto libre
+    @GetMapping("/search")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+            operationId = "buscarPeliculas",
+            summary = "Buscar películas",
+            description = "Busca por texto libre en el título, la sinopsis, las palabras clave y los nombres del reparto y del equipo, devolviendo los resultados ordenados por relevancia",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Resultados de la búsqueda obtenidos",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = PagedModel.class))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos para acceder a este recurso", content = @Content)
+            }
+    )
+    public ResponseEntity<PagedModel<EntityModel<MovieSummary>>> buscarPeliculas(
+            @Parameter(description = "Texto a buscar", required = true) @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+
+        if (page < 0 || size <= 0) {
+            page = 0;
+            size = 10;
+        }
+
+        Page<MovieSummary> peliculas = movieService.buscarPeliculas(q, page, size);
+
+        List<EntityModel<MovieSummary>> movieModels = peliculas.getContent().stream()
                 .map(pelicula -> EntityModel.of(pelicula,
-                        WebMvcLinkBuilder.linkTo(methodOn(MovieController.class).obtenerPelicula(pelicula.getId())).withSelfRel()))
+                        WebMvcLinkBuilder.linkTo(methodOn(MovieController.class).obtenerPelicula(pelicula.getId(), null)).withSelfRel()))
                 .collect(Collectors.toList());
 
-        PagedModel<EntityModel<Movie>> pagedModel = PagedModel.of(
+        PagedModel<EntityModel<MovieSummary>> pagedModel = PagedModel.of(
                 movieModels,
                 new PagedModel.PageMetadata(peliculas.getSize(), peliculas.getNumber(), peliculas.getTotalElements()),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas(keyword, genre, releaseDate, crew, cast, page, size, sortBy, direction)).withSelfRel()
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).buscarPeliculas(q, page, size)).withSelfRel()
         );
 
+        if (peliculas.hasNext()) {
+            pagedModel.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).buscarPeliculas(q, page + 1, size)).withRel("next-page"));
+        }
+        if (page > 0) {
+            pagedModel.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).buscarPeliculas(q, page - 1, size)).withRel("prev-page"));
+        }
+
         return ResponseEntity.ok(pagedModel);
     }
 
+    // Autocompletar títulos y nombres del reparto y del equipo
+    @GetMapping("/suggest")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+            operationId = "sugerirPeliculas",
+            summary = "Autocompletar búsquedas",
+            description = "Devuelve los títulos y nombres del reparto y del equipo más populares que empiezan por el prefijo indicado",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Sugerencias obtenidas",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Suggestion.class)))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos para acceder a este recurso", content = @Content)
+            }
+    )
+    public ResponseEntity<List<Suggestion>> sugerirPeliculas(
+            @Parameter(description = "Prefijo escrito por el usuario", required = true) @RequestParam String prefix,
+            @Parameter(description = "Número máximo de sugerencias (hasta 10)") @RequestParam(defaultValue = "10") int limit) {
+        if (limit <= 0) {
+            limit = 10;
+        }
+        return ResponseEntity.ok(movieService.sugerirPeliculas(prefix, limit));
+    }
+
+    // Clasificaciones de películas, servidas desde memoria
+    @GetMapping("/top")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+            operationId = "obtenerTopPeliculas",
+            summary = "Obtener las películas mejor valoradas o más valoradas",
+            description = "Devuelve la clasificación general o de un género: por media bayesiana (rating) o por número de valoraciones (reviews)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Clasificación obtenida",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = LeaderboardEntry.class)))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Criterio de ordenación no válido", content = @Content),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos para acceder a este recurso", content = @Content)
+            }
+    )
+    public ResponseEntity<List<LeaderboardEntry>> obtenerTopPeliculas(
+            @Parameter(description = "Criterio: rating o reviews") @RequestParam(defaultValue = "rating") String by,
+            @Parameter(description = "Género de la clasificación; sin él, la clasificación general") @RequestParam(required = false) String genre,
+            @Parameter(description = "Número de películas (hasta 100)") @RequestParam(defaultValue = "100") int limit) {
+        LeaderboardService.Criterio criterio;
+        try {
+            criterio = LeaderboardService.Criterio.valueOf(by.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (limit <= 0) {
+            limit = 100;
+        }
+        return ResponseEntity.ok(movieService.obtenerTop(criterio, genre, limit));
+    }
+
+    // Recuentos por faceta para los filtros del listado
+    @GetMapping("/facets")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+            operationId = "obtenerFacetasPeliculas",
+            summary = "Obtener recuentos por faceta",
+            description = "Devuelve cuántas películas cumplen los filtros, agrupadas por género, año de estreno, estado y tramo de duración. Acepta los mismos filtros que el listado de películas.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Recuentos obtenidos",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = MovieFacets.class))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos para acceder a este recurso", content = @Content)
+            }
+    )
+    public ResponseEntity<MovieFacets> obtenerFacetasPeliculas(
+            @Parameter(description = "Palabra clave") @RequestParam(required = false) String keyword,
+            @Parameter(description = "Género de la película") @RequestParam(required = false) String genre,
+            @Parameter(description = "Fecha de lanzamiento (formato: dd-MM-yyyy)") @RequestParam(required = false) String releaseDate,
+            @Parameter(description = "Nombre del equipo de producción") @RequestParam(required = false) String crew,
+            @Parameter(description = "Nombre del reparto") @RequestParam(required = false) String cast) {
+        return ResponseEntity.ok(movieService.obtenerFacetas(keyword, genre, convertirFecha(releaseDate), crew, cast));
+    }
+
+    // Exportar el catálogo completo como NDJSON
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "exportarPeliculas",
+            summary = "Exportar películas",
+            description = "Devuelve en streaming todas las películas que cumplen los filtros, una por línea en formato JSON (NDJSON). Acepta los mismos filtros que el listado de películas y, opcionalmente, la lista de campos a exportar.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Películas exportadas, una por línea",
+                            content = @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Movie.class))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos para exportar películas", content = @Content)
+            }
+    )
+    public ResponseEntity<StreamingResponseBody> exportarPeliculas(
+            @Parameter(description = "Palabra clave") @RequestParam(required = false) String keyword,
+            @Parameter(description = "Género de la película") @RequestParam(required = false) String genre,
+            @Parameter(description = "Fecha de lanzamiento (formato: dd-MM-yyyy)") @RequestParam(required = false) String releaseDate,
+            @Parameter(description = "Nombre del equipo de producción") @RequestParam(required = false) String crew,
+            @Parameter(description = "Nombre del reparto") @RequestParam(required = false) String cast,
+            @Parameter(description = "Campos a exportar separados por comas (por defecto, todos)", example = "title,genres,releaseDate") @RequestParam(required = false) List<String> fields) {
+        DateCustom convertedReleaseDate = convertirFecha(releaseDate);
+
+        //El cuerpo se escribe después de devolver la respuesta, directamente sobre el stream de salida
+        StreamingResponseBody cuerpo = salida -> movieService.exportarPeliculas(keyword, genre, convertedReleaseDate, crew, cast, fields, salida);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"movies.ndjson\"")
+                .body(cuerpo);
+    }
+
+    // Importar películas de forma masiva desde NDJSON
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "application/gzip", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            operationId = "importarPeliculas",
+            summary = "Importar películas",
+            description = "Inserta en bloque las películas de un fichero NDJSON (una película por línea), opcionalmente comprimido con gzip. Las líneas inválidas o con un título que ya existe se rechazan sin detener la importación.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Importación realizada; el informe indica las líneas rechazadas",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ImportReport.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "El fichero no se pudo leer (por ejemplo, gzip corrupto)", content = @Content),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos para importar películas", content = @Content)
+            }
+    )
+    public ResponseEntity<?> importarPeliculas(InputStream cuerpo) {
+        try {
+            return ResponseEntity.ok(movieImportService.importar(cuerpo));
+        } catch (IOException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error al leer el fichero: " + e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    //Convierte la fecha de los filtros (dd-MM-yyyy) al formato en el que se guarda en la película
+    private DateCustom convertirFecha(String releaseDate) {
+        if (releaseDate == null) {
+            return null;
+        }
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        LocalDate date = LocalDate.parse(releaseDate, formatter);
+        return new DateCustom(date.getDayOfMonth(), date.getMonthValue(), date.getYear());
+    }
+
     // Obtener una película específica
     @GetMapping("/{movieId}")
     @PreAuthorize("isAuthenticated()")
@@ -198,15 +464,21 @@ public class MovieController {
             }
     )
     public ResponseEntity<EntityModel<Movie>> obtenerPelicula(
-            @Parameter(description = "ID de la película", required = true) @PathVariable String movieId) {
+            @Parameter(description = "ID de la película", required = true) @PathVariable String movieId,
+            WebRequest request) {
+        //Primero se consulta solo la versión: si el cliente ya la tiene respondemos 304 sin leer ni serializar la película
+        String etag = movieService.etagPelicula(movieId);
+        if(etag == null) return ResponseEntity.notFound().build();
+        if(request.checkNotModified(etag)) return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+
         Movie movie = movieService.obtenerMovie(movieId);
         if(movie == null) return ResponseEntity.notFound().build();
 
         EntityModel<Movie> resource = EntityModel.of(movie,
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerPelicula(movieId)).withSelfRel(),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC")).withRel("all-movies")
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerPelicula(movieId, null)).withSelfRel(),
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC", true, null)).withRel("all-movies")
         );
-        return ResponseEntity.ok(resource);
+        return ResponseEntity.ok().eTag(etag).body(resource);
     }
 
     // Crear una nueva película
@@ -257,8 +529,8 @@ public class MovieController {
 
         Movie nuevaPelicula = movieService.crearPelicula(movie);
         EntityModel<Movie> resource = EntityModel.of(nuevaPelicula,
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerPelicula(movie.getId())).withSelfRel(),
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC")).withRel("all-movies")
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerPelicula(movie.getId(), null)).withSelfRel(),
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC", true, null)).withRel("all-movies")
         );
         return ResponseEntity.ok(resource);
     }
@@ -313,12 +585,18 @@ public class MovieController {
                 return ResponseEntity.notFound().build();
             }
 
-            Movie movieModificada = patchUtils.patch(movie, updates);
-            movieModificada = movieService.modificarPelicula(movieModificada);
+            Movie movieModificada = movieService.parchearPelicula(movie, updates);
+            if (movieModificada == null) {
+                //Operaciones que no se traducen a MongoDB: se aplica el parche sobre la película completa
+                movieModificada = movieService.modificarPelicula(movie, patchUtils.patch(movie, updates));
+            }
+            if (movieModificada == null) {
+                return ResponseEntity.notFound().build();
+            }
 
             EntityModel<Movie> resource = EntityModel.of(movieModificada,
-                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerPelicula(movieId)).withSelfRel(),
-                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC")).withRel("all-movies")
+                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerPelicula(movieId, null)).withSelfRel(),
+                    WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC", true, null)).withRel("all-movies")
             );
             return ResponseEntity.ok(resource);
 
@@ -335,7 +613,7 @@ public class MovieController {
     @Operation(
             operationId = "eliminarPelicula",
             summary = "Eliminar una película",
-            description = "Permite a los administradores eliminar una película por su ID",
+            description = "Permite a los administradores eliminar una película por su ID junto con sus comentarios. Si la película tiene muchos comentarios se borran en segundo plano y la respuesta enlaza el trabajo (comments-delete-job)",
             responses = {
                     @ApiResponse(
                             responseCode = "200",
@@ -366,11 +644,15 @@ public class MovieController {
         if (target == null) {
             return ResponseEntity.notFound().build();
         }
-        movieService.eliminarPelicula(movieId);
+        Job borradoComentarios = movieService.eliminarPelicula(target);
 
         EntityModel<Movie> resource = EntityModel.of(target,
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC")).withRel("all-movies")
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(MovieController.class).obtenerTodasPeliculas("period", "Drama", "01-06-2015", "Jay Craven", "Jacqueline Bisset", 0, 10, "movieId", "DESC", true, null)).withRel("all-movies")
         );
+        // Si los comentarios se están borrando en segundo plano, enlazamos el trabajo para seguir su progreso
+        if (borradoComentarios != null) {
+            resource.add(WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AdminController.class).obtenerTrabajo(borradoComentarios.getId())).withRel("comments-delete-job"));
+        }
         return ResponseEntity.ok(resource);
     }
 }
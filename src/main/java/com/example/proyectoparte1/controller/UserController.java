@@ -1,11 +1,16 @@
 package com.example.proyectoparte1.controller;
 
+import com.example.proyectoparte1.model.Assessment;
+import com.example.proyectoparte1.model.FriendRecommendation;
+import com.example.proyectoparte1.model.Job;
 import com.example.proyectoparte1.model.User;
+import com.example.proyectoparte1.service.FeedService;
 import com.example.proyectoparte1.service.UserService;
 import com.example.proyectoparte1.service.PatchUtils;
 import com.github.fge.jsonpatch.JsonPatchException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -21,6 +26,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
 import jakarta.validation.Valid;
@@ -41,12 +47,14 @@ public class UserController {
     private final UserService userService;
     private final PatchUtils patchUtils;
     private final PasswordEncoder passwordEncoder;
+    private final FeedService feedService;
 
     @Autowired
-    public UserController(UserService userService, PatchUtils patchUtils, PasswordEncoder passwordEncoder) {
+    public UserController(UserService userService, PatchUtils patchUtils, PasswordEncoder passwordEncoder, FeedService feedService) {
         this.userService = userService;
         this.patchUtils = patchUtils;
         this.passwordEncoder = passwordEncoder;
+        this.feedService = feedService;
     }
 
     @GetMapping("/{email}")
@@ -85,16 +93,95 @@ public class UserController {
             }
     )
     public ResponseEntity<EntityModel<User>> obtenerUsuario(
-            @Parameter(description = "Correo del usuario", required = true) @PathVariable String email) {
+            @Parameter(description = "Correo del usuario", required = true) @PathVariable String email,
+            WebRequest request) {
+        //Si el cliente ya tiene la versión actual respondemos 304 sin leer ni serializar el usuario
+        String etag = userService.etagUsuario(email);
+        if (etag == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
         User usuario = userService.obtenerUsuario(email);
         if (usuario == null) {
             return ResponseEntity.notFound().build();
         }
         EntityModel<User> resource = EntityModel.of(usuario,
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).obtenerUsuario(email)).withSelfRel(),
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).obtenerUsuario(email, null)).withSelfRel(),
                 WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).obtenerUsuarios(0, 10, "email", "DESC")).withRel("all-users")
         );
-        return ResponseEntity.ok(resource);
+        return ResponseEntity.ok().eTag(etag).body(resource);
+    }
+
+    @GetMapping("/{email}/recommendations")
+    @PreAuthorize("hasRole('ADMIN') or #email == authentication.name")
+    @Operation(
+            operationId = "recomendarAmigos",
+            summary = "Personas que quizá conozcas",
+            description = "Devuelve amigos de los amigos del usuario que aún no son amigos suyos, ordenados por el número de amigos en común.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Recomendaciones obtenidas",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = FriendRecommendation.class)))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos suficientes", content = @Content)
+            }
+    )
+    public ResponseEntity<List<FriendRecommendation>> recomendarAmigos(
+            @Parameter(description = "Correo del usuario", required = true) @PathVariable String email,
+            @Parameter(description = "Número máximo de recomendaciones (hasta 50)") @RequestParam(defaultValue = "10") int limit) {
+        if (limit <= 0) {
+            limit = 10;
+        }
+        return ResponseEntity.ok(userService.recomendarAmigos(email, Math.min(limit, 50)));
+    }
+
+    @GetMapping("/{email}/feed")
+    @PreAuthorize("hasRole('ADMIN') or #email == authentication.name")
+    @Operation(
+            operationId = "obtenerFeed",
+            summary = "Últimas valoraciones de los amigos",
+            description = "Devuelve las valoraciones más recientes escritas por los amigos del usuario, de más nueva a más antigua. Puede tardar unos segundos en reflejar las valoraciones nuevas.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Valoraciones obtenidas",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Assessment.class)))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos suficientes", content = @Content)
+            }
+    )
+    public ResponseEntity<List<Assessment>> obtenerFeed(
+            @Parameter(description = "Correo del usuario", required = true) @PathVariable String email,
+            @Parameter(description = "Número de valoraciones (hasta 50)") @RequestParam(defaultValue = "20") int size) {
+        if (size <= 0) {
+            size = 20;
+        }
+        return ResponseEntity.ok(feedService.obtenerFeed(email, Math.min(size, FeedService.MAX_FEED)));
+    }
+
+    @GetMapping("/{email}/mutual-friends/{otherEmail}")
+    @PreAuthorize("hasRole('ADMIN') or #email == authentication.name")
+    @Operation(
+            operationId = "obtenerAmigosEnComun",
+            summary = "Número de amigos en común",
+            description = "Devuelve cuántos amigos tiene el usuario en común con otro usuario.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Amigos en común",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = FriendRecommendation.class))
+                    ),
+                    @ApiResponse(responseCode = "403", description = "No tiene permisos suficientes", content = @Content)
+            }
+    )
+    public ResponseEntity<FriendRecommendation> obtenerAmigosEnComun(
+            @Parameter(description = "Correo del usuario", required = true) @PathVariable String email,
+            @Parameter(description = "Correo del otro usuario", required = true) @PathVariable String otherEmail) {
+        return ResponseEntity.ok(new FriendRecommendation(otherEmail, null, userService.amigosEnComun(email, otherEmail)));
     }
 
     @GetMapping
@@ -180,7 +267,7 @@ public class UserController {
         Page<User> usuariosObtenidos = userService.obtenerTodosUsuarios(page, size, sortBy, direction);
         if (usuariosObtenidos.isEmpty()) return ResponseEntity.noContent().build();
         List<EntityModel<User>> usuarioModels = usuariosObtenidos.getContent().stream()
-                .map(user -> EntityModel.of(user, WebMvcLinkBuilder.linkTo(methodOn(UserController.class).obtenerUsuario(user.getEmail())).withSelfRel()))
+                .map(user -> EntityModel.of(user, WebMvcLinkBuilder.linkTo(methodOn(UserController.class).obtenerUsuario(user.getEmail(), null)).withSelfRel()))
                 .collect(Collectors.toList());
 
         PagedModel<EntityModel<User>> pagedModel = PagedModel.of(
@@ -252,7 +339,7 @@ public class UserController {
     @Operation(
             operationId = "eliminarUsuario",
             summary = "Eliminar un usuario",
-            description = "Permite al propio usuario eliminar su cuenta.",
+            description = "Permite al propio usuario eliminar su cuenta. Se quita de las listas de amigos del resto de usuarios y sus comentarios se anonimizan o se borran en segundo plano según la configuración (delete-job).",
             responses = {
                     @ApiResponse(
                             responseCode = "200",
@@ -282,9 +369,11 @@ public class UserController {
         if (usuario == null) {
             return ResponseEntity.notFound().build();
         }
-        userService.eliminarUsuario(usuario);
+        Job borrado = userService.eliminarUsuario(usuario);
         EntityModel<User> recurso = EntityModel.of(usuario,
-                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).obtenerUsuarios(0, 10, "email", "DESC")).withRel("all-users")
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).obtenerUsuarios(0, 10, "email", "DESC")).withRel("all-users"),
+                // Progreso del tratamiento de sus comentarios y documentos afectados (para administradores)
+                WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(AdminController.class).obtenerTrabajo(borrado.getId())).withRel("delete-job")
         );
         return ResponseEntity.ok(recurso);
     }
@@ -345,8 +434,12 @@ public class UserController {
                     update.put("value", encodedPassword);
                 }
             }
-            User usuarioModificado = patchUtils.patch(usuario, updates);
-            userService.actualizarUsuario(usuarioModificado);
+            User usuarioModificado = userService.parchearUsuario(usuario, updates);
+            if (usuarioModificado == null) {
+                //Operaciones que no se traducen a MongoDB: se aplica el parche sobre el usuario completo
+                usuarioModificado = patchUtils.patch(usuario, updates);
+                userService.actualizarUsuario(usuario, usuarioModificado);
+            }
             EntityModel<User> resource = EntityModel.of(usuarioModificado,
                     WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).modificarUsuario(usuario.getEmail(), updates)).withSelfRel(),
                     WebMvcLinkBuilder.linkTo(WebMvcLinkBuilder.methodOn(UserController.class).obtenerUsuarios(0, 10, "email", "DESC")).withRel("all-users")
@@ -375,18 +468,14 @@ public class UserController {
     public ResponseEntity<?> eliminarAmigo(
             @Parameter(description = "Correo del usuario") @PathVariable("email") String email,
             @Parameter(description = "Correo del amigo a eliminar") @PathVariable("friendEmail") String friendEmail) {
-        User usuario = userService.obtenerUsuario(email);
-        if (usuario == null) {
-            return ResponseEntity.notFound().build();
-        }
-        User amigo = userService.obtenerUsuario(friendEmail);
-        if (amigo == null) {
-            return ResponseEntity.notFound().build();
-        }
-        if (usuario.getEmail().equals(amigo.getEmail())) return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: No puedes eliminarte a ti mismo de tu lista de amigos.");
+        if (email.equals(friendEmail)) return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: No puedes eliminarte a ti mismo de tu lista de amigos.");
 
-        User usuarioConNuevaLista = userService.eliminarAmigo(usuario, amigo);
+        // Una sola operación sobre la lista; si no cambia nada distinguimos si falta el usuario o el amigo en la lista
+        User usuarioConNuevaLista = userService.eliminarAmigo(email, friendEmail);
         if (usuarioConNuevaLista == null) {
+            if (!userService.existeUsuario(email)) {
+                return ResponseEntity.notFound().build();
+            }
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error: El amigo no está en la lista de amigos.");
         }
         return ResponseEntity.ok(usuarioConNuevaLista);
@@ -409,11 +498,7 @@ public class UserController {
     public ResponseEntity<?> anhadirAmigo(
             @Parameter(description = "Correo del usuario") @PathVariable String email,
             @Parameter(description = "Datos del amigo a añadir") @RequestBody @Valid User friend) {
-        User usuario = userService.obtenerUsuario(email);
-        if (usuario == null) {
-            return ResponseEntity.notFound().build();
-        }
-        if (usuario.getEmail().equals(friend.getEmail())) return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: No puedes añadirte a ti mismo como amigo.");
+        if (email.equals(friend.getEmail())) return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: No puedes añadirte a ti mismo como amigo.");
 
         User amigo = userService.obtenerUsuario(friend.getEmail());
         if (amigo == null || !amigo.getEmail().equals(friend.getEmail()) || !amigo.getName().equals(friend.getName())) {
@@ -428,8 +513,11 @@ public class UserController {
         if (friend.getBirthday() != null && !amigo.getBirthday().equals(friend.getBirthday())) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body("La fecha de nacimiento del amigo no coincide.");
         }
-        usuario = userService.anhadirAmigo(usuario, amigo);
+        User usuario = userService.anhadirAmigo(email, amigo);
         if(usuario == null) {
+            if (!userService.existeUsuario(email)) {
+                return ResponseEntity.notFound().build();
+            }
             return ResponseEntity.status(HttpStatus.CONFLICT).body("El amigo ya existe en la lista de amigos.");
         }
         return ResponseEntity.ok(usuario);
@@ -1,5 +1,6 @@
 package com.example.proyectoparte1.filter;
 
+import com.example.proyectoparte1.service.LoginExecutor;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.JwtBuilder;
@@ -22,19 +23,25 @@ import java.security.Key;
 import java.time.Duration;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 public class AuthenticationFilter extends UsernamePasswordAuthenticationFilter {
+    // O ObjectMapper é seguro entre fíos, así que se comparte en lugar de crear un por login
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     private final AuthenticationManager manager;
     private final Key key;
+    private final LoginExecutor loginExecutor;
 
 
     // Establecemos unha duración para os tokens
     private static long TOKEN_DURATION = Duration.ofMinutes(60).toMillis();
 
-    public AuthenticationFilter(AuthenticationManager manager, Key key){
+    public AuthenticationFilter(AuthenticationManager manager, Key key, LoginExecutor loginExecutor){
         this.manager = manager;
         this.key = key;
+        this.loginExecutor = loginExecutor;
         setFilterProcessesUrl("/login"); // Establece el endpoint de autenticación
     }
 
@@ -43,26 +50,30 @@ public class AuthenticationFilter extends UsernamePasswordAuthenticationFilter {
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) throws AuthenticationException {
         try {
             // Obtemos o obxecto JSON do body da request HTTP
-            JsonNode credentials = new ObjectMapper().readValue(request.getInputStream(), JsonNode.class);
+            JsonNode credentials = MAPPER.readValue(request.getInputStream(), JsonNode.class);
 
             String email = credentials.get("email") != null ? credentials.get("email").textValue() : null;
             String password = credentials.get("password") != null ? credentials.get("password").textValue() : null;
-            System.out.println(email);
-            System.out.println(password);
 
             if (email == null || password == null) {
                 throw new IllegalArgumentException("Email or password cannot be null");
             }
 
 
-            // Tentamos autenticarnos coas credenciais proporcionadas
-            return manager.authenticate(
+            // Tentamos autenticarnos coas credenciais proporcionadas. A comprobación do contrasinal (bcrypt) faise
+            // no pool de login, para que unha chuvia de logins non ocupe todos os fíos de Tomcat
+            return loginExecutor.autenticar(manager,
                     new UsernamePasswordAuthenticationToken(
                             email,
                             password
                     )
             );
             //En caso de que el login falle se devuelve un 401 (no autorizado), en caso de éxito Spring boot llama automáticamente a succesfulAuthentication
+        }catch (RejectedExecutionException ex){
+            // Se o pool de login está cheo respondemos 503 xa; devolver null indica a Spring que non siga coa petición
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            return null;
         }catch (IOException ex){
             throw new RuntimeException(ex);
         }
@@ -1,8 +1,15 @@
 package com.example.proyectoparte1.filter;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
@@ -15,15 +22,53 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class AuthorizationFilter extends BasicAuthenticationFilter {
-    private final Key key;
+    // Máximo de tokens validados que se gardan en memoria
+    private static final int MAX_TOKENS = 100_000;
 
-    public AuthorizationFilter(AuthenticationManager manager, Key key){
+    // O parser non garda estado entre chamadas, así que se crea unha soa vez e compártese entre peticións
+    private final JwtParser parser;
+
+    /* Tokens xa validados, indexados polo SHA-256 do token, co token interno de Spring listo para usar. Cada entrada
+     caduca exactamente no "exp" do token, así que un token caducado volve ao parser e dá o mesmo 419 de sempre. */
+    private final Cache<String, TokenValidado> tokens;
+    private final Timer verificacion;
+
+    public AuthorizationFilter(AuthenticationManager manager, Key key, MeterRegistry meterRegistry){
         super(manager);
-        this.key = key;
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(MAX_TOKENS)
+                .expireAfter(new Expiry<String, TokenValidado>() {
+                    @Override
+                    public long expireAfterCreate(String clave, TokenValidado token, long agora) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, token.expira() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String clave, TokenValidado token, long agora, long restante) {
+                        return expireAfterCreate(clave, token, agora);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String clave, TokenValidado token, long agora, long restante) {
+                        return restante;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "jwt.tokens");
+        this.verificacion = Timer.builder("jwt.verification")
+                .description("Tempo de verificar a sinatura e ler os claims dun token JWT non gardado en caché")
+                .register(meterRegistry);
     }
 
     // Método a executar cando se comproba o control de acceso
@@ -55,22 +100,46 @@ public class AuthorizationFilter extends BasicAuthenticationFilter {
     }
 
     private UsernamePasswordAuthenticationToken getAuthentication(String token) throws ExpiredJwtException {
-        // Creamos un parser para o token coa clave de firmado da nosa aplicación
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                // Parseamos o corpo do token
-                .parseClaimsJws(token.replace("Bearer", "").trim())
-                .getBody();
+        // Se xa validamos este token e aínda non caducou, reutilizamos o resultado sen volver comprobar a sinatura
+        String clave = resumo(token);
+        TokenValidado gardado = tokens.getIfPresent(clave);
+        if (gardado != null && gardado.expira() > System.currentTimeMillis()) {
+            return gardado.authentication();
+        }
+
+        // Parseamos o corpo do token co parser compartido, que comproba a sinatura e a caducidade
+        long inicio = System.nanoTime();
+        Claims claims = parser.parseClaimsJws(token.replace("Bearer", "").trim()).getBody();
+        verificacion.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
 
         // Obtemos o nome do propietario do token
         String user = claims.getSubject();
+        if (user == null) {
+            return null;
+        }
 
         // Obtemos o listado de roles do usuario
         List<GrantedAuthority> authorities = AuthorityUtils.commaSeparatedStringToAuthorityList(String.join(",",(List)claims.get("roles")));
 
-        // Devolvemos o token interno de Spring, que será engadido no contexto.
-        return user == null ? null : new UsernamePasswordAuthenticationToken(user, token, authorities);
+        // Creamos o token interno de Spring, que será engadido no contexto, e gardámolo ata o "exp" do token
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, token, authorities);
+        if (claims.getExpiration() != null) {
+            tokens.put(clave, new TokenValidado(authentication, claims.getExpiration().getTime()));
+        }
+        return authentication;
+    }
+
+    // A clave da caché é o SHA-256 do token, para non gardar os tokens en claro
+    private static String resumo(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non dispoñible", e);
+        }
+    }
+
+    private record TokenValidado(UsernamePasswordAuthenticationToken authentication, long expira) {
     }
 
 }
\ No newline at end of file
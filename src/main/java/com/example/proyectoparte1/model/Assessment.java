@@ -1,10 +1,12 @@
 package com.example.proyectoparte1.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
 import java.util.Objects;
 import java.util.StringJoiner;
 
@@ -49,6 +51,14 @@ public class Assessment {
     )
     private String comment;
 
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Schema(
+            description = "Momento en que se creó la valoración; lo asigna el servidor",
+            example = "2024-10-18T17:42:05.123Z",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    private Instant createdAt;
+
     // Constructor por defecto
     public Assessment() {}
 
@@ -67,6 +77,7 @@ public class Assessment {
     public User getUser() { return user; }
     public Movie getMovie() { return movie; }
     public String getComment() { return comment; }
+    public Instant getCreatedAt() { return createdAt; }
 
     // Setters con estilo encadenado
     public Assessment setId(String id) { this.id = id; return this; }
@@ -74,6 +85,7 @@ public class Assessment {
     public Assessment setUser(User user) { this.user = user; return this; }
     public Assessment setMovie(Movie movie) { this.movie = movie; return this; }
     public Assessment setComment(String comment) { this.comment = comment; return this; }
+    public Assessment setCreatedAt(Instant createdAt) { this.createdAt = createdAt; return this; }
 
     // equals y hashCode
     @Override
@@ -85,12 +97,13 @@ public class Assessment {
                 Objects.equals(rating, that.rating) &&
                 Objects.equals(user, that.user) &&
                 Objects.equals(movie, that.movie) &&
-                Objects.equals(comment, that.comment);
+                Objects.equals(comment, that.comment) &&
+                Objects.equals(createdAt, that.createdAt);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, rating, user, movie, comment);
+        return Objects.hash(id, rating, user, movie, comment, createdAt);
     }
 
     // toString
@@ -102,6 +115,7 @@ public class Assessment {
                 .add("user=" + user)
                 .add("movie=" + movie)
                 .add("comment='" + comment + "'")
+                .add("createdAt=" + createdAt)
                 .toString();
     }
 }
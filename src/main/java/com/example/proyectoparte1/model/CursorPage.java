@@ -0,0 +1,48 @@
+package com.example.proyectoparte1.model;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+//Página obtenida por cursor: además del contenido guarda el cursor opaco para pedir la página siguiente
+public class CursorPage<T> {
+
+    private final List<T> content;
+
+    //Será null cuando no queden más resultados
+    private final String nextCursor;
+
+    // Constructor completo
+    public CursorPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters
+    public List<T> getContent() { return content; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasNext() { return nextCursor != null; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CursorPage<?> that = (CursorPage<?>) o;
+        return Objects.equals(content, that.content) && Objects.equals(nextCursor, that.nextCursor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(content, nextCursor);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", CursorPage.class.getSimpleName() + "[", "]")
+                .add("content=" + content)
+                .add("nextCursor='" + nextCursor + "'")
+                .toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.proyectoparte1.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(
+        name = "FriendRecommendation",
+        description = "Usuario con el número de amigos que tiene en común con otro usuario"
+)
+public class FriendRecommendation {
+
+    @Schema(description = "Correo del usuario", example = "amigo@example.com")
+    private final String email;
+
+    @Schema(description = "Nombre del usuario", example = "Ana García")
+    private final String name;
+
+    @Schema(description = "Amigos en común", example = "7")
+    private final int mutualFriends;
+
+    // Constructor completo
+    public FriendRecommendation(String email, String name, int mutualFriends) {
+        this.email = email;
+        this.name = name;
+        this.mutualFriends = mutualFriends;
+    }
+
+    // Getters
+    public String getEmail() { return email; }
+    public String getName() { return name; }
+    public int getMutualFriends() { return mutualFriends; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FriendRecommendation that = (FriendRecommendation) o;
+        return mutualFriends == that.mutualFriends && Objects.equals(email, that.email) && Objects.equals(name, that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(email, name, mutualFriends);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", FriendRecommendation.class.getSimpleName() + "[", "]")
+                .add("email='" + email + "'")
+                .add("name='" + name + "'")
+                .add("mutualFriends=" + mutualFriends)
+                .toString();
+    }
+}
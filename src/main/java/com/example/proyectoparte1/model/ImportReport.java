@@ -0,0 +1,85 @@
+package com.example.proyectoparte1.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "ImportReport",
+        description = "Resultado de una importación masiva de películas"
+)
+public class ImportReport {
+
+    @Schema(description = "Líneas con contenido leídas", example = "500000")
+    private long lines;
+
+    @Schema(description = "Películas insertadas", example = "499812")
+    private long imported;
+
+    @Schema(description = "Líneas rechazadas (JSON inválido, validación, título duplicado o error de escritura)", example = "188")
+    private long failed;
+
+    @Schema(description = "Duración de la importación en milisegundos", example = "41250")
+    private long elapsedMillis;
+
+    @Schema(description = "Películas insertadas por segundo", example = "12117.3")
+    private double moviesPerSecond;
+
+    @Schema(description = "Errores por línea (como máximo los primeros 1000)")
+    private List<LineError> errors = new ArrayList<>();
+
+    // Constructor por defecto
+    public ImportReport() {}
+
+    // Getters y Setters con estilo encadenado
+    public long getLines() { return lines; }
+    public ImportReport setLines(long lines) { this.lines = lines; return this; }
+    public long getImported() { return imported; }
+    public ImportReport setImported(long imported) { this.imported = imported; return this; }
+    public long getFailed() { return failed; }
+    public ImportReport setFailed(long failed) { this.failed = failed; return this; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public ImportReport setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; return this; }
+    public double getMoviesPerSecond() { return moviesPerSecond; }
+    public ImportReport setMoviesPerSecond(double moviesPerSecond) { this.moviesPerSecond = moviesPerSecond; return this; }
+    public List<LineError> getErrors() { return errors; }
+    public ImportReport setErrors(List<LineError> errors) { this.errors = errors; return this; }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ImportReport.class.getSimpleName() + "[", "]")
+                .add("lines=" + lines)
+                .add("imported=" + imported)
+                .add("failed=" + failed)
+                .add("elapsedMillis=" + elapsedMillis)
+                .add("moviesPerSecond=" + moviesPerSecond)
+                .add("errors=" + errors.size())
+                .toString();
+    }
+
+    @Schema(name = "ImportLineError", description = "Error en una línea del fichero importado")
+    public static class LineError {
+
+        @Schema(description = "Número de línea, empezando en 1", example = "1532")
+        private final long line;
+
+        @Schema(description = "Motivo del rechazo", example = "title: El título de la película no puede ser vacío")
+        private final String error;
+
+        public LineError(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() { return line; }
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            return line + ": " + error;
+        }
+    }
+}
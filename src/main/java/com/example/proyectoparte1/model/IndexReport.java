@@ -0,0 +1,48 @@
+package com.example.proyectoparte1.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "IndexReport",
+        description = "Estado de los índices de MongoDB frente al conjunto de índices que declara la aplicación"
+)
+public class IndexReport {
+
+    @Schema(description = "Índices declarados que no existían (coleccion.nombre)", example = "[\"films.title_1__id_1\"]")
+    private final List<String> missing = new ArrayList<>();
+
+    @Schema(description = "Índices que se han creado en esta ejecución", example = "[\"films.title_1__id_1\"]")
+    private final List<String> created = new ArrayList<>();
+
+    @Schema(description = "Índices sin ningún uso desde el último reinicio del servidor según $indexStats", example = "[\"users.friends_id_1\"]")
+    private final List<String> unused = new ArrayList<>();
+
+    @Schema(description = "Índices que existen en la base de datos pero no declara la aplicación", example = "[\"films.runtime_1\"]")
+    private final List<String> undeclared = new ArrayList<>();
+
+    @Schema(description = "Consultas recientes resueltas con COLLSCAN según el profiler (vacío si el profiler está desactivado)")
+    private final List<String> collectionScans = new ArrayList<>();
+
+    // Getters
+    public List<String> getMissing() { return missing; }
+    public List<String> getCreated() { return created; }
+    public List<String> getUnused() { return unused; }
+    public List<String> getUndeclared() { return undeclared; }
+    public List<String> getCollectionScans() { return collectionScans; }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", IndexReport.class.getSimpleName() + "[", "]")
+                .add("missing=" + missing)
+                .add("created=" + created)
+                .add("unused=" + unused)
+                .add("undeclared=" + undeclared)
+                .add("collectionScans=" + collectionScans)
+                .toString();
+    }
+}
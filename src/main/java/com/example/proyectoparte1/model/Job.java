@@ -0,0 +1,128 @@
+package com.example.proyectoparte1.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Document(collection = "jobs")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(
+        name = "Job",
+        description = "Trabajo de mantenimiento que se ejecuta en segundo plano, con su progreso"
+)
+public class Job {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    @Schema(description = "ID del trabajo", example = "3f2c9a1e-7b4d-4c1a-9e55-0a4f7c2d9b10")
+    private String id;
+
+    @Schema(description = "Tipo de trabajo", example = "movie-comments-delete")
+    private String type;
+
+    @Schema(description = "Sobre qué se ejecuta el trabajo", example = "Comentarios de la película 573a1390f29313caabcd4135")
+    private String description;
+
+    @Schema(description = "Datos con los que se ejecuta el trabajo, también al retomarlo tras un reinicio", example = "{\"movieId\": \"573a1390f29313caabcd4135\"}")
+    private Map<String, String> parameters = new HashMap<>();
+
+    @Schema(description = "Estado del trabajo", example = "RUNNING")
+    private volatile Status status = Status.RUNNING;
+
+    @Schema(description = "Elementos a procesar estimados al lanzar el trabajo", example = "48210")
+    private volatile long total;
+
+    @Schema(description = "Elementos procesados hasta ahora", example = "12000")
+    private volatile long processed;
+
+    @Schema(description = "Documentos afectados por cada paso del trabajo", example = "{\"friendsUpdated\": 12, \"commentsAnonymized\": 340}")
+    private Map<String, Long> counts = new ConcurrentHashMap<>();
+
+    @Schema(description = "Motivo del fallo, si el trabajo ha fallado")
+    private volatile String error;
+
+    @Schema(description = "Momento en que se lanzó el trabajo")
+    private Instant startedAt = Instant.now();
+
+    @Schema(description = "Momento en que terminó el trabajo")
+    private volatile Instant finishedAt;
+
+    //Hasta cuándo lo está ejecutando una instancia; después otra puede retomarlo
+    @JsonIgnore
+    private Instant lockedUntil;
+
+    // Constructor por defecto, para leerlo de MongoDB
+    public Job() {}
+
+    // Constructor completo
+    public Job(String id, String type, String description, long total) {
+        this.id = id;
+        this.type = type;
+        this.description = description;
+        this.total = total;
+    }
+
+    // Getters
+    public String getId() { return id; }
+    public String getType() { return type; }
+    public String getDescription() { return description; }
+    public Map<String, String> getParameters() { return parameters; }
+    public Status getStatus() { return status; }
+    public long getTotal() { return total; }
+    public long getProcessed() { return processed; }
+    public Map<String, Long> getCounts() { return counts; }
+    public String getError() { return error; }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public Instant getLockedUntil() { return lockedUntil; }
+
+    @Schema(description = "Porcentaje completado", example = "24.9")
+    public double getProgress() {
+        if (status == Status.COMPLETED) {
+            return 100;
+        }
+        return total == 0 ? 0 : Math.min(100, processed * 100.0 / total);
+    }
+
+    // Setters con estilo encadenado; solo los usa el hilo que ejecuta el trabajo
+    public Job setStatus(Status status) { this.status = status; return this; }
+    public Job setTotal(long total) { this.total = total; return this; }
+    public Job setProcessed(long processed) { this.processed = processed; return this; }
+    public Job setError(String error) { this.error = error; return this; }
+    public Job setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; return this; }
+    public Job setLockedUntil(Instant lockedUntil) { this.lockedUntil = lockedUntil; return this; }
+
+    //Añade un dato que el trabajo necesita para ejecutarse; se da al lanzarlo
+    public Job parametro(String clave, String valor) {
+        parameters.put(clave, valor);
+        return this;
+    }
+
+    //Suma documentos afectados a un contador del trabajo
+    public Job contar(String clave, long documentos) {
+        counts.merge(clave, documentos, Long::sum);
+        return this;
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Job.class.getSimpleName() + "[", "]")
+                .add("id='" + id + "'")
+                .add("type='" + type + "'")
+                .add("status=" + status)
+                .add("processed=" + processed)
+                .add("total=" + total)
+                .add("counts=" + counts)
+                .toString();
+    }
+}
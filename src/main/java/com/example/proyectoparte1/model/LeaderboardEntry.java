@@ -0,0 +1,70 @@
+package com.example.proyectoparte1.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "LeaderboardEntry",
+        description = "Película de una clasificación, con los datos por los que se ordena"
+)
+public class LeaderboardEntry {
+
+    @Schema(description = "ID de la película", example = "615d1b2f4f1a4e6f1a4e6f1a")
+    private final String movieId;
+
+    @Schema(description = "Título de la película", example = "Inception")
+    private final String title;
+
+    @Schema(description = "Número de valoraciones", example = "1250")
+    private final long ratingCount;
+
+    @Schema(description = "Valoración media", example = "7.9")
+    private final double ratingAverage;
+
+    @Schema(description = "Media bayesiana: la media ajustada hacia la media global cuando hay pocas valoraciones", example = "7.84")
+    private final double score;
+
+    // Constructor completo
+    public LeaderboardEntry(String movieId, String title, long ratingCount, double ratingAverage, double score) {
+        this.movieId = movieId;
+        this.title = title;
+        this.ratingCount = ratingCount;
+        this.ratingAverage = ratingAverage;
+        this.score = score;
+    }
+
+    // Getters
+    public String getMovieId() { return movieId; }
+    public String getTitle() { return title; }
+    public long getRatingCount() { return ratingCount; }
+    public double getRatingAverage() { return ratingAverage; }
+    public double getScore() { return score; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LeaderboardEntry that = (LeaderboardEntry) o;
+        return ratingCount == that.ratingCount && Double.compare(ratingAverage, that.ratingAverage) == 0 && Double.compare(score, that.score) == 0 && Objects.equals(movieId, that.movieId) && Objects.equals(title, that.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(movieId, title, ratingCount, ratingAverage, score);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", LeaderboardEntry.class.getSimpleName() + "[", "]")
+                .add("movieId='" + movieId + "'")
+                .add("title='" + title + "'")
+                .add("ratingCount=" + ratingCount)
+                .add("ratingAverage=" + ratingAverage)
+                .add("score=" + score)
+                .toString();
+    }
+}
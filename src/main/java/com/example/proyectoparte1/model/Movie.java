@@ -1,6 +1,7 @@
 package com.example.proyectoparte1.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -8,6 +9,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
 
@@ -64,6 +66,8 @@ public class Movie {
             description = "Fecha de estreno personalizada de la película",
             example = "2021-12-25"
     )
+    //En JSON es releaseDate, como su getter y su setter; así Jackson la asocia a este campo
+    @JsonProperty("releaseDate")
     private DateCustom releaseDateCustom;
 
     @Schema(
@@ -120,6 +124,39 @@ public class Movie {
     )
     private Long revenue;
 
+    //Resumen de las valoraciones: lo mantiene RatingService a partir de los comentarios, no se puede escribir desde la API
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Schema(
+            description = "Número de valoraciones recibidas",
+            example = "1250",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    private Long ratingCount;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Schema(
+            description = "Suma de todas las valoraciones recibidas",
+            example = "9875",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    private Long ratingSum;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Schema(
+            description = "Valoración media (ratingSum / ratingCount)",
+            example = "7.9",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    private Double ratingAverage;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Schema(
+            description = "Número de valoraciones de cada nota, del 1 al 10",
+            example = "{\"7\": 300, \"8\": 520, \"9\": 210}",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    private Map<String, Long> ratingHistogram;
+
     // Constructor por defecto
     public Movie() {}
 
@@ -176,6 +213,14 @@ public class Movie {
     public Movie setRuntime(Integer runtime) { this.runtime = runtime; return this; }
     public Long getRevenue() { return revenue; }
     public Movie setRevenue(Long revenue) { this.revenue = revenue; return this; }
+    public Long getRatingCount() { return ratingCount; }
+    public Movie setRatingCount(Long ratingCount) { this.ratingCount = ratingCount; return this; }
+    public Long getRatingSum() { return ratingSum; }
+    public Movie setRatingSum(Long ratingSum) { this.ratingSum = ratingSum; return this; }
+    public Double getRatingAverage() { return ratingAverage; }
+    public Movie setRatingAverage(Double ratingAverage) { this.ratingAverage = ratingAverage; return this; }
+    public Map<String, Long> getRatingHistogram() { return ratingHistogram; }
+    public Movie setRatingHistogram(Map<String, Long> ratingHistogram) { this.ratingHistogram = ratingHistogram; return this; }
 
     // equals y hashCode
     @Override
@@ -198,12 +243,16 @@ public class Movie {
                 Objects.equals(budget, movie.budget) &&
                 status == movie.status &&
                 Objects.equals(runtime, movie.runtime) &&
-                Objects.equals(revenue, movie.revenue);
+                Objects.equals(revenue, movie.revenue) &&
+                Objects.equals(ratingCount, movie.ratingCount) &&
+                Objects.equals(ratingSum, movie.ratingSum) &&
+                Objects.equals(ratingAverage, movie.ratingAverage) &&
+                Objects.equals(ratingHistogram, movie.ratingHistogram);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, overview, tagline, collection, genres, releaseDateCustom, keywords, producers, crew, cast, resources, budget, status, runtime, revenue);
+        return Objects.hash(id, title, overview, tagline, collection, genres, releaseDateCustom, keywords, producers, crew, cast, resources, budget, status, runtime, revenue, ratingCount, ratingSum, ratingAverage, ratingHistogram);
     }
 
     // toString
@@ -226,6 +275,10 @@ public class Movie {
                 .add("status=" + status)
                 .add("runtime=" + runtime)
                 .add("revenue=" + revenue)
+                .add("ratingCount=" + ratingCount)
+                .add("ratingSum=" + ratingSum)
+                .add("ratingAverage=" + ratingAverage)
+                .add("ratingHistogram=" + ratingHistogram)
                 .toString();
     }
 }
@@ -0,0 +1,71 @@
+package com.example.proyectoparte1.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "MovieFacets",
+        description = "Recuentos de las películas que cumplen un filtro, agrupadas por género, año de estreno, estado y duración"
+)
+public class MovieFacets {
+
+    @Schema(description = "Número total de películas que cumplen el filtro", example = "1520")
+    private long total;
+
+    @Schema(description = "Películas por género, de más a menos frecuente", example = "{\"Drama\": 640, \"Comedy\": 410}")
+    private Map<String, Long> genres = new LinkedHashMap<>();
+
+    @Schema(description = "Películas por año de estreno, del más reciente al más antiguo", example = "{\"2016\": 120, \"2015\": 98}")
+    private Map<String, Long> years = new LinkedHashMap<>();
+
+    @Schema(description = "Películas por estado", example = "{\"RELEASED\": 1500, \"UNRELEASED\": 20}")
+    private Map<String, Long> status = new LinkedHashMap<>();
+
+    @Schema(description = "Películas por duración en minutos; 'other' agrupa las que no tienen duración", example = "{\"0-90\": 300, \"90-120\": 700, \"120-150\": 400, \"150-180\": 80, \"180+\": 20, \"other\": 20}")
+    private Map<String, Long> runtime = new LinkedHashMap<>();
+
+    // Constructor por defecto
+    public MovieFacets() {}
+
+    // Getters y Setters con estilo encadenado
+    public long getTotal() { return total; }
+    public MovieFacets setTotal(long total) { this.total = total; return this; }
+    public Map<String, Long> getGenres() { return genres; }
+    public MovieFacets setGenres(Map<String, Long> genres) { this.genres = genres; return this; }
+    public Map<String, Long> getYears() { return years; }
+    public MovieFacets setYears(Map<String, Long> years) { this.years = years; return this; }
+    public Map<String, Long> getStatus() { return status; }
+    public MovieFacets setStatus(Map<String, Long> status) { this.status = status; return this; }
+    public Map<String, Long> getRuntime() { return runtime; }
+    public MovieFacets setRuntime(Map<String, Long> runtime) { this.runtime = runtime; return this; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MovieFacets that = (MovieFacets) o;
+        return total == that.total && Objects.equals(genres, that.genres) && Objects.equals(years, that.years) && Objects.equals(status, that.status) && Objects.equals(runtime, that.runtime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(total, genres, years, status, runtime);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MovieFacets.class.getSimpleName() + "[", "]")
+                .add("total=" + total)
+                .add("genres=" + genres)
+                .add("years=" + years)
+                .add("status=" + status)
+                .add("runtime=" + runtime)
+                .toString();
+    }
+}
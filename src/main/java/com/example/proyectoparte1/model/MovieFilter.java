@@ -0,0 +1,122 @@
+package com.example.proyectoparte1.model;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*Filtros del listado de películas (keyword, genre, releaseDate, crew, cast). Sirve de clave de caché y permite
+ comprobar en memoria si una película cumple los filtros con la misma semántica que la consulta a MongoDB: expresión
+ regular sin distinguir mayúsculas sobre cualquier elemento de la lista, y fecha de estreno exacta.*/
+public class MovieFilter {
+
+    private final String keyword;
+    private final String genre;
+    private final DateCustom releaseDate;
+    private final String crew;
+    private final String cast;
+
+    //Expresiones ya compiladas para coincide, que se llama con cada entrada de la caché en cada escritura
+    private final Pattern patronKeyword;
+    private final Pattern patronGenre;
+    private final Pattern patronCrew;
+    private final Pattern patronCast;
+
+    // Constructor completo
+    public MovieFilter(String keyword, String genre, DateCustom releaseDate, String crew, String cast) {
+        this.keyword = keyword;
+        this.genre = genre;
+        this.releaseDate = releaseDate;
+        this.crew = crew;
+        this.cast = cast;
+        this.patronKeyword = compilar(keyword);
+        this.patronGenre = compilar(genre);
+        this.patronCrew = compilar(crew);
+        this.patronCast = compilar(cast);
+    }
+
+    // Getters
+    public String getKeyword() { return keyword; }
+    public String getGenre() { return genre; }
+    public DateCustom getReleaseDate() { return releaseDate; }
+    public String getCrew() { return crew; }
+    public String getCast() { return cast; }
+
+    public boolean isEmpty() {
+        return keyword == null && genre == null && releaseDate == null && crew == null && cast == null;
+    }
+
+    //Indica si la película aparecería en un listado con estos filtros
+    public boolean coincide(Movie movie) {
+        if (movie == null) {
+            return false;
+        }
+        if (releaseDate != null && !releaseDate.equals(movie.getReleaseDate())) {
+            return false;
+        }
+        return coincideAlguno(keyword, patronKeyword, movie.getKeywords(), Function.identity())
+                && coincideAlguno(genre, patronGenre, movie.getGenres(), Function.identity())
+                && coincideAlguno(crew, patronCrew, movie.getCrew(), Crew::getName)
+                && coincideAlguno(cast, patronCast, movie.getCast(), Cast::getName);
+    }
+
+    //null si no hay filtro o si Java no entiende la expresión
+    private static Pattern compilar(String expresion) {
+        if (expresion == null) {
+            return null;
+        }
+        try {
+            return Pattern.compile(expresion, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    private static <T> boolean coincideAlguno(String expresion, Pattern patron, List<T> valores, Function<T, String> texto) {
+        if (expresion == null) {
+            return true;
+        }
+        if (valores == null) {
+            return false;
+        }
+        if (patron == null) {
+            //Si Java no entiende la expresión no podemos descartar la película: mejor suponer que coincide
+            return true;
+        }
+        for (T valor : valores) {
+            String s = valor == null ? null : texto.apply(valor);
+            if (s != null && patron.matcher(s).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MovieFilter that = (MovieFilter) o;
+        return Objects.equals(keyword, that.keyword) && Objects.equals(genre, that.genre) && Objects.equals(releaseDate, that.releaseDate) && Objects.equals(crew, that.crew) && Objects.equals(cast, that.cast);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keyword, genre, releaseDate, crew, cast);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MovieFilter.class.getSimpleName() + "[", "]")
+                .add("keyword='" + keyword + "'")
+                .add("genre='" + genre + "'")
+                .add("releaseDate=" + releaseDate)
+                .add("crew='" + crew + "'")
+                .add("cast='" + cast + "'")
+                .toString();
+    }
+}
@@ -1,10 +1,15 @@
 package com.example.proyectoparte1.model;
 
+import java.util.List;
+
+//Vista reducida de una película que se usa en los listados, solo con los campos que se muestran en cada página
 public interface MovieSummary {
     String getId();
     String getTitle();
     String getOverview();
-    String getGenres();
-    DateCustom getReleaseDate();  // Si `releaseDate` es una clase personalizada
-    String getResources();
+    List<String> getGenres();
+    DateCustom getReleaseDate();
+    List<Resource> getResources();
+    Double getRatingAverage();
+    Long getRatingCount();
 }
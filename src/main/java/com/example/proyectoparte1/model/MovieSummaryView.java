@@ -0,0 +1,112 @@
+package com.example.proyectoparte1.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.data.annotation.Id;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+//Modelo de lectura de la colección films para los listados. Solo mapea los campos del resumen, de forma que
+//MongoDB devuelve únicamente esos campos (proyección en el servidor) y nunca se construye el grafo completo de Movie
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(
+        name = "MovieSummary",
+        description = "Resumen de una película tal y como aparece en los listados"
+)
+public class MovieSummaryView implements MovieSummary {
+
+    //Campos de la colección films que se piden en la proyección de los listados
+    public static final String[] CAMPOS = {"title", "overview", "genres", "releaseDateCustom", "resources", "ratingAverage", "ratingCount"};
+
+    @Id
+    @Schema(description = "ID único de la película en la base de datos", example = "615d1b2f4f1a4e6f1a4e6f1a")
+    private String id;
+
+    @Schema(description = "Título de la película", example = "Inception")
+    private String title;
+
+    @Schema(description = "Resumen o sinopsis de la película")
+    private String overview;
+
+    @Schema(description = "Lista de géneros asociados a la película", example = "[\"Action\", \"Thriller\"]")
+    private List<String> genres;
+
+    @Schema(description = "Fecha de estreno personalizada de la película")
+    private DateCustom releaseDateCustom;
+
+    @Schema(description = "Recursos adicionales como imágenes o videos")
+    private List<Resource> resources;
+
+    @Schema(description = "Valoración media", example = "7.9")
+    private Double ratingAverage;
+
+    @Schema(description = "Número de valoraciones", example = "1250")
+    private Long ratingCount;
+
+    // Constructor por defecto
+    public MovieSummaryView() {}
+
+    // Getters y Setters con estilo encadenado
+    @Override
+    public String getId() { return id; }
+    public MovieSummaryView setId(String id) { this.id = id; return this; }
+    @Override
+    public String getTitle() { return title; }
+    public MovieSummaryView setTitle(String title) { this.title = title; return this; }
+    @Override
+    public String getOverview() { return overview; }
+    public MovieSummaryView setOverview(String overview) { this.overview = overview; return this; }
+    @Override
+    public List<String> getGenres() { return genres; }
+    public MovieSummaryView setGenres(List<String> genres) { this.genres = genres; return this; }
+    @Override
+    public DateCustom getReleaseDate() { return releaseDateCustom; }
+    public MovieSummaryView setReleaseDate(DateCustom releaseDateCustom) { this.releaseDateCustom = releaseDateCustom; return this; }
+    @Override
+    public List<Resource> getResources() { return resources; }
+    public MovieSummaryView setResources(List<Resource> resources) { this.resources = resources; return this; }
+    @Override
+    public Double getRatingAverage() { return ratingAverage; }
+    public MovieSummaryView setRatingAverage(Double ratingAverage) { this.ratingAverage = ratingAverage; return this; }
+    @Override
+    public Long getRatingCount() { return ratingCount; }
+    public MovieSummaryView setRatingCount(Long ratingCount) { this.ratingCount = ratingCount; return this; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MovieSummaryView that = (MovieSummaryView) o;
+        return Objects.equals(id, that.id) &&
+                Objects.equals(title, that.title) &&
+                Objects.equals(overview, that.overview) &&
+                Objects.equals(genres, that.genres) &&
+                Objects.equals(releaseDateCustom, that.releaseDateCustom) &&
+                Objects.equals(resources, that.resources) &&
+                Objects.equals(ratingAverage, that.ratingAverage) &&
+                Objects.equals(ratingCount, that.ratingCount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, overview, genres, releaseDateCustom, resources, ratingAverage, ratingCount);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MovieSummaryView.class.getSimpleName() + "[", "]")
+                .add("id='" + id + "'")
+                .add("title='" + title + "'")
+                .add("overview='" + overview + "'")
+                .add("genres=" + genres)
+                .add("releaseDate=" + releaseDateCustom)
+                .add("resources=" + resources)
+                .add("ratingAverage=" + ratingAverage)
+                .add("ratingCount=" + ratingCount)
+                .toString();
+    }
+}
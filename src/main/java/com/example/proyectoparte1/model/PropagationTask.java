@@ -0,0 +1,88 @@
+package com.example.proyectoparte1.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Document(collection = "propagations")
+@Schema(
+        name = "PropagationTask",
+        description = "Cambio pendiente de copiar a los comentarios que guardan una copia de la película o del usuario"
+)
+public class PropagationTask {
+
+    public enum Type { MOVIE, USER }
+
+    @Id
+    @Schema(description = "Tipo y entidad cambiada: una sola tarea por entidad", example = "MOVIE:573a1390f29313caabcd4135")
+    private String id;
+
+    @Schema(description = "Tipo de entidad", example = "MOVIE")
+    private Type type;
+
+    @Schema(description = "ID de la película o email del usuario", example = "573a1390f29313caabcd4135")
+    private String entityId;
+
+    @Schema(description = "Valor a copiar: título de la película o nombre del usuario", example = "Inception")
+    private String value;
+
+    @Schema(description = "Aumenta con cada cambio de la entidad, para saber si cambió mientras se propagaba", example = "3")
+    private long version;
+
+    @Schema(description = "A partir de cuándo se puede propagar (se retrasa con cada cambio)")
+    private Instant dueAt;
+
+    @Schema(description = "Hasta cuándo la está propagando un proceso; después otro puede retomarla")
+    private Instant lockedUntil;
+
+    // Constructor por defecto
+    public PropagationTask() {}
+
+    // Getters
+    public String getId() { return id; }
+    public Type getType() { return type; }
+    public String getEntityId() { return entityId; }
+    public String getValue() { return value; }
+    public long getVersion() { return version; }
+    public Instant getDueAt() { return dueAt; }
+    public Instant getLockedUntil() { return lockedUntil; }
+
+    // Setters con estilo encadenado
+    public PropagationTask setId(String id) { this.id = id; return this; }
+    public PropagationTask setType(Type type) { this.type = type; return this; }
+    public PropagationTask setEntityId(String entityId) { this.entityId = entityId; return this; }
+    public PropagationTask setValue(String value) { this.value = value; return this; }
+    public PropagationTask setVersion(long version) { this.version = version; return this; }
+    public PropagationTask setDueAt(Instant dueAt) { this.dueAt = dueAt; return this; }
+    public PropagationTask setLockedUntil(Instant lockedUntil) { this.lockedUntil = lockedUntil; return this; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PropagationTask that = (PropagationTask) o;
+        return version == that.version && Objects.equals(id, that.id) && type == that.type && Objects.equals(entityId, that.entityId) && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, type, entityId, value, version);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", PropagationTask.class.getSimpleName() + "[", "]")
+                .add("id='" + id + "'")
+                .add("value='" + value + "'")
+                .add("version=" + version)
+                .add("dueAt=" + dueAt)
+                .add("lockedUntil=" + lockedUntil)
+                .toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.proyectoparte1.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+@Schema(
+        name = "Suggestion",
+        description = "Sugerencia de autocompletado: un título de película o el nombre de un miembro del reparto o del equipo"
+)
+public class Suggestion {
+
+    public enum Type { TITLE, CAST, CREW }
+
+    @Schema(description = "Texto sugerido", example = "Inception")
+    private final String text;
+
+    @Schema(description = "Origen de la sugerencia", example = "TITLE")
+    private final Type type;
+
+    @Schema(description = "Popularidad: número de películas en las que aparece", example = "12")
+    private final long weight;
+
+    // Constructor completo
+    public Suggestion(String text, Type type, long weight) {
+        this.text = text;
+        this.type = type;
+        this.weight = weight;
+    }
+
+    // Getters
+    public String getText() { return text; }
+    public Type getType() { return type; }
+    public long getWeight() { return weight; }
+
+    // equals y hashCode
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Suggestion that = (Suggestion) o;
+        return weight == that.weight && Objects.equals(text, that.text) && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, type, weight);
+    }
+
+    // toString
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Suggestion.class.getSimpleName() + "[", "]")
+                .add("text='" + text + "'")
+                .add("type=" + type)
+                .add("weight=" + weight)
+                .toString();
+    }
+}
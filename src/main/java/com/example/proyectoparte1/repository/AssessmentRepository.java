@@ -9,7 +9,8 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface AssessmentRepository extends MongoRepository<Assessment, String> {
 
-    Page<Assessment> findByMovieIdContaining(String movieId, Pageable pageable);
-    Page<Assessment> findByUserEmailContaining(String email, Pageable pageable);
+    //Igualdad exacta sobre movie._id y user._id: usan los índices movie_id_1_rating_1__id_1 y user_id_1_rating_1__id_1
+    Page<Assessment> findByMovieId(String movieId, Pageable pageable);
+    Page<Assessment> findByUserEmail(String email, Pageable pageable);
 
 }
@@ -13,5 +13,4 @@ import org.springframework.data.domain.Pageable;
 public interface UserRepository extends MongoRepository<User, String> {
 
     Page<User> findAll(Pageable pageable);
-    Page<User> findByFriendsEmailContaining(String userId, Pageable pageable);
 }
\ No newline at end of file
@@ -6,29 +6,42 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class AssessmentService {
 
     private final AssessmentRepository assessmentRepository;
+    private final EtagService etagService;
+    private final RatingService ratingService;
+    private final PatchEngine patchEngine;
 
     @Autowired
-    public AssessmentService(AssessmentRepository assessmentRepository) {
+    public AssessmentService(AssessmentRepository assessmentRepository, EtagService etagService, RatingService ratingService,
+                             PatchEngine patchEngine) {
         this.assessmentRepository = assessmentRepository;
+        this.etagService = etagService;
+        this.ratingService = ratingService;
+        this.patchEngine = patchEngine;
     }
 
 
 
     public Page<Assessment> obtenerComentariosUsuario(String email, int page, int size, String sortBy, String direction) {
 
-        PageRequest pageRequest = PageRequest.of(page, size, Sort.Direction.fromString(direction), sortBy);
+        PageRequest pageRequest = paginaComentarios(page, size, sortBy, direction);
 
 
         if(email != null && !email.isEmpty()) {
             //Lo mismo pero en el caso de un user específico
-            return assessmentRepository.findByUserEmailContaining(email, pageRequest);
+            return assessmentRepository.findByUserEmail(email, pageRequest);
         }
 
         return null;
@@ -36,11 +49,11 @@ public class AssessmentService {
     }
     public Page<Assessment> obtenerComentariosPelicula(String movieId, int page, int size, String sortBy, String direction) {
 
-        PageRequest pageRequest = PageRequest.of(page, size, Sort.Direction.fromString(direction), sortBy);
+        PageRequest pageRequest = paginaComentarios(page, size, sortBy, direction);
 
         if(movieId != null && !movieId.isEmpty()) {
             //Si hemos recibido el id de una película buscamos todos los comentarios relacionados con la película
-            return assessmentRepository.findByMovieIdContaining(movieId, pageRequest);
+            return assessmentRepository.findByMovieId(movieId, pageRequest);
         }
 
         return null;
@@ -48,6 +61,29 @@ public class AssessmentService {
     }
 
 
+    /*Las páginas de comentarios solo se ordenan por rating o por id, que son las ordenaciones que cubren los índices
+     (movie._id, rating, _id) y (user._id, rating, _id): la igualdad sobre el primer campo y el orden sobre los siguientes
+     se resuelven recorriendo el índice, sin ordenar en memoria. El _id desempata las valoraciones iguales para que el
+     orden sea estable entre páginas. Cualquier otro campo se trata como rating.*/
+    private static PageRequest paginaComentarios(int page, int size, String sortBy, String direction) {
+        Sort.Direction dir = Sort.Direction.fromString(direction);
+        if ("id".equals(sortBy) || "_id".equals(sortBy)) {
+            return PageRequest.of(page, size, Sort.by(dir, "id"));
+        }
+        return PageRequest.of(page, size, Sort.by(dir, "rating").and(Sort.by(dir, "id")));
+    }
+
+    //ETags de las páginas de comentarios, con los mismos criterios que las consultas del repositorio pero leyendo solo _etag
+    public String etagComentariosUsuario(String email, int page, int size, String sortBy, String direction) {
+        Query filtro = new Query(Criteria.where("user.email").is(email));
+        return etagService.etagPagina(Assessment.class, filtro, paginaComentarios(page, size, sortBy, direction));
+    }
+
+    public String etagComentariosPelicula(String movieId, int page, int size, String sortBy, String direction) {
+        Query filtro = new Query(Criteria.where("movie.id").is(movieId));
+        return etagService.etagPagina(Assessment.class, filtro, paginaComentarios(page, size, sortBy, direction));
+    }
+
     public Assessment obtenerComentario(String commentId){
         Optional<Assessment> optionalAssessment = assessmentRepository.findById(commentId);
         return optionalAssessment.orElse(null);
@@ -56,7 +92,10 @@ public class AssessmentService {
 
     //Anhadir un nuevo comentario a una pelicula
     public Assessment crearComentario(Assessment assessment) {
-        return assessmentRepository.save(assessment);
+        assessment.setCreatedAt(Instant.now());
+        Assessment guardado = assessmentRepository.save(assessment);
+        ratingService.registrar(idPelicula(guardado), null, guardado.getRating());
+        return guardado;
     }
 
     //Modificar un comentario
@@ -64,16 +103,43 @@ public class AssessmentService {
         Optional<Assessment> optional = assessmentRepository.findById(id);
         if (optional.isPresent()) {
             Assessment assessment = optional.get();
+            String peliculaAnterior = idPelicula(assessment);
+            Integer notaAnterior = assessment.getRating();
+
             assessment.setMovie(assessmentNew.getMovie());
             assessment.setUser(assessmentNew.getUser());
             assessment.setComment(assessmentNew.getComment());
             assessment.setRating(assessmentNew.getRating());
 
-            return assessmentRepository.save(assessment);
+            Assessment guardado = assessmentRepository.save(assessment);
+            registrarValoracion(peliculaAnterior, notaAnterior, guardado);
+            return guardado;
         }
         return null;
     }
 
+    /*El resumen de valoraciones se ajusta con la nota y la película leídas antes del parche, así que solo se aplica si el
+     comentario sigue teniéndolas; si otra petición las cambió entre tanto, devuelve null y se usa PatchUtils.*/
+    public Assessment parchearComentario(Assessment anterior, List<Map<String, Object>> updates) {
+        Criteria sinCambios = Criteria.where("rating").is(anterior.getRating()).and("movie.id").is(idPelicula(anterior));
+        Assessment guardado = patchEngine.aplicar(Assessment.class, anterior.getId(), updates, sinCambios);
+        if (guardado != null) {
+            registrarValoracion(idPelicula(anterior), anterior.getRating(), guardado);
+        }
+        return guardado;
+    }
+
+    //Si el comentario cambia de película la valoración pasa de una a otra
+    private void registrarValoracion(String peliculaAnterior, Integer notaAnterior, Assessment guardado) {
+        String peliculaNueva = idPelicula(guardado);
+        if (Objects.equals(peliculaAnterior, peliculaNueva)) {
+            ratingService.registrar(peliculaNueva, notaAnterior, guardado.getRating());
+        } else {
+            ratingService.registrar(peliculaAnterior, notaAnterior, null);
+            ratingService.registrar(peliculaNueva, null, guardado.getRating());
+        }
+    }
+
     //Eliminar un comentario
     public Assessment eliminarComentario(String assessmentId){
         Optional<Assessment> optional = assessmentRepository.findById(assessmentId);
@@ -81,15 +147,20 @@ public class AssessmentService {
             return null;
         }
         assessmentRepository.deleteById(assessmentId);
+        ratingService.registrar(idPelicula(optional.get()), optional.get().getRating(), null);
         return optional.get();
     }
 
+    private static String idPelicula(Assessment assessment) {
+        return assessment.getMovie() == null ? null : assessment.getMovie().getId();
+    }
+
     public Boolean checkCommentUser(String commentId, String email){
         Assessment assessment = obtenerComentario(commentId);
         if(assessment == null){
             return false;
         }
-        //Miramos si el autor del comentario es quien lo quiere eliminar
-        return assessment.getUser().getEmail().equals(email);
+        //Miramos si el autor del comentario es quien lo quiere eliminar (los comentarios anonimizados no tienen autor)
+        return assessment.getUser() != null && Objects.equals(assessment.getUser().getEmail(), email);
     }
 }
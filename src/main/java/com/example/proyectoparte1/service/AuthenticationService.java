@@ -2,42 +2,101 @@ package com.example.proyectoparte1.service;
 
 
 import com.example.proyectoparte1.model.User;
-import com.example.proyectoparte1.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
+
 @Service
-public class AuthenticationService implements UserDetailsService {
-    private final UserRepository users;
+public class AuthenticationService implements UserDetailsService, UserDetailsPasswordService {
+    private final MongoTemplate mongoTemplate;
+
+    // Credenciais dos usuarios que fixeron login hai pouco (security.credentials.ttl). Gárdanse só os datos, non o
+    // UserDetails, porque Spring borra o contrasinal do UserDetails ao rematar a autenticación
+    private final Cache<String, Credenciais> credenciais;
 
     @Autowired
-    public AuthenticationService(UserRepository users) {
-        this.users = users;
+    public AuthenticationService(MongoTemplate mongoTemplate, MeterRegistry meterRegistry,
+                                 @Value("${security.credentials.ttl:60s}") Duration ttl) {
+        this.mongoTemplate = mongoTemplate;
+        this.credenciais = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, credenciais, "users.credentials");
     }
 
     //O método lanzará unha excepción se o usuario non se atopa na base de datos
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        // Buscamos o usuario correspondente ao id proporcionado na base de datos,
+        // Buscamos as credenciais do usuario (na caché ou na base de datos),
         // e lanzamos a excepción no caso de que non exista
-        User user = users.findById(username).orElseThrow(() -> new UsernameNotFoundException(username));
+        Credenciais user = credenciais.get(username, this::cargar);
+        if (user == null) {
+            throw new UsernameNotFoundException(username);
+        }
 
         // Creamos o usuario de spring empregando o builder
         return org.springframework.security.core.userdetails.User.builder()
                 // Establecemos o nome do usuario
-                .username(user.getEmail())
+                .username(user.email())
                 // Establecemos o contrasinal do usuario
-                .password(user.getPassword())
+                .password(user.password())
                 // Establecemos a lista de roles que ten o usuario.
                 // Por convenio, os roles sempre teñen o prefixo "ROLE_"
                 .authorities(AuthorityUtils.commaSeparatedStringToAuthorityList(
-                        String.join(",", user.getRoles())
+                        String.join(",", user.roles())
                 ))
                 // Xeneramos o obxecto do usuario a partir dos datos introducidos no builder
                 .build();
     }
+
+    // Spring chama a este método tras un login correcto cando o contrasinal gardado ten un coste de bcrypt distinto
+    // do configurado, co contrasinal xa cifrado de novo. Só se actualiza ese campo (e o _etag) do usuario
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("email").is(user.getUsername())),
+                new Update().set("password", newPassword).set(EtagService.CAMPO, EtagService.nuevaVersion()),
+                User.class);
+        invalidar(user.getUsername());
+        return org.springframework.security.core.userdetails.User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
+
+    // Hai que chamalo cando cambian o contrasinal ou os roles dun usuario, ou cando se elimina
+    public void invalidar(String email) {
+        credenciais.invalidate(email);
+    }
+
+    // Só se len o email, o contrasinal e os roles, sen a lista de amigos nin o resto do documento
+    private Credenciais cargar(String email) {
+        Query query = new Query(Criteria.where("email").is(email));
+        query.fields().include("email", "password", "roles");
+        User user = mongoTemplate.findOne(query, User.class);
+        if (user == null) {
+            return null;
+        }
+        return new Credenciais(user.getEmail(), user.getPassword(), user.getRoles() == null ? List.of() : List.copyOf(user.getRoles()));
+    }
+
+    private record Credenciais(String email, String password, List<String> roles) {
+    }
 }
@@ -0,0 +1,107 @@
+package com.example.proyectoparte1.service;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/*ETags fuertes para las películas, los usuarios y los comentarios. Cada documento guarda su versión en el campo _etag,
+ que cambia en cada escritura: al guardar desde un repositorio lo pone este listener, y cualquier actualización directa
+ sobre la colección (updateFirst, updateMulti, findAndModify...) debe hacer también $set de _etag.
+
+ Así la versión se puede consultar con una proyección de un único campo, sin leer ni convertir el documento completo.
+ Los documentos anteriores que aún no tienen _etag reciben uno la primera vez que se consultan.*/
+@Service
+public class EtagService extends AbstractMongoEventListener<Object> {
+
+    public static final String CAMPO = "_etag";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public EtagService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    //Nueva versión para un documento que se va a escribir
+    public static String nuevaVersion() {
+        return new ObjectId().toHexString();
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Object> event) {
+        Document documento = event.getDocument();
+        if (documento != null) {
+            documento.put(CAMPO, nuevaVersion());
+        }
+    }
+
+    //ETag del documento con ese id, o null si no existe. Se filtra por la propiedad @Id de la entidad (email en User)
+    public String etag(Class<?> entidad, String id) {
+        String propiedadId = mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(entidad).getRequiredIdProperty().getName();
+        Document documento = leerVersion(entidad, new Query(Criteria.where(propiedadId).is(id)));
+        if (documento == null) {
+            return null;
+        }
+        String version = documento.getString(CAMPO);
+        return version != null ? version : asignarVersion(entidad, documento.get("_id"));
+    }
+
+    /*ETag de una página de resultados: resumen de los ids y versiones de sus documentos en orden y del total de
+     resultados, que también forma parte de la respuesta. Cambia si cambia cualquier documento de la página, su orden o
+     el número de resultados.*/
+    public String etagPagina(Class<?> entidad, Query filtro, Pageable pageable) {
+        Query pagina = Query.of(filtro).with(pageable);
+        pagina.fields().include(CAMPO);
+        List<Document> documentos = mongoTemplate.query(entidad).as(Document.class).matching(pagina).all();
+        long total = mongoTemplate.count(Query.of(filtro), entidad);
+
+        MessageDigest digest = sha256();
+        digest.update((total + ";" + pageable.getPageNumber() + ";" + pageable.getPageSize() + ";").getBytes(StandardCharsets.UTF_8));
+        for (Document documento : documentos) {
+            Object id = documento.get("_id");
+            String version = documento.getString(CAMPO);
+            if (version == null) {
+                version = asignarVersion(entidad, id);
+            }
+            digest.update((id + ":" + version + ";").getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    private Document leerVersion(Class<?> entidad, Query query) {
+        query.fields().include(CAMPO);
+        return mongoTemplate.query(entidad).as(Document.class).matching(query).oneValue();
+    }
+
+    //Solo se escribe si sigue sin versión, por si otra petición se la asignó a la vez; en ese caso se usa la suya
+    private String asignarVersion(Class<?> entidad, Object idDocumento) {
+        Query sinVersion = new Query(Criteria.where("_id").is(idDocumento).and(CAMPO).exists(false));
+        mongoTemplate.updateFirst(sinVersion, Update.update(CAMPO, nuevaVersion()), entidad);
+
+        Document documento = leerVersion(entidad, new Query(Criteria.where("_id").is(idDocumento)));
+        return documento == null ? null : documento.getString(CAMPO);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Assessment;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/*Portada de un usuario: las últimas valoraciones escritas por sus amigos (los de su lista friends).
+
+ Se mezclan con un montículo que guarda solo la cabeza de cada amigo: se saca la más reciente, se avanza ese amigo y
+ así hasta tener las valoraciones pedidas. Primero se lee en paralelo (en el QueryExecutor) solo la última valoración
+ de cada amigo, sobre el índice (user._id, createdAt, _id). Cuando se saca la cabeza de un amigo se abre su consulta,
+ a partir de esa valoración y en lotes pequeños: la mayoría de los amigos aportan una o ninguna valoración, y para ellos
+ no se pide ni se deja abierto nada más.
+
+ La portada mezclada se guarda unos segundos por usuario (users.feed.ttl): recargar la página no repite las consultas,
+ y una valoración nueva aparece como mucho con ese retraso. Se guardan las valoraciones pedidas; si luego se piden más,
+ se vuelve a mezclar con el nuevo tamaño. Mientras FriendshipIndex no está al día los amigos se leen de MongoDB y la
+ portada no se guarda.*/
+@Service
+public class FeedService {
+
+    //Valoraciones que se pueden pedir como mucho
+    public static final int MAX_FEED = 50;
+
+    //Valoraciones que se piden a MongoDB en cada lote de la consulta de un amigo
+    private static final int LOTE = 10;
+
+    //Más recientes primero; las valoraciones anteriores a createdAt (sin fecha) quedan al final, por _id
+    private static final Comparator<Assessment> MAS_RECIENTE = Comparator
+            .comparing(Assessment::getCreatedAt, Comparator.nullsFirst(Comparator.<Instant>naturalOrder()))
+            .thenComparing(Assessment::getId)
+            .reversed();
+
+    private final MongoTemplate mongoTemplate;
+    private final FriendshipIndex friendshipIndex;
+    private final QueryExecutor queryExecutor;
+    private final Cache<String, Portada> cache;
+
+    @Autowired
+    public FeedService(MongoTemplate mongoTemplate, FriendshipIndex friendshipIndex, QueryExecutor queryExecutor,
+                       MeterRegistry meterRegistry, @Value("${users.feed.ttl:30s}") Duration ttl) {
+        this.mongoTemplate = mongoTemplate;
+        this.friendshipIndex = friendshipIndex;
+        this.queryExecutor = queryExecutor;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users.feed");
+    }
+
+    public List<Assessment> obtenerFeed(String email, int size) {
+        int pedidas = Math.min(size, MAX_FEED);
+        Portada portada;
+        if (!friendshipIndex.alDia()) {
+            portada = mezclar(email, pedidas);
+        } else {
+            portada = cache.asMap().compute(email, (clave, actual) -> actual != null && actual.sirve(pedidas) ? actual : mezclar(clave, pedidas));
+        }
+        List<Assessment> feed = portada.valoraciones();
+        return feed.subList(0, Math.min(pedidas, feed.size()));
+    }
+
+    //Mezcla en k vías de las valoraciones de los amigos; solo se materializan las pedidas más una cabeza por amigo
+    private Portada mezclar(String email, int size) {
+        //La lista friends del usuario, tal como la mantiene FriendshipIndex, sin leer el documento
+        List<String> amigos = List.copyOf(friendshipIndex.amigos(email));
+        if (amigos.isEmpty() || size <= 0) {
+            return new Portada(List.of(), true);
+        }
+
+        List<CompletableFuture<Assessment>> ultimas = new ArrayList<>(amigos.size());
+        for (String amigo : amigos) {
+            ultimas.add(queryExecutor.submit(() -> mongoTemplate.findOne(porAutor(amigo, null, 1), Assessment.class)));
+        }
+        PriorityQueue<Cabeza> cabezas = new PriorityQueue<>(amigos.size(), (a, b) -> MAS_RECIENTE.compare(a.actual, b.actual));
+        for (int i = 0; i < amigos.size(); i++) {
+            Assessment ultima = QueryExecutor.esperar(ultimas.get(i));
+            if (ultima != null) {
+                cabezas.add(new Cabeza(amigos.get(i), ultima));
+            }
+        }
+
+        List<Stream<Assessment>> abiertas = new ArrayList<>();
+        try {
+            List<Assessment> feed = new ArrayList<>(size);
+            while (feed.size() < size && !cabezas.isEmpty()) {
+                Cabeza cabeza = cabezas.poll();
+                feed.add(cabeza.actual);
+                if (feed.size() == size) {
+                    break;
+                }
+                if (cabeza.resto == null) {
+                    Stream<Assessment> resto = mongoTemplate.stream(porAutor(cabeza.autor, cabeza.actual, size - feed.size()), Assessment.class);
+                    abiertas.add(resto);
+                    cabeza.resto = resto.iterator();
+                }
+                if (cabeza.resto.hasNext()) {
+                    cabeza.actual = cabeza.resto.next();
+                    cabezas.add(cabeza);
+                }
+            }
+            //Con menos de las pedidas no hay más valoraciones de los amigos: sirve para cualquier tamaño
+            return new Portada(List.copyOf(feed), feed.size() < size);
+        } finally {
+            abiertas.forEach(Stream::close);
+        }
+    }
+
+    //Valoraciones de un autor de más reciente a más antigua, a continuación de despuesDe si se indica
+    private static Query porAutor(String email, Assessment despuesDe, int limite) {
+        Query query = new Query(Criteria.where("user.email").is(email))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+                .limit(limite);
+        if (despuesDe != null) {
+            //El mismo orden que el listado de películas por cursor, con las valoraciones sin fecha al final
+            query.addCriteria(MovieService.criterioSiguientePagina(List.of("createdAt"), Sort.Direction.DESC,
+                    Arrays.asList(despuesDe.getCreatedAt()), despuesDe.getId()));
+        }
+        query.cursorBatchSize(LOTE);
+        return query;
+    }
+
+    //Valoraciones mezcladas y si son todas las de los amigos (hay menos de las que se pidieron)
+    private record Portada(List<Assessment> valoraciones, boolean completa) {
+        private boolean sirve(int pedidas) {
+            return completa || valoraciones.size() >= pedidas;
+        }
+    }
+
+    private static final class Cabeza {
+        private final String autor;
+        private Assessment actual;
+        //Consulta del resto de valoraciones del autor, abierta cuando se saca su primera cabeza
+        private Iterator<Assessment> resto;
+
+        private Cabeza(String autor, Assessment actual) {
+            this.autor = autor;
+            this.actual = actual;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.User;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*Relaciones de amistad en memoria para las comprobaciones de @PreAuthorize (isAmigo), que se evalúan antes de cada
+ lectura de un usuario o de sus comentarios por parte de otro usuario. Guarda, por email, el conjunto de emails de su
+ lista de amigos y el inverso (en qué listas aparece), de forma que consultar una amistad es un acceso a un HashSet y
+ eliminar un usuario no obliga a recorrer todas las listas.
+
+ Se carga al arrancar desde users leyendo solo friends._id y UserService lo mantiene al día en cada cambio de amigos.
+ Los cambios que hace otra instancia no pasan por aquí, así que cada cambio suma uno a un contador compartido en
+ MongoDB (documento friendships de la colección versions) y cada users.friendships.check-interval se compara con el
+ último que conoce esta instancia. Si otra instancia lo ha movido, el índice deja de estar al día y se recarga.
+ Mientras no está al día (también durante la primera carga) esAmigo y amigos consultan MongoDB, de modo que una amistad
+ quitada en otra instancia deja de autorizar como mucho un intervalo después. Los cambios hechos directamente en la
+ base de datos, sin pasar por la aplicación, no mueven el contador.
+
+ La recarga se hace aparte, sin bloquear las consultas, y sustituye a las relaciones actuales al terminar; las listas
+ que cambian en esta instancia mientras tanto se copian a las nuevas.*/
+@Component
+public class FriendshipIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FriendshipIndex.class);
+
+    //Contador compartido de cambios de amigos
+    private static final String COLECCION_VERSIONES = "versions";
+    private static final String CONTADOR = "friendships";
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration intervalo;
+    private final ScheduledExecutorService comprobaciones;
+
+    private volatile Relaciones relaciones = new Relaciones();
+    //Mientras es false, esAmigo y amigos consultan MongoDB
+    private volatile boolean alDia = false;
+    //Último valor del contador compartido que reflejan las relaciones de esta instancia
+    private long versionCompartida;
+    //Durante una carga, usuarios cuya lista ha cambiado en esta instancia, para copiarla a las relaciones nuevas
+    private Set<String> cambiadosDuranteCarga;
+    //Aumenta con cada cambio, para que quien construya estructuras a partir del índice sepa si están al día
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public FriendshipIndex(MongoTemplate mongoTemplate, @Value("${users.friendships.check-interval:5s}") Duration intervalo) {
+        this.mongoTemplate = mongoTemplate;
+        this.intervalo = intervalo;
+        this.comprobaciones = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "friendship-check");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void arrancar() {
+        cargar();
+        comprobaciones.scheduleWithFixedDelay(this::comprobar, intervalo.toMillis(), intervalo.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /*Lee todas las listas en unas relaciones nuevas y las publica. El contador se lee antes que los usuarios: si otra
+     instancia cambia algo durante la carga, la siguiente comprobación verá un contador mayor y volverá a cargar.*/
+    public void cargar() {
+        synchronized (this) {
+            if (cambiadosDuranteCarga != null) {
+                return;
+            }
+            cambiadosDuranteCarga = new HashSet<>();
+        }
+        long inicio = System.currentTimeMillis();
+        Relaciones nuevas = new Relaciones();
+        long leida;
+        long enlaces = 0;
+        try {
+            leida = leerContador();
+            Query query = new Query();
+            query.fields().include("email", "friends.email");
+            query.cursorBatchSize(1000);
+            try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+                for (User user : (Iterable<User>) users::iterator) {
+                    for (String friend : emails(user.getFriends())) {
+                        nuevas.enlazar(user.getEmail(), friend);
+                        enlaces++;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                cambiadosDuranteCarga = null;
+            }
+            log.error("No se pudo cargar el índice de amistades; se consulta MongoDB hasta el siguiente intento", e);
+            return;
+        }
+
+        synchronized (this) {
+            for (String email : cambiadosDuranteCarga) {
+                nuevas.reemplazar(email, relaciones.lista(email));
+            }
+            cambiadosDuranteCarga = null;
+            relaciones = nuevas;
+            versionCompartida = leida;
+            alDia = true;
+            version.incrementAndGet();
+        }
+        log.info("Índice de amistades cargado: {} usuarios con amigos, {} relaciones en {} ms",
+                nuevas.amigos.size(), enlaces, System.currentTimeMillis() - inicio);
+    }
+
+    //Recarga si otra instancia ha cambiado amigos desde la última carga (o si un cambio de esta lo detectó)
+    void comprobar() {
+        try {
+            long leida = leerContador();
+            synchronized (this) {
+                if (leida > versionCompartida) {
+                    alDia = false;
+                }
+            }
+            if (!alDia) {
+                cargar();
+            }
+        } catch (RuntimeException e) {
+            log.error("No se pudo comprobar si el índice de amistades está al día", e);
+        }
+    }
+
+    //¿Está usuario en la lista de amigos de propietario?
+    public boolean esAmigo(String propietario, String usuario) {
+        if (!alDia) {
+            return mongoTemplate.exists(new Query(Criteria.where("email").is(propietario).and("friends.email").is(usuario)), User.class);
+        }
+        return relaciones.lista(propietario).contains(usuario);
+    }
+
+    //Emails de la lista de amigos del usuario (vista de solo lectura, puede cambiar mientras se recorre)
+    public Set<String> amigos(String email) {
+        if (!alDia) {
+            return amigosEnMongo(email);
+        }
+        return Collections.unmodifiableSet(relaciones.lista(email));
+    }
+
+    //Listas de amigos de todos los usuarios que tienen alguno (vista de solo lectura)
+    public Map<String, Set<String>> listas() {
+        return Collections.unmodifiableMap(relaciones.amigos);
+    }
+
+    //Mientras es false, esAmigo y amigos consultan MongoDB y lo que se construya a partir del índice no debe guardarse
+    public boolean alDia() {
+        return alDia;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public synchronized void anhadir(String email, String friendEmail) {
+        relaciones.enlazar(email, friendEmail);
+        registrarCambio(List.of(email));
+    }
+
+    public synchronized void quitar(String email, String friendEmail) {
+        relaciones.desenlazar(email, friendEmail);
+        registrarCambio(List.of(email));
+    }
+
+    //Sustituye la lista completa del usuario (alta o modificación del usuario con su lista de amigos)
+    public synchronized void reemplazar(String email, Collection<User> friends) {
+        relaciones.reemplazar(email, emails(friends));
+        registrarCambio(List.of(email));
+    }
+
+    //Usuario eliminado: desaparece su lista y él de las listas de los demás
+    public synchronized void eliminar(String email) {
+        Set<String> cambiados = new HashSet<>(relaciones.inversos.getOrDefault(email, Set.of()));
+        cambiados.add(email);
+        relaciones.reemplazar(email, Set.of());
+        for (String propietario : cambiados) {
+            relaciones.desenlazar(propietario, email);
+        }
+        registrarCambio(cambiados);
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        comprobaciones.shutdownNow();
+    }
+
+    /*Suma el cambio al contador compartido. Si no queda justo una unidad por encima del que conocía esta instancia, otra
+     ha cambiado amigos entre tanto: el índice deja de estar al día hasta la siguiente comprobación, que lo recarga.*/
+    private void registrarCambio(Collection<String> emails) {
+        version.incrementAndGet();
+        if (cambiadosDuranteCarga != null) {
+            cambiadosDuranteCarga.addAll(emails);
+        }
+        try {
+            Document contador = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(CONTADOR)),
+                    new Update().inc("version", 1), FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Document.class, COLECCION_VERSIONES);
+            long nueva = contador.get("version", Number.class).longValue();
+            if (nueva == versionCompartida + 1) {
+                versionCompartida = nueva;
+            } else {
+                alDia = false;
+            }
+        } catch (RuntimeException e) {
+            //Las demás instancias no sabrán de este cambio hasta que recarguen por otro; esta se recarga por si acaso
+            alDia = false;
+            log.error("No se pudo registrar el cambio de amigos en el contador compartido", e);
+        }
+    }
+
+    private long leerContador() {
+        Document contador = mongoTemplate.findOne(new Query(Criteria.where("_id").is(CONTADOR)), Document.class, COLECCION_VERSIONES);
+        return contador == null ? 0 : contador.get("version", Number.class).longValue();
+    }
+
+    private Set<String> amigosEnMongo(String email) {
+        Query query = new Query(Criteria.where("email").is(email));
+        query.fields().include("friends.email");
+        User user = mongoTemplate.findOne(query, User.class);
+        return user == null ? Set.of() : Collections.unmodifiableSet(emails(user.getFriends()));
+    }
+
+    private static Set<String> emails(Collection<User> friends) {
+        Set<String> emails = new HashSet<>();
+        if (friends != null) {
+            for (User friend : friends) {
+                if (friend != null && friend.getEmail() != null) {
+                    emails.add(friend.getEmail());
+                }
+            }
+        }
+        return emails;
+    }
+
+    /*Listas de amigos y sus inversas. Las actuales se modifican con el bloqueo de FriendshipIndex y se leen sin él; las
+     que se están cargando solo las usa el hilo que las carga hasta que se publican.*/
+    private static final class Relaciones {
+        //email -> emails de su lista de amigos
+        private final Map<String, Set<String>> amigos = new ConcurrentHashMap<>();
+        //email -> emails de los usuarios en cuya lista aparece
+        private final Map<String, Set<String>> inversos = new ConcurrentHashMap<>();
+
+        private Set<String> lista(String email) {
+            return amigos.getOrDefault(email, Set.of());
+        }
+
+        private void reemplazar(String email, Set<String> lista) {
+            for (String friend : Set.copyOf(lista(email))) {
+                desenlazar(email, friend);
+            }
+            for (String friend : lista) {
+                enlazar(email, friend);
+            }
+        }
+
+        private void enlazar(String email, String friendEmail) {
+            amigos.computeIfAbsent(email, e -> ConcurrentHashMap.newKeySet()).add(friendEmail);
+            inversos.computeIfAbsent(friendEmail, e -> ConcurrentHashMap.newKeySet()).add(email);
+        }
+
+        private void desenlazar(String email, String friendEmail) {
+            Set<String> lista = amigos.get(email);
+            if (lista != null) {
+                lista.remove(friendEmail);
+                if (lista.isEmpty()) {
+                    amigos.remove(email);
+                }
+            }
+            Set<String> enListas = inversos.get(friendEmail);
+            if (enListas != null) {
+                enListas.remove(email);
+                if (enListas.isEmpty()) {
+                    inversos.remove(friendEmail);
+                }
+            }
+        }
+    }
+}
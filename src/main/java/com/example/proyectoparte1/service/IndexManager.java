@@ -0,0 +1,180 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.IndexReport;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*Conjunto declarado de índices de las colecciones films, comments, users, propagations y jobs. Al arrancar se crean los que falten y se
+ informa de las diferencias con lo que hay en la base de datos: índices que faltaban, índices sin uso según
+ $indexStats, índices que no declara la aplicación y consultas que el profiler registró como COLLSCAN. Junto a cada
+ índice se indica qué consultas lo usan; uno que no usa ninguna solo encarece las escrituras.*/
+@Service
+public class IndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexManager.class);
+
+    private static final Sort.Direction ASC = Sort.Direction.ASC;
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean crearIndices;
+
+    //Índices declarados por colección
+    private final Map<String, List<Index>> indices = new LinkedHashMap<>();
+
+    @Autowired
+    public IndexManager(MongoTemplate mongoTemplate, @Value("${mongo.indexes.create:true}") boolean crearIndices) {
+        this.mongoTemplate = mongoTemplate;
+        this.crearIndices = crearIndices;
+
+        // Listados de películas, con offset (MovieService.consultarMovies) y con cursor (obtenerMoviesCursor): la
+        // ordenación por título, fecha, valoración media o número de valoraciones, desempatando por _id como el cursor.
+        // Los filtros keyword, genre, crew y cast son $regex sin anclar y sin distinguir mayúsculas, que no pueden
+        // acotar un índice; la ordenación los recorre en orden de índice y los filtra sobre los documentos.
+        // title_1__id_1 sirve además la búsqueda de títulos ya existentes al importar (title $in, MovieImportService)
+        declarar("films", new Index().on("title", ASC).on("_id", ASC).named("title_1__id_1"));
+        // También el filtro releaseDate, igualdad sobre los tres campos
+        declarar("films", new Index().on("releaseDateCustom.year", ASC).on("releaseDateCustom.month", ASC)
+                .on("releaseDateCustom.day", ASC).on("_id", ASC).named("releaseDate_1__id_1"));
+        declarar("films", new Index().on("ratingAverage", ASC).on("_id", ASC).named("ratingAverage_1__id_1"));
+        // También las películas con valoraciones (ratingCount > 0) que cargan las clasificaciones de LeaderboardService
+        declarar("films", new Index().on("ratingCount", ASC).on("_id", ASC).named("ratingCount_1__id_1"));
+
+        // Comentarios de una película y de un usuario con las dos ordenaciones permitidas: rating (desempatando por _id) y _id
+        declarar("comments", new Index().on("movie._id", ASC).on("rating", ASC).on("_id", ASC).named("movie_id_1_rating_1__id_1"));
+        declarar("comments", new Index().on("movie._id", ASC).on("_id", ASC).named("movie_id_1__id_1"));
+        declarar("comments", new Index().on("user._id", ASC).on("rating", ASC).on("_id", ASC).named("user_id_1_rating_1__id_1"));
+        declarar("comments", new Index().on("user._id", ASC).on("_id", ASC).named("user_id_1__id_1"));
+        // Últimas valoraciones de cada autor, para la portada de sus amigos
+        declarar("comments", new Index().on("user._id", ASC).on("createdAt", ASC).on("_id", ASC).named("user_id_1_createdAt_1__id_1"));
+
+        // Usuarios que tienen a otro como amigo
+        declarar("users", new Index().on("friends._id", ASC).named("friends_id_1"));
+
+        // Cambios pendientes de copiar a los comentarios, por orden de vencimiento
+        declarar("propagations", new Index().on("dueAt", ASC).named("dueAt_1"));
+
+        // Trabajos en segundo plano pendientes por antigüedad, y los terminados más recientes
+        declarar("jobs", new Index().on("status", ASC).on("startedAt", ASC).named("status_1_startedAt_1"));
+    }
+
+    private void declarar(String coleccion, Index index) {
+        indices.computeIfAbsent(coleccion, c -> new ArrayList<>()).add(index);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void asegurarIndices() {
+        try {
+            IndexReport informe = auditar(crearIndices);
+            log.info("Índices de MongoDB: creados {}, sin uso {}, no declarados {}",
+                    informe.getCreated(), informe.getUnused(), informe.getUndeclared());
+            if (!informe.getMissing().isEmpty() && !crearIndices) {
+                log.warn("Faltan índices declarados: {}", informe.getMissing());
+            }
+            if (!informe.getCollectionScans().isEmpty()) {
+                log.warn("Consultas resueltas con COLLSCAN: {}", informe.getCollectionScans());
+            }
+        } catch (RuntimeException e) {
+            log.error("No se pudieron comprobar los índices de MongoDB", e);
+        }
+    }
+
+    //Compara los índices declarados con los existentes y, si se pide, crea los que falten
+    public IndexReport auditar(boolean crear) {
+        IndexReport informe = new IndexReport();
+
+        for (Map.Entry<String, List<Index>> entrada : indices.entrySet()) {
+            String coleccion = entrada.getKey();
+
+            // Índices existentes por clave normalizada, para reconocerlos aunque tengan otro nombre
+            Map<String, String> existentes = new HashMap<>();
+            for (Document indice : mongoTemplate.getCollection(coleccion).listIndexes()) {
+                existentes.put(claveNormalizada(indice.get("key", Document.class)), indice.getString("name"));
+            }
+
+            List<String> declarados = new ArrayList<>();
+            for (Index index : entrada.getValue()) {
+                Document definicion = index.getIndexKeys();
+                String nombre = index.getIndexOptions().getString("name");
+                String clave = claveNormalizada(definicion);
+                if (existentes.containsKey(clave)) {
+                    declarados.add(existentes.get(clave));
+                    continue;
+                }
+                informe.getMissing().add(coleccion + "." + nombre);
+                if (crear) {
+                    mongoTemplate.indexOps(coleccion).ensureIndex(index);
+                    informe.getCreated().add(coleccion + "." + nombre);
+                    declarados.add(nombre);
+                }
+            }
+
+            for (String nombre : existentes.values()) {
+                if (!nombre.equals("_id_") && !declarados.contains(nombre)) {
+                    informe.getUndeclared().add(coleccion + "." + nombre);
+                }
+            }
+
+            comprobarUso(coleccion, informe);
+            comprobarCollscans(coleccion, informe);
+        }
+        return informe;
+    }
+
+    //$indexStats cuenta los accesos a cada índice desde el último reinicio de mongod
+    private void comprobarUso(String coleccion, IndexReport informe) {
+        try {
+            for (Document estadistica : mongoTemplate.getCollection(coleccion).aggregate(List.of(new Document("$indexStats", new Document())))) {
+                String nombre = estadistica.getString("name");
+                Document accesos = estadistica.get("accesses", Document.class);
+                long operaciones = accesos == null ? 0 : ((Number) accesos.get("ops")).longValue();
+                if (operaciones == 0 && !"_id_".equals(nombre)) {
+                    informe.getUnused().add(coleccion + "." + nombre);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.debug("No se pudo consultar $indexStats de {}", coleccion, e);
+        }
+    }
+
+    //Solo hay datos si el profiler de la base de datos está activado (db.setProfilingLevel)
+    private void comprobarCollscans(String coleccion, IndexReport informe) {
+        String ns = mongoTemplate.getDb().getName() + "." + coleccion;
+        try {
+            Document filtro = new Document("ns", ns).append("planSummary", "COLLSCAN");
+            for (Document operacion : mongoTemplate.getDb().getCollection("system.profile").find(filtro)
+                    .sort(new Document("ts", -1)).limit(20)) {
+                Object comando = operacion.get("command");
+                informe.getCollectionScans().add(ns + " " + (comando instanceof Document documento ? documento.toJson() : operacion.getString("op")));
+            }
+        } catch (RuntimeException e) {
+            log.debug("No se pudo consultar el profiler de {}", ns, e);
+        }
+    }
+
+    //Las claves pueden venir como 1, 1L o 1.0 según quién creó el índice
+    private static String claveNormalizada(Document clave) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> campo : clave.entrySet()) {
+            Object valor = campo.getValue();
+            sb.append(campo.getKey()).append(':')
+                    .append(valor instanceof Number numero ? String.valueOf(numero.intValue()) : String.valueOf(valor))
+                    .append(',');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Job;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*Trabajos de mantenimiento largos (borrados en cascada por lotes...) que se ejecutan fuera de la petición que los
+ lanza. Cada trabajo se guarda en la colección jobs con sus parámetros y su progreso, que es lo que se consulta en
+ /admin/jobs/{id}. Se conservan los últimos trabajos terminados; los que siguen en marcha no se descartan nunca.
+
+ Como PropagationService, una instancia se reserva un trabajo durante un tiempo (lockedUntil) y renueva la reserva cada
+ vez que guarda el progreso. Los trabajos que quedan a medias al parar la aplicación se retoman al arrancar, o cuando
+ vence la reserva de otra instancia, con el ejecutor registrado para su tipo. Por eso los trabajos deben poder
+ repetirse: los borrados y anonimizaciones por lotes vuelven a buscar lo que queda por hacer.
+
+ El pool es pequeño a propósito: estos trabajos compiten con las peticiones por MongoDB y no corre prisa terminarlos.
+ Solo se reserva un trabajo cuando hay un hilo libre para ejecutarlo.*/
+@Service
+public class JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    //Trabajos terminados que se conservan para consultarlos
+    private static final int MAX_TERMINADOS = 100;
+
+    //Tiempo que una instancia se reserva un trabajo; se renueva cada vez que guarda el progreso
+    private static final Duration BLOQUEO = Duration.ofMinutes(2);
+
+    //Cada cuánto se buscan trabajos pendientes o abandonados por otra instancia
+    private static final long INTERVALO_SEGUNDOS = 10;
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, Consumer<Job>> ejecutores = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final Semaphore libres;
+    //Reparte los trabajos entre los hilos libres; todas las reservas se hacen desde este hilo
+    private final ScheduledExecutorService planificador;
+
+    @Autowired
+    public JobService(MongoTemplate mongoTemplate, @Value("${jobs.threads:2}") int hilos) {
+        this.mongoTemplate = mongoTemplate;
+        this.libres = new Semaphore(hilos);
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                tarea -> {
+                    Thread hilo = new Thread(tarea, "job-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+        this.planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "job-scheduler");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void arrancar() {
+        planificador.scheduleWithFixedDelay(this::repartir, 0, INTERVALO_SEGUNDOS, TimeUnit.SECONDS);
+    }
+
+    /*Registra el código que ejecuta los trabajos de un tipo. Recibe el Job con sus parámetros y su progreso (al
+     retomarlo, el guardado) y debe llamar a guardarProgreso tras cada lote.*/
+    public void registrar(String tipo, Consumer<Job> ejecutor) {
+        ejecutores.put(tipo, ejecutor);
+    }
+
+    //Guarda el trabajo y lo ejecuta en segundo plano en cuanto haya un hilo libre
+    public Job lanzar(Job job) {
+        if (!ejecutores.containsKey(job.getType())) {
+            throw new IllegalArgumentException("No hay ejecutor registrado para los trabajos " + job.getType());
+        }
+        mongoTemplate.insert(job);
+        planificador.execute(this::repartir);
+        return job;
+    }
+
+    //Id nuevo para un trabajo que se va a lanzar
+    public static String nuevoId() {
+        return UUID.randomUUID().toString();
+    }
+
+    //Guarda el progreso y los contadores del trabajo y renueva su reserva
+    public void guardarProgreso(Job job) {
+        Instant reserva = Instant.now().plus(BLOQUEO);
+        job.setLockedUntil(reserva);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(job.getId())), new Update()
+                        .set("total", job.getTotal())
+                        .set("processed", job.getProcessed())
+                        .set("counts", Map.copyOf(job.getCounts()))
+                        .set("lockedUntil", reserva),
+                Job.class);
+    }
+
+    public Job obtener(String id) {
+        return mongoTemplate.findById(id, Job.class);
+    }
+
+    //Los que siguen en marcha y los últimos terminados, los más recientes primero
+    public List<Job> listar() {
+        List<Job> lista = new ArrayList<>(mongoTemplate.find(new Query(Criteria.where("status").is(Job.Status.RUNNING)), Job.class));
+        lista.addAll(mongoTemplate.find(terminados().limit(MAX_TERMINADOS), Job.class));
+        lista.sort(Comparator.comparing(Job::getStartedAt).reversed());
+        return lista;
+    }
+
+    //Reserva trabajos pendientes, o con la reserva vencida, mientras haya hilos libres
+    private void repartir() {
+        try {
+            while (libres.tryAcquire()) {
+                Job job = reservar();
+                if (job == null) {
+                    libres.release();
+                    return;
+                }
+                executor.execute(() -> {
+                    try {
+                        ejecutar(job);
+                    } finally {
+                        libres.release();
+                        planificador.execute(this::repartir);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            //Se reintenta en la siguiente pasada; los trabajos siguen en la colección
+            libres.release();
+            log.error("Error buscando trabajos pendientes", e);
+        }
+    }
+
+    //El trabajo pendiente más antiguo que no esté reservando otra instancia (índice status_1_startedAt_1)
+    private Job reservar() {
+        Instant ahora = Instant.now();
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("status").is(Job.Status.RUNNING),
+                new Criteria().orOperator(Criteria.where("lockedUntil").exists(false), Criteria.where("lockedUntil").lt(ahora))))
+                .with(Sort.by("startedAt"));
+        return mongoTemplate.findAndModify(query, new Update().set("lockedUntil", ahora.plus(BLOQUEO)),
+                FindAndModifyOptions.options().returnNew(true), Job.class);
+    }
+
+    private void ejecutar(Job job) {
+        Consumer<Job> ejecutor = ejecutores.get(job.getType());
+        try {
+            if (ejecutor == null) {
+                throw new IllegalStateException("No hay ejecutor registrado para los trabajos " + job.getType());
+            }
+            ejecutor.accept(job);
+            job.setStatus(Job.Status.COMPLETED);
+            log.info("Trabajo {} terminado: {} ({} elementos)", job.getId(), job.getDescription(), job.getProcessed());
+        } catch (RuntimeException e) {
+            job.setStatus(Job.Status.FAILED).setError(e.getMessage());
+            log.error("Trabajo {} fallido: {}", job.getId(), job.getDescription(), e);
+        }
+        job.setFinishedAt(Instant.now());
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(job.getId())), new Update()
+                            .set("status", job.getStatus())
+                            .set("error", job.getError())
+                            .set("total", job.getTotal())
+                            .set("processed", job.getProcessed())
+                            .set("counts", Map.copyOf(job.getCounts()))
+                            .set("finishedAt", job.getFinishedAt())
+                            .unset("lockedUntil"),
+                    Job.class);
+            purgar();
+        } catch (RuntimeException e) {
+            //Al vencer la reserva se volverá a ejecutar, y no habrá nada pendiente
+            log.error("No se pudo guardar el final del trabajo {}", job.getId(), e);
+        }
+    }
+
+    //Borra los trabajos terminados que pasan de MAX_TERMINADOS, los más antiguos
+    private void purgar() {
+        Query sobrantes = terminados().skip(MAX_TERMINADOS);
+        sobrantes.fields().include("id");
+        List<String> ids = mongoTemplate.find(sobrantes, Job.class).stream().map(Job::getId).toList();
+        if (!ids.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("id").in(ids)), Job.class);
+        }
+    }
+
+    private static Query terminados() {
+        return new Query(Criteria.where("status").ne(Job.Status.RUNNING)).with(Sort.by(Sort.Direction.DESC, "startedAt"));
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        planificador.shutdownNow();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.LeaderboardEntry;
+import com.example.proyectoparte1.model.Movie;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*Clasificaciones de películas servidas desde memoria: las mejor valoradas (por media bayesiana) y las más valoradas
+ (por número de valoraciones), en general y por género.
+
+ Cada clasificación guarda como mucho 2K películas ordenadas (K = movies.leaderboard.size) y sabe que son exactamente
+ las 2K primeras. Al cambiar las valoraciones de una película se recoloca en sus clasificaciones: si mejora entra
+ (saliendo la última), y si empeora por debajo de la última conocida se retira, porque entre medias podría haber
+ películas que no se guardan. Solo cuando una clasificación se queda con menos de K películas se vuelve a cargar desde
+ MongoDB, en segundo plano: mientras tanto se sigue sirviendo la clasificación actual, los cambios que llegan se anotan
+ y, al terminar la carga, se aplican sobre la nueva y se sustituye la antigua.
+
+ La media bayesiana es (C * m + suma) / (C + número de valoraciones), con m la media global calculada al cargar y C el
+ peso de esa media (movies.leaderboard.prior-weight): una película con pocas valoraciones no supera a otra con muchas
+ solo por tener un par de dieces.*/
+@Service
+public class LeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
+
+    public enum Criterio { RATING, REVIEWS }
+
+    //Clave de las clasificaciones generales en el mapa de clasificaciones por género
+    private static final String GENERAL = "";
+
+    private final MongoTemplate mongoTemplate;
+    private final int tamano;
+    private final int capacidad;
+    private final double pesoPrevio;
+
+    //Media global de las valoraciones en la última carga completa
+    private volatile double mediaGlobal;
+
+    private final Map<String, Tabla> porValoracion = new ConcurrentHashMap<>();
+    private final Map<String, Tabla> porNumero = new ConcurrentHashMap<>();
+
+    //Recargas de clasificaciones incompletas, de una en una y fuera del bloqueo de las actualizaciones
+    private final ExecutorService recargas = Executors.newSingleThreadExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "leaderboard-reload");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    @Autowired
+    public LeaderboardService(MongoTemplate mongoTemplate,
+                              @Value("${movies.leaderboard.size:100}") int tamano,
+                              @Value("${movies.leaderboard.prior-weight:25}") double pesoPrevio) {
+        this.mongoTemplate = mongoTemplate;
+        this.tamano = tamano;
+        this.capacidad = 2 * tamano;
+        this.pesoPrevio = pesoPrevio;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void construir() {
+        long inicio = System.currentTimeMillis();
+        try {
+            mediaGlobal = calcularMediaGlobal();
+            porValoracion.clear();
+            porNumero.clear();
+            try (Stream<Movie> movies = mongoTemplate.stream(consultaValoradas(null), Movie.class)) {
+                movies.forEach(movie -> {
+                    Entrada entrada = entrada(movie);
+                    tabla(porValoracion, GENERAL).poner(entrada);
+                    tabla(porNumero, GENERAL).poner(entrada);
+                    for (String genero : entrada.generos()) {
+                        tabla(porValoracion, genero).poner(entrada);
+                        tabla(porNumero, genero).poner(entrada);
+                    }
+                });
+            }
+            log.info("Clasificaciones construidas: {} géneros, media global {} en {} ms",
+                    porValoracion.size() - 1, String.format(Locale.ROOT, "%.3f", mediaGlobal), System.currentTimeMillis() - inicio);
+        } catch (RuntimeException e) {
+            log.error("No se pudieron construir las clasificaciones", e);
+        }
+    }
+
+    //Lectura sin acceso a la base de datos: cada clasificación publica una lista inmutable con sus K primeras
+    public List<LeaderboardEntry> top(Criterio criterio, String genero, int limite) {
+        Map<String, Tabla> tablas = criterio == Criterio.REVIEWS ? porNumero : porValoracion;
+        Tabla tabla = tablas.get(genero == null ? GENERAL : clave(genero));
+        if (tabla == null) {
+            return List.of();
+        }
+        List<LeaderboardEntry> top = tabla.top;
+        return top.subList(0, Math.min(limite, top.size()));
+    }
+
+    //Recoloca la película con sus valoraciones y géneros actuales (viene de RatingService o de modificar la película)
+    public synchronized void actualizar(Movie movie) {
+        if (movie == null || movie.getId() == null) {
+            return;
+        }
+        if (movie.getRatingCount() == null || movie.getRatingCount() <= 0) {
+            eliminar(movie.getId());
+            return;
+        }
+        Entrada entrada = entrada(movie);
+
+        //Si la película ha dejado un género, sale de su clasificación
+        for (Map<String, Tabla> tablas : List.of(porValoracion, porNumero)) {
+            for (Map.Entry<String, Tabla> tabla : tablas.entrySet()) {
+                if (!tabla.getKey().equals(GENERAL) && !entrada.generos().contains(tabla.getKey())) {
+                    quitar(tablas, tabla.getKey(), tabla.getValue(), movie.getId());
+                }
+            }
+        }
+
+        poner(porValoracion, GENERAL, entrada);
+        poner(porNumero, GENERAL, entrada);
+        for (String genero : entrada.generos()) {
+            poner(porValoracion, genero, entrada);
+            poner(porNumero, genero, entrada);
+        }
+    }
+
+    public synchronized void eliminar(String movieId) {
+        for (Map<String, Tabla> tablas : List.of(porValoracion, porNumero)) {
+            for (Map.Entry<String, Tabla> tabla : tablas.entrySet()) {
+                quitar(tablas, tabla.getKey(), tabla.getValue(), movieId);
+            }
+        }
+    }
+
+    private void poner(Map<String, Tabla> tablas, String genero, Entrada entrada) {
+        Tabla tabla = tabla(tablas, genero);
+        tabla.poner(entrada);
+        if (tabla.cambiosDuranteRecarga != null) {
+            tabla.cambiosDuranteRecarga.put(entrada.id(), entrada);
+        }
+        recargarSiFalta(tablas, genero, tabla);
+    }
+
+    private void quitar(Map<String, Tabla> tablas, String genero, Tabla tabla, String movieId) {
+        //La película puede estar en la carga en curso aunque ya no esté en la clasificación actual
+        if (tabla.cambiosDuranteRecarga != null) {
+            tabla.cambiosDuranteRecarga.put(movieId, null);
+        }
+        if (tabla.quitar(movieId)) {
+            recargarSiFalta(tablas, genero, tabla);
+        }
+    }
+
+    /*Una clasificación incompleta con menos de K películas ya no puede garantizar su top K: se vuelve a cargar en
+     segundo plano. Se llama con el bloqueo tomado; la carga se hace fuera de él y solo la sustitución lo toma.*/
+    private void recargarSiFalta(Map<String, Tabla> tablas, String genero, Tabla tabla) {
+        if (tabla.completa || tabla.entradas.size() >= tamano || tabla.cambiosDuranteRecarga != null) {
+            return;
+        }
+        tabla.cambiosDuranteRecarga = new LinkedHashMap<>();
+        recargas.execute(() -> {
+            Tabla nueva = new Tabla(tabla.orden);
+            try (Stream<Movie> movies = mongoTemplate.stream(consultaValoradas(genero.equals(GENERAL) ? null : genero), Movie.class)) {
+                movies.forEach(movie -> {
+                    Entrada entrada = entrada(movie);
+                    if (genero.equals(GENERAL) || entrada.generos().contains(genero)) {
+                        nueva.poner(entrada);
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.error("No se pudo recargar la clasificación '{}'", genero, e);
+                synchronized (this) {
+                    tabla.cambiosDuranteRecarga = null;
+                }
+                return;
+            }
+            sustituir(tablas, genero, tabla, nueva);
+        });
+    }
+
+    //Aplica a la clasificación recargada los cambios que llegaron durante la carga y la publica en lugar de la antigua
+    private synchronized void sustituir(Map<String, Tabla> tablas, String genero, Tabla antigua, Tabla nueva) {
+        Map<String, Entrada> cambios = antigua.cambiosDuranteRecarga;
+        antigua.cambiosDuranteRecarga = null;
+        //Si entre tanto se reconstruyó todo, esta carga ya no sirve
+        if (tablas.get(genero) != antigua) {
+            return;
+        }
+        for (Map.Entry<String, Entrada> cambio : cambios.entrySet()) {
+            if (cambio.getValue() == null) {
+                nueva.quitar(cambio.getKey());
+            } else {
+                nueva.poner(cambio.getValue());
+            }
+        }
+        tablas.put(genero, nueva);
+        recargarSiFalta(tablas, genero, nueva);
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        recargas.shutdownNow();
+    }
+
+    private Tabla tabla(Map<String, Tabla> tablas, String genero) {
+        return tablas.computeIfAbsent(genero, g -> new Tabla(tablas == porNumero ? POR_NUMERO : POR_VALORACION));
+    }
+
+    private Query consultaValoradas(String genero) {
+        Query query = new Query(Criteria.where("ratingCount").gt(0));
+        if (genero != null) {
+            //El género de la clasificación está normalizado; se busca sin distinguir mayúsculas y se filtra después
+            query.addCriteria(Criteria.where("genres").regex("^\\s*" + Pattern.quote(genero) + "\\s*$", "i"));
+        }
+        query.fields().include("title", "genres", "ratingCount", "ratingSum");
+        query.cursorBatchSize(1000);
+        return query;
+    }
+
+    private double calcularMediaGlobal() {
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("ratingCount", new Document("$gt", 0))),
+                new Document("$group", new Document("_id", null)
+                        .append("numero", new Document("$sum", "$ratingCount"))
+                        .append("suma", new Document("$sum", "$ratingSum"))));
+        Document total = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Movie.class)).aggregate(pipeline).first();
+        if (total == null || ((Number) total.get("numero")).longValue() == 0) {
+            return 0;
+        }
+        return ((Number) total.get("suma")).doubleValue() / ((Number) total.get("numero")).doubleValue();
+    }
+
+    private Entrada entrada(Movie movie) {
+        long numero = movie.getRatingCount() == null ? 0 : movie.getRatingCount();
+        long suma = movie.getRatingSum() == null ? 0 : movie.getRatingSum();
+        double bayesiana = (pesoPrevio * mediaGlobal + suma) / (pesoPrevio + numero);
+        List<String> generos = new ArrayList<>();
+        if (movie.getGenres() != null) {
+            for (String genero : movie.getGenres()) {
+                if (genero != null && !generos.contains(clave(genero))) {
+                    generos.add(clave(genero));
+                }
+            }
+        }
+        return new Entrada(movie.getId(), movie.getTitle(), generos, numero, suma, bayesiana);
+    }
+
+    private static String clave(String genero) {
+        return genero.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Comparator<Entrada> POR_VALORACION = Comparator
+            .comparingDouble(Entrada::bayesiana).reversed()
+            .thenComparing(Comparator.comparingLong(Entrada::numero).reversed())
+            .thenComparing(Entrada::id);
+
+    private static final Comparator<Entrada> POR_NUMERO = Comparator
+            .comparingLong(Entrada::numero).reversed()
+            .thenComparing(Comparator.comparingDouble(Entrada::bayesiana).reversed())
+            .thenComparing(Entrada::id);
+
+    private final class Tabla {
+        private final Comparator<Entrada> orden;
+        private final TreeSet<Entrada> entradas;
+        private final Map<String, Entrada> porId = new HashMap<>();
+        //Contiene todas las películas valoradas de su ámbito, no solo las primeras
+        private boolean completa = true;
+        //Mientras se recarga, último estado de cada película cambiada (null si salió), para aplicarlo a la nueva
+        private Map<String, Entrada> cambiosDuranteRecarga;
+        private volatile List<LeaderboardEntry> top = List.of();
+
+        private Tabla(Comparator<Entrada> orden) {
+            this.orden = orden;
+            this.entradas = new TreeSet<>(orden);
+        }
+
+        private void poner(Entrada entrada) {
+            Entrada anterior = porId.remove(entrada.id());
+            if (anterior != null) {
+                entradas.remove(anterior);
+            }
+            //Por debajo de la última conocida no sabemos su posición real
+            if (!completa && !entradas.isEmpty() && orden.compare(entrada, entradas.last()) > 0) {
+                publicar();
+                return;
+            }
+            entradas.add(entrada);
+            porId.put(entrada.id(), entrada);
+            if (entradas.size() > capacidad) {
+                porId.remove(entradas.pollLast().id());
+                completa = false;
+            }
+            publicar();
+        }
+
+        private boolean quitar(String movieId) {
+            Entrada anterior = porId.remove(movieId);
+            if (anterior == null) {
+                return false;
+            }
+            entradas.remove(anterior);
+            publicar();
+            return true;
+        }
+
+        private void publicar() {
+            List<LeaderboardEntry> lista = new ArrayList<>(tamano);
+            for (Entrada entrada : entradas) {
+                if (lista.size() == tamano) {
+                    break;
+                }
+                lista.add(new LeaderboardEntry(entrada.id(), entrada.titulo(), entrada.numero(),
+                        entrada.numero() == 0 ? 0 : (double) entrada.suma() / entrada.numero(), entrada.bayesiana()));
+            }
+            top = List.copyOf(lista);
+        }
+    }
+
+    private record Entrada(String id, String titulo, List<String> generos, long numero, long suma, double bayesiana) {
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.proyectoparte1.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Pool acotado para la comprobación de contraseñas del login. bcrypt es caro a propósito, así que cuando llegan muchos
+ logins a la vez solo se comprueban tantas contraseñas en paralelo como hilos tiene el pool; el resto espera en una cola
+ acotada y, si la cola también está llena, el login se rechaza al momento (RejectedExecutionException) en lugar de
+ ocupar CPU que necesita el resto de la API.
+
+ Cada login se mide en login.latency (incluida la espera en la cola), etiquetado con su resultado.*/
+@Component
+public class LoginExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Timer correctos;
+    private final Timer fallidos;
+    private final Timer rechazados;
+
+    @Autowired
+    public LoginExecutor(MeterRegistry meterRegistry,
+                         @Value("${security.login.threads:0}") int hilos,
+                         @Value("${security.login.queue-size:50}") int tamanhoCola) {
+        //Con 0 hilos se usa un hilo por procesador
+        int numeroHilos = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(numeroHilos, numeroHilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(tamanhoCola),
+                tarea -> {
+                    Thread hilo = new Thread(tarea, "login-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.correctos = temporizador(meterRegistry, "success");
+        this.fallidos = temporizador(meterRegistry, "failure");
+        this.rechazados = temporizador(meterRegistry, "rejected");
+        meterRegistry.gauge("login.queue", executor, pool -> pool.getQueue().size());
+    }
+
+    //Autentica las credenciales en el pool y espera el resultado; lanza RejectedExecutionException si el pool está lleno
+    public Authentication autenticar(AuthenticationManager manager, Authentication credenciales) {
+        long inicio = System.nanoTime();
+        Timer temporizador = fallidos;
+        try {
+            CompletableFuture<Authentication> futuro = CompletableFuture.supplyAsync(() -> manager.authenticate(credenciales), executor);
+            Authentication resultado = QueryExecutor.esperar(futuro);
+            temporizador = correctos;
+            return resultado;
+        } catch (RejectedExecutionException e) {
+            temporizador = rechazados;
+            throw e;
+        } finally {
+            temporizador.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer temporizador(MeterRegistry meterRegistry, String resultado) {
+        return Timer.builder("login.latency")
+                .description("Duración de cada login, desde que llega hasta que se comprueba la contraseña")
+                .tag("outcome", resultado)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.ImportReport;
+import com.example.proyectoparte1.model.Movie;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/*Importación masiva de películas desde NDJSON (una película por línea), opcionalmente comprimido con gzip.
+
+ El fichero se lee en streaming por lotes de líneas. Las líneas de cada lote se parsean y validan en paralelo, los
+ títulos duplicados se comprueban con una sola consulta por lote, y las películas válidas se escriben con una operación
+ bulk no ordenada, de forma que un error en un documento no detiene al resto. Los errores se informan por número de
+ línea.*/
+@Service
+public class MovieImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieImportService.class);
+
+    //Máximo de errores que se detallan en el informe; el resto solo se cuentan
+    private static final int MAX_ERRORES = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MovieSearchIndex movieSearchIndex;
+    private final MovieSuggestIndex movieSuggestIndex;
+    private final MovieQueryCache movieQueryCache;
+    private final int tamanoLote;
+
+    @Autowired
+    public MovieImportService(MongoTemplate mongoTemplate, ObjectMapper objectMapper, Validator validator,
+                              MovieSearchIndex movieSearchIndex, MovieSuggestIndex movieSuggestIndex, MovieQueryCache movieQueryCache,
+                              @Value("${movies.import.batch-size:1000}") int tamanoLote) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.movieSearchIndex = movieSearchIndex;
+        this.movieSuggestIndex = movieSuggestIndex;
+        this.movieQueryCache = movieQueryCache;
+        this.tamanoLote = tamanoLote;
+    }
+
+    public ImportReport importar(InputStream entrada) throws IOException {
+        long inicio = System.nanoTime();
+        ImportReport informe = new ImportReport();
+
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(descomprimir(entrada), StandardCharsets.UTF_8), 1 << 16)) {
+            List<Linea> lote = new ArrayList<>(tamanoLote);
+            long numero = 0;
+            String texto;
+            while ((texto = lector.readLine()) != null) {
+                numero++;
+                if (texto.isBlank()) {
+                    continue;
+                }
+                lote.add(new Linea(numero, texto));
+                if (lote.size() == tamanoLote) {
+                    procesarLote(lote, informe);
+                    lote = new ArrayList<>(tamanoLote);
+                }
+            }
+            if (!lote.isEmpty()) {
+                procesarLote(lote, informe);
+            }
+        } finally {
+            //Las películas nuevas pueden aparecer en cualquier listado, así que se vacía la caché una sola vez al final
+            if (informe.getImported() > 0) {
+                movieQueryCache.invalidarTodo();
+            }
+        }
+
+        long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+        informe.setElapsedMillis(milisegundos);
+        informe.setMoviesPerSecond(milisegundos == 0 ? informe.getImported() : informe.getImported() * 1000.0 / milisegundos);
+        log.info("Importación terminada: {} películas insertadas, {} líneas rechazadas en {} ms ({} películas/s)",
+                informe.getImported(), informe.getFailed(), milisegundos, Math.round(informe.getMoviesPerSecond()));
+        return informe;
+    }
+
+    private void procesarLote(List<Linea> lote, ImportReport informe) {
+        informe.setLines(informe.getLines() + lote.size());
+
+        //Parseo y validación en paralelo; toList conserva el orden de las líneas
+        List<Resultado> resultados = lote.parallelStream().map(this::leerPelicula).toList();
+
+        Set<String> titulos = new HashSet<>();
+        for (Resultado resultado : resultados) {
+            if (resultado.movie() != null) {
+                titulos.add(resultado.movie().getTitle());
+            }
+        }
+        Set<String> existentes = titulos.isEmpty() ? Set.of()
+                : new HashSet<>(mongoTemplate.findDistinct(new Query(Criteria.where("title").in(titulos)), "title", Movie.class, String.class));
+
+        List<Movie> movies = new ArrayList<>(resultados.size());
+        List<Linea> lineas = new ArrayList<>(resultados.size());
+        Set<String> vistos = new HashSet<>();
+        for (Resultado resultado : resultados) {
+            Movie movie = resultado.movie();
+            if (movie == null) {
+                anotarError(informe, resultado.linea(), resultado.error());
+            } else if (existentes.contains(movie.getTitle()) || !vistos.add(movie.getTitle())) {
+                anotarError(informe, resultado.linea(), "Ya existe una película con el título '" + movie.getTitle() + "'");
+            } else {
+                //Asignamos el id antes de insertar para poder actualizar los índices en memoria con las películas insertadas
+                if (movie.getId() == null) {
+                    movie.setId(new ObjectId().toHexString());
+                }
+                movies.add(movie);
+                lineas.add(resultado.linea());
+            }
+        }
+        if (movies.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> fallidas = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Movie.class).insert(movies).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                fallidas.add(error.getIndex());
+                anotarError(informe, lineas.get(error.getIndex()), error.getMessage());
+            }
+        }
+
+        for (int i = 0; i < movies.size(); i++) {
+            if (!fallidas.contains(i)) {
+                movieSearchIndex.indexar(movies.get(i));
+                movieSuggestIndex.actualizar(movies.get(i));
+            }
+        }
+        informe.setImported(informe.getImported() + movies.size() - fallidas.size());
+    }
+
+    private Resultado leerPelicula(Linea linea) {
+        Movie movie;
+        try {
+            movie = objectMapper.readValue(linea.texto(), Movie.class);
+        } catch (JsonProcessingException e) {
+            return new Resultado(linea, null, "JSON inválido: " + e.getOriginalMessage());
+        }
+        if (movie == null) {
+            return new Resultado(linea, null, "La línea no contiene una película");
+        }
+
+        Set<ConstraintViolation<Movie>> violaciones = validator.validate(movie);
+        if (!violaciones.isEmpty()) {
+            String error = violaciones.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return new Resultado(linea, null, error);
+        }
+        return new Resultado(linea, movie, null);
+    }
+
+    private static void anotarError(ImportReport informe, Linea linea, String error) {
+        informe.setFailed(informe.getFailed() + 1);
+        if (informe.getErrors().size() < MAX_ERRORES) {
+            informe.getErrors().add(new ImportReport.LineError(linea.numero(), error));
+        }
+    }
+
+    //Detecta gzip por sus bytes mágicos (1f 8b), tanto si se indicó Content-Encoding como si se subió un .gz sin más
+    private static InputStream descomprimir(InputStream entrada) throws IOException {
+        PushbackInputStream flujo = new PushbackInputStream(entrada, 2);
+        byte[] cabecera = flujo.readNBytes(2);
+        flujo.unread(cabecera);
+        if (cabecera.length == 2 && (cabecera[0] & 0xff) == 0x1f && (cabecera[1] & 0xff) == 0x8b) {
+            return new GZIPInputStream(flujo, 1 << 16);
+        }
+        return flujo;
+    }
+
+    private record Linea(long numero, String texto) {
+    }
+
+    private record Resultado(Linea linea, Movie movie, String error) {
+    }
+}
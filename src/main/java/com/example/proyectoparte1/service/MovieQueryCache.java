@@ -0,0 +1,184 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Movie;
+import com.example.proyectoparte1.model.MovieFacets;
+import com.example.proyectoparte1.model.MovieFilter;
+import com.example.proyectoparte1.model.MovieSummary;
+import com.example.proyectoparte1.model.Resource;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*Caché de los resultados del listado de películas, acotada por memoria estimada (W-TinyLFU de Caffeine) y con
+ caducidad por tiempo. La clave es el filtro junto con la página y la ordenación. Los recuentos de /movies/facets se
+ guardan aparte, con el filtro como clave.
+
+ Cuando se crea, modifica o borra una película solo se invalidan las entradas cuyo filtro la incluye, antes o después
+ del cambio. Para que una consulta que estaba en curso durante la escritura no deje guardado un resultado antiguo, las
+ consultas en curso se registran y la escritura marca como desfasadas las que tienen un filtro afectado; una consulta
+ marcada no guarda su resultado. Así una escritura solo afecta a las lecturas de los listados en los que aparece la
+ película, no a todas las que estén en curso.*/
+@Service
+public class MovieQueryCache {
+
+    //Tamaño aproximado de un objeto vacío y de una referencia, para estimar el peso de cada entrada
+    private static final int BYTES_OBJETO = 16;
+    private static final int BYTES_REFERENCIA = 8;
+
+    private final Cache<Clave, Slice<MovieSummary>> cache;
+    private final Cache<MovieFilter, MovieFacets> facetas;
+    private final Set<Lectura> enCurso = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public MovieQueryCache(MeterRegistry meterRegistry,
+                           @Value("${movies.cache.max-bytes:33554432}") long maxBytes,
+                           @Value("${movies.cache.ttl:60s}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Clave clave, Slice<MovieSummary> valor) -> estimarBytes(valor))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "movies.listing");
+        Gauge.builder("movies.listing.cache.bytes", cache, c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+                .description("Memoria estimada ocupada por la caché del listado de películas")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        //Hay una entrada por combinación de filtros y cada una ocupa poco, basta con limitar el número de entradas
+        this.facetas = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, facetas, "movies.facets");
+    }
+
+    public Slice<MovieSummary> obtener(MovieFilter filtro, int page, int size, String sortBy, Sort.Direction direction, boolean withTotal,
+                                       Supplier<Slice<MovieSummary>> consulta) {
+        return leer(cache, filtro, new Clave(filtro, page, size, sortBy, direction, withTotal), consulta);
+    }
+
+    public MovieFacets obtenerFacetas(MovieFilter filtro, Supplier<MovieFacets> consulta) {
+        return leer(facetas, filtro, filtro, consulta);
+    }
+
+    private <K, V> V leer(Cache<K, V> almacen, MovieFilter filtro, K clave, Supplier<V> consulta) {
+        V resultado = almacen.getIfPresent(clave);
+        if (resultado != null) {
+            return resultado;
+        }
+
+        Lectura lectura = new Lectura(filtro);
+        enCurso.add(lectura);
+        try {
+            resultado = consulta.get();
+            if (!lectura.desfasada) {
+                almacen.put(clave, resultado);
+                //Si una escritura la marcó justo entre la comprobación y el put, su invalidación pudo no ver esta entrada
+                if (lectura.desfasada) {
+                    almacen.invalidate(clave);
+                }
+            }
+        } finally {
+            enCurso.remove(lectura);
+        }
+        return resultado;
+    }
+
+    //Invalida los listados en los que aparecía la película antes del cambio o en los que aparece después
+    public void invalidar(Movie anterior, Movie nueva) {
+        Predicate<MovieFilter> afectado = filtro -> filtro.coincide(anterior) || filtro.coincide(nueva);
+        //Primero se marcan las lecturas en curso y después se borra: una lectura que guarde después de marcarse lo verá
+        marcarDesfasadas(afectado);
+        cache.asMap().keySet().removeIf(clave -> afectado.test(clave.filtro()));
+        facetas.asMap().keySet().removeIf(afectado);
+    }
+
+    /*Tras cambiar las valoraciones de una película solo quedan desfasados los listados ordenados por valoración y las
+     páginas en las que aparece (muestran su media); los recuentos de facetas no dependen de las valoraciones. De las
+     lecturas en curso aún no se sabe qué películas devolverán, así que se marcan todas las de un filtro que la incluye.*/
+    public void invalidarValoraciones(Movie movie) {
+        marcarDesfasadas(filtro -> filtro.coincide(movie));
+        cache.asMap().entrySet().removeIf(entrada -> entrada.getKey().filtro().coincide(movie)
+                && (entrada.getKey().sortBy().startsWith("rating") || contiene(entrada.getValue(), movie.getId())));
+    }
+
+    private void marcarDesfasadas(Predicate<MovieFilter> afectado) {
+        for (Lectura lectura : enCurso) {
+            if (afectado.test(lectura.filtro)) {
+                lectura.desfasada = true;
+            }
+        }
+    }
+
+    private static boolean contiene(Slice<MovieSummary> pagina, String movieId) {
+        for (MovieSummary summary : pagina.getContent()) {
+            if (summary.getId().equals(movieId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void invalidarTodo() {
+        marcarDesfasadas(filtro -> true);
+        cache.invalidateAll();
+        facetas.invalidateAll();
+    }
+
+    private static int estimarBytes(Slice<MovieSummary> valor) {
+        long bytes = BYTES_OBJETO * 4L;
+        for (MovieSummary movie : valor.getContent()) {
+            bytes += BYTES_OBJETO + BYTES_REFERENCIA * 6L;
+            bytes += bytesTexto(movie.getId()) + bytesTexto(movie.getTitle()) + bytesTexto(movie.getOverview());
+            if (movie.getGenres() != null) {
+                for (String genero : movie.getGenres()) {
+                    bytes += BYTES_REFERENCIA + bytesTexto(genero);
+                }
+            }
+            if (movie.getReleaseDate() != null) {
+                bytes += BYTES_OBJETO + 3L * BYTES_OBJETO;
+            }
+            List<Resource> recursos = movie.getResources();
+            if (recursos != null) {
+                for (Resource recurso : recursos) {
+                    bytes += BYTES_REFERENCIA + BYTES_OBJETO + bytesTexto(recurso.getUrl());
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static long bytesTexto(String texto) {
+        return texto == null ? 0 : BYTES_OBJETO + 2L * texto.length();
+    }
+
+    //Consulta a MongoDB en curso para una entrada que no estaba en la caché
+    private static final class Lectura {
+        private final MovieFilter filtro;
+        private volatile boolean desfasada;
+
+        private Lectura(MovieFilter filtro) {
+            this.filtro = filtro;
+        }
+    }
+
+    private record Clave(MovieFilter filtro, int page, int size, String sortBy, Sort.Direction direction, boolean withTotal) {
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Cast;
+import com.example.proyectoparte1.model.Crew;
+import com.example.proyectoparte1.model.Movie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/*Índice invertido en memoria sobre el título, la sinopsis, las palabras clave y los nombres del reparto y del equipo de
+ las películas, con ranking BM25. Sustituye a las búsquedas con $regex sin anclar, que obligan a recorrer toda la
+ colección films en cada consulta.
+
+ Cada película recibe un identificador interno creciente, de modo que las listas de postings se mantienen ordenadas
+ añadiendo siempre al final. Al modificar o borrar una película su identificador antiguo queda marcado como borrado y
+ las listas se compactan cuando los borrados superan una fracción del índice.*/
+@Service
+public class MovieSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieSearchIndex.class);
+
+    // Parámetros habituales de BM25
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // Peso de cada campo: una aparición en el título cuenta como tres en la sinopsis
+    private static final int PESO_TITULO = 3;
+    private static final int PESO_KEYWORDS = 2;
+    private static final int PESO_PERSONAS = 2;
+    private static final int PESO_OVERVIEW = 1;
+
+    //Fracción de documentos borrados a partir de la cual se compactan las listas de postings
+    private static final double UMBRAL_COMPACTACION = 0.2;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //Índice que se consulta; construir lo sustituye por uno nuevo al terminar
+    private Indice indice = new Indice();
+    //Mientras se construye, último estado de cada película cambiada (null si se borró), para aplicarlo al nuevo índice
+    private Map<String, Map<String, Integer>> cambiosDuranteConstruccion;
+
+    @Autowired
+    public MovieSearchIndex(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /*Construcción a partir de la colección, leyendo solo los campos que se indexan. Se construye un índice aparte sin
+     bloquear las búsquedas ni las escrituras, que siguen usando el actual; las películas que se indexan o borran
+     mientras tanto se apuntan y se aplican al nuevo antes de sustituir el actual, para que el documento que leyó la
+     construcción antes de una escritura no la deshaga.*/
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void construir() {
+        Query query = new Query();
+        query.fields().include("title", "overview", "keywords", "cast.name", "crew.name");
+        query.cursorBatchSize(1000);
+
+        lock.writeLock().lock();
+        try {
+            cambiosDuranteConstruccion = new LinkedHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long inicio = System.currentTimeMillis();
+        Indice nuevo = new Indice();
+        try (Stream<Movie> movies = mongoTemplate.stream(query, Movie.class)) {
+            movies.filter(movie -> movie.getId() != null).forEach(movie -> nuevo.indexar(movie.getId(), frecuenciasTerminos(movie)));
+        } catch (RuntimeException e) {
+            log.error("No se pudo construir el índice de búsqueda de películas", e);
+            lock.writeLock().lock();
+            try {
+                cambiosDuranteConstruccion = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            cambiosDuranteConstruccion.forEach((movieId, frecuencias) -> {
+                if (frecuencias == null) {
+                    nuevo.eliminar(movieId);
+                } else {
+                    nuevo.indexar(movieId, frecuencias);
+                }
+            });
+            cambiosDuranteConstruccion = null;
+            indice = nuevo;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Índice de búsqueda construido: {} películas, {} términos en {} ms",
+                nuevo.documentosVivos, nuevo.postings.size(), System.currentTimeMillis() - inicio);
+    }
+
+    //Añade una película al índice, o la reemplaza si ya estaba indexada
+    public void indexar(Movie movie) {
+        if (movie == null || movie.getId() == null) {
+            return;
+        }
+        Map<String, Integer> frecuencias = frecuenciasTerminos(movie);
+
+        lock.writeLock().lock();
+        try {
+            indice.indexar(movie.getId(), frecuencias);
+            if (cambiosDuranteConstruccion != null) {
+                cambiosDuranteConstruccion.put(movie.getId(), frecuencias);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(String movieId) {
+        lock.writeLock().lock();
+        try {
+            indice.eliminar(movieId);
+            if (cambiosDuranteConstruccion != null) {
+                cambiosDuranteConstruccion.put(movieId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Devuelve los ids de las películas de la página pedida, ordenadas por relevancia, junto con el total de resultados
+    public SearchResult buscar(String consulta, int page, int size) {
+        List<String> terminos = TextAnalyzer.tokenizar(consulta).stream().distinct().toList();
+        if (terminos.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            return indice.buscar(terminos, page, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Integer> frecuenciasTerminos(Movie movie) {
+        Map<String, Integer> frecuencias = new HashMap<>();
+        sumar(frecuencias, movie.getTitle(), PESO_TITULO);
+        sumar(frecuencias, movie.getOverview(), PESO_OVERVIEW);
+        if (movie.getKeywords() != null) {
+            movie.getKeywords().forEach(keyword -> sumar(frecuencias, keyword, PESO_KEYWORDS));
+        }
+        if (movie.getCast() != null) {
+            for (Cast cast : movie.getCast()) {
+                sumar(frecuencias, cast.getName(), PESO_PERSONAS);
+            }
+        }
+        if (movie.getCrew() != null) {
+            for (Crew crew : movie.getCrew()) {
+                sumar(frecuencias, crew.getName(), PESO_PERSONAS);
+            }
+        }
+        return frecuencias;
+    }
+
+    private void sumar(Map<String, Integer> frecuencias, String texto, int peso) {
+        for (String token : TextAnalyzer.tokenizar(texto)) {
+            frecuencias.merge(token, peso, Integer::sum);
+        }
+    }
+
+    /*Postings y datos por documento de un índice. No se bloquea: el actual se usa con el bloqueo de MovieSearchIndex y
+     el que se está construyendo solo lo usa el hilo que lo construye hasta que se publica.*/
+    private static final class Indice {
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private final Map<String, Integer> docIdPorPelicula = new HashMap<>();
+
+        // Datos por identificador interno: id de la película (null si está borrada), longitud ponderada y términos distintos
+        private final List<String> peliculas = new ArrayList<>();
+        private final List<String[]> terminosPorDoc = new ArrayList<>();
+        private int[] longitudes = new int[1024];
+
+        private int documentosVivos = 0;
+        private long longitudTotal = 0;
+
+        private void indexar(String movieId, Map<String, Integer> frecuencias) {
+            eliminar(movieId);
+
+            int docId = peliculas.size();
+            int longitud = 0;
+            for (Map.Entry<String, Integer> entrada : frecuencias.entrySet()) {
+                postings.computeIfAbsent(entrada.getKey(), t -> new PostingList()).anhadir(docId, entrada.getValue());
+                longitud += entrada.getValue();
+            }
+
+            peliculas.add(movieId);
+            terminosPorDoc.add(frecuencias.keySet().toArray(new String[0]));
+            if (docId >= longitudes.length) {
+                longitudes = Arrays.copyOf(longitudes, longitudes.length * 2);
+            }
+            longitudes[docId] = longitud;
+            docIdPorPelicula.put(movieId, docId);
+            documentosVivos++;
+            longitudTotal += longitud;
+        }
+
+        private SearchResult buscar(List<String> terminos, int page, int size) {
+            if (documentosVivos == 0) {
+                return new SearchResult(List.of(), 0);
+            }
+            float longitudMedia = (float) longitudTotal / documentosVivos;
+            //Solo los documentos que contienen algún término, en lugar de un array del tamaño de todo el índice
+            Map<Integer, Float> puntuaciones = new HashMap<>();
+
+            for (String termino : terminos) {
+                PostingList lista = postings.get(termino);
+                if (lista == null || lista.vivos == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (documentosVivos - lista.vivos + 0.5) / (lista.vivos + 0.5));
+                for (int i = 0; i < lista.tamanho; i++) {
+                    int doc = lista.docs[i];
+                    if (peliculas.get(doc) == null) {
+                        continue;
+                    }
+                    int tf = lista.frecuencias[i];
+                    float normalizacion = K1 * (1 - B + B * longitudes[doc] / longitudMedia);
+                    puntuaciones.merge(doc, (float) (idf * tf * (K1 + 1) / (tf + normalizacion)), Float::sum);
+                }
+            }
+
+            // Montículo de mínimos con los mejores (page + 1) * size documentos
+            int numCandidatos = puntuaciones.size();
+            int k = (int) Math.min((long) (page + 1) * size, numCandidatos);
+            if (k <= page * size) {
+                return new SearchResult(List.of(), numCandidatos);
+            }
+            PriorityQueue<Map.Entry<Integer, Float>> mejores = new PriorityQueue<>(k, Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Float> candidato : puntuaciones.entrySet()) {
+                if (mejores.size() < k) {
+                    mejores.add(candidato);
+                } else if (candidato.getValue() > mejores.peek().getValue()) {
+                    mejores.poll();
+                    mejores.add(candidato);
+                }
+            }
+
+            // Vaciamos el montículo de peor a mejor y nos quedamos con la página pedida
+            String[] ordenados = new String[mejores.size()];
+            for (int i = ordenados.length - 1; i >= 0; i--) {
+                ordenados[i] = peliculas.get(mejores.poll().getKey());
+            }
+            List<String> pagina = Arrays.asList(ordenados).subList(page * size, ordenados.length);
+            return new SearchResult(new ArrayList<>(pagina), numCandidatos);
+        }
+
+        private void eliminar(String movieId) {
+            Integer docId = docIdPorPelicula.remove(movieId);
+            if (docId == null) {
+                return;
+            }
+            for (String termino : terminosPorDoc.get(docId)) {
+                PostingList lista = postings.get(termino);
+                if (lista != null) {
+                    lista.vivos--;
+                }
+            }
+            peliculas.set(docId, null);
+            terminosPorDoc.set(docId, new String[0]);
+            documentosVivos--;
+            longitudTotal -= longitudes[docId];
+
+            if (peliculas.size() - documentosVivos > UMBRAL_COMPACTACION * peliculas.size() && peliculas.size() > 1024) {
+                compactar();
+            }
+        }
+
+        //Reasigna identificadores internos consecutivos y elimina de las listas los documentos borrados
+        private void compactar() {
+            int[] nuevoId = new int[peliculas.size()];
+            List<String> nuevasPeliculas = new ArrayList<>(documentosVivos);
+            List<String[]> nuevosTerminos = new ArrayList<>(documentosVivos);
+            int[] nuevasLongitudes = new int[Math.max(1024, documentosVivos * 2)];
+
+            for (int doc = 0; doc < peliculas.size(); doc++) {
+                String movieId = peliculas.get(doc);
+                if (movieId == null) {
+                    nuevoId[doc] = -1;
+                    continue;
+                }
+                int id = nuevasPeliculas.size();
+                nuevoId[doc] = id;
+                nuevasPeliculas.add(movieId);
+                nuevosTerminos.add(terminosPorDoc.get(doc));
+                nuevasLongitudes[id] = longitudes[doc];
+                docIdPorPelicula.put(movieId, id);
+            }
+
+            postings.values().removeIf(lista -> lista.vivos == 0);
+            for (PostingList lista : postings.values()) {
+                lista.reasignar(nuevoId);
+            }
+
+            peliculas.clear();
+            peliculas.addAll(nuevasPeliculas);
+            terminosPorDoc.clear();
+            terminosPorDoc.addAll(nuevosTerminos);
+            longitudes = nuevasLongitudes;
+        }
+    }
+
+    //Lista de postings de un término: identificadores internos en orden creciente con su frecuencia ponderada
+    private static final class PostingList {
+        private int[] docs = new int[4];
+        private int[] frecuencias = new int[4];
+        private int tamanho = 0;
+        //Documentos no borrados que contienen el término (df para el idf)
+        private int vivos = 0;
+
+        private void anhadir(int doc, int frecuencia) {
+            if (tamanho == docs.length) {
+                docs = Arrays.copyOf(docs, tamanho * 2);
+                frecuencias = Arrays.copyOf(frecuencias, tamanho * 2);
+            }
+            docs[tamanho] = doc;
+            frecuencias[tamanho] = frecuencia;
+            tamanho++;
+            vivos++;
+        }
+
+        private void reasignar(int[] nuevoId) {
+            int j = 0;
+            for (int i = 0; i < tamanho; i++) {
+                int id = nuevoId[docs[i]];
+                if (id >= 0) {
+                    docs[j] = id;
+                    frecuencias[j] = frecuencias[i];
+                    j++;
+                }
+            }
+            tamanho = j;
+        }
+    }
+
+    //Resultado de una búsqueda: ids de la página en orden de relevancia y número total de películas que coinciden
+    public record SearchResult(List<String> ids, long total) {}
+}
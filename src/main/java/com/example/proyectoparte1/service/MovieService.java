@@ -1,36 +1,84 @@
 package com.example.proyectoparte1.service;
 
 import com.example.proyectoparte1.model.*;
-import com.example.proyectoparte1.repository.AssessmentRepository;
 import com.example.proyectoparte1.repository.MovieRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.propertyeditors.CustomDateEditor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.bson.Document;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @Service
 public class MovieService {
 
     private final MovieRepository movieRepository;
-    private final AssessmentRepository assessmentRepository;
+    private final QueryExecutor queryExecutor;
+    private final MovieSearchIndex movieSearchIndex;
+    private final MovieSuggestIndex movieSuggestIndex;
+    private final MovieQueryCache movieQueryCache;
+    private final EtagService etagService;
+    private final LeaderboardService leaderboardService;
+    private final JobService jobService;
+    private final PropagationService propagationService;
+    private final PatchEngine patchEngine;
+    private final int umbralBorrado;
+    private final int loteBorrado;
+
+    //Tipo del trabajo que borra los comentarios de una película eliminada
+    private static final String BORRADO_COMENTARIOS = "movie-comments-delete";
 
     @Autowired
     private MongoTemplate mongoTemplate;
 
     @Autowired
-    public MovieService(MovieRepository movieRepository, AssessmentRepository assessmentRepository) {
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    public MovieService(MovieRepository movieRepository, QueryExecutor queryExecutor,
+                        MovieSearchIndex movieSearchIndex, MovieSuggestIndex movieSuggestIndex, MovieQueryCache movieQueryCache,
+                        EtagService etagService, LeaderboardService leaderboardService, JobService jobService,
+                        PropagationService propagationService, PatchEngine patchEngine,
+                        @Value("${movies.delete.comments-sync-limit:5000}") int umbralBorrado,
+                        @Value("${movies.delete.comments-batch-size:1000}") int loteBorrado) {
         this.movieRepository = movieRepository;
-        this.assessmentRepository = assessmentRepository;
+        this.queryExecutor = queryExecutor;
+        this.movieSearchIndex = movieSearchIndex;
+        this.movieSuggestIndex = movieSuggestIndex;
+        this.movieQueryCache = movieQueryCache;
+        this.etagService = etagService;
+        this.leaderboardService = leaderboardService;
+        this.jobService = jobService;
+        this.propagationService = propagationService;
+        this.patchEngine = patchEngine;
+        this.umbralBorrado = umbralBorrado;
+        this.loteBorrado = loteBorrado;
     }
 
     public Movie obtenerMovie(String id){
@@ -41,6 +89,11 @@ public class MovieService {
         return movie.get();
     }
 
+    //Versión actual de la película sin cargar el documento, null si no existe
+    public String etagPelicula(String id) {
+        return etagService.etag(Movie.class, id);
+    }
+
     public Page<Movie> obtenerMoviesPorTitulo(String title){
         int size = 10, page = 0;
         String sortBy = "title", direction = "DESC";
@@ -49,9 +102,311 @@ public class MovieService {
         return movieRepository.findByTitle(title, pageRequest);
     }
 
-    public Page<Movie> obtenerTodasMovies(String keyword, String genre, DateCustom releaseDate, String crew, String cast, int page, int size, String sortBy, String direction) {
-        PageRequest pageRequest = PageRequest.of(page, size, Sort.Direction.fromString(direction), sortBy);
-        Query query = new Query().with(pageRequest);
+    /*Con withTotal el recuento y la página se consultan en paralelo. Sin filtros el total sale de estimatedDocumentCount,
+     que lee los metadatos de la colección en lugar de recorrerla. Sin withTotal no se cuenta nada: se pide un elemento
+     más del tamaño de página para saber si hay página siguiente y se devuelve un Slice.
+     Los resultados se sirven desde MovieQueryCache mientras ninguna escritura afecte a los filtros.*/
+    public Slice<MovieSummary> obtenerTodasMovies(String keyword, String genre, DateCustom releaseDate, String crew, String cast, int page, int size, String sortBy, String direction, boolean withTotal) {
+        MovieFilter filtro = new MovieFilter(keyword, genre, releaseDate, crew, cast);
+        Sort.Direction dir = Sort.Direction.fromString(direction);
+        return movieQueryCache.obtener(filtro, page, size, sortBy, dir, withTotal,
+                () -> consultarMovies(filtro, PageRequest.of(page, size, dir, sortBy), withTotal));
+    }
+
+    private Slice<MovieSummary> consultarMovies(MovieFilter filtro, PageRequest pageRequest, boolean withTotal) {
+        int size = pageRequest.getPageSize();
+
+        if (!withTotal) {
+            Query query = construirQuery(filtro).with(pageRequest).limit(size + 1);
+            List<MovieSummary> movies = buscarResumenes(query);
+            boolean hayMas = movies.size() > size;
+            return new SliceImpl<>(hayMas ? movies.subList(0, size) : movies, pageRequest, hayMas);
+        }
+
+        // El recuento usa una consulta propia sin skip ni limit, que count también aplicaría
+        Query recuento = construirQuery(filtro);
+        CompletableFuture<Long> total = recuento.getQueryObject().isEmpty()
+                ? CompletableFuture.completedFuture(mongoTemplate.estimatedCount(Movie.class))
+                : queryExecutor.submit(() -> mongoTemplate.count(recuento, Movie.class));
+
+        // Mientras tanto obtenemos en este hilo solo los documentos de la página actual
+        List<MovieSummary> movies = buscarResumenes(construirQuery(filtro).with(pageRequest));
+
+        return new PageImpl<>(movies, pageRequest, QueryExecutor.esperar(total));
+    }
+
+    /*Escribe en la salida cada película que cumple los filtros como una línea JSON (NDJSON). Se recorre un cursor de
+     MongoDB que trae los documentos por lotes a medida que se escriben, así que la memoria usada no depende del número
+     de películas; si el cliente lee despacio la escritura se bloquea y no se piden más lotes. Con campos solo se
+     exportan esas propiedades de la película (más el id).*/
+    public void exportarPeliculas(String keyword, String genre, DateCustom releaseDate, String crew, String cast, List<String> campos, OutputStream salida) throws IOException {
+        Query query = construirQuery(new MovieFilter(keyword, genre, releaseDate, crew, cast));
+        query.cursorBatchSize(500);
+        if (campos != null) {
+            for (String campo : campos) {
+                if (!campo.isBlank()) {
+                    query.fields().include(campoExportado(campo.trim()));
+                }
+            }
+        }
+
+        //Sin vaciar el buffer tras cada película: se envía cuando se llena el buffer de la respuesta
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (Stream<Movie> movies = mongoTemplate.stream(query, Movie.class);
+             JsonGenerator generador = objectMapper.getFactory().createGenerator(salida)) {
+            //Cada película va en su línea, sin el espacio que Jackson pone por defecto entre valores raíz
+            generador.setRootValueSeparator(null);
+            Iterator<Movie> it = movies.iterator();
+            while (it.hasNext()) {
+                writer.writeValue(generador, it.next());
+                generador.writeRaw('\n');
+            }
+        }
+    }
+
+    //Límites en minutos de los tramos de duración de /movies/facets
+    private static final List<Integer> TRAMOS_DURACION = List.of(0, 90, 120, 150, 180, Integer.MAX_VALUE);
+
+    /*Recuentos por género, año de estreno, estado y tramo de duración de las películas que cumplen los filtros, en una
+     sola agregación con $facet: el $match se aplica una vez y cada rama agrupa sobre el mismo resultado.*/
+    public MovieFacets obtenerFacetas(String keyword, String genre, DateCustom releaseDate, String crew, String cast) {
+        MovieFilter filtro = new MovieFilter(keyword, genre, releaseDate, crew, cast);
+        return movieQueryCache.obtenerFacetas(filtro, () -> consultarFacetas(filtro));
+    }
+
+    private MovieFacets consultarFacetas(MovieFilter filtro) {
+        Document match = construirQuery(filtro).getQueryObject();
+
+        Document facetas = new Document()
+                .append("genres", List.of(
+                        new Document("$unwind", "$genres"),
+                        new Document("$sortByCount", "$genres")))
+                .append("years", List.of(
+                        new Document("$group", new Document("_id", "$releaseDateCustom.year").append("count", new Document("$sum", 1))),
+                        new Document("$sort", new Document("_id", -1))))
+                .append("status", List.of(
+                        new Document("$sortByCount", "$status")))
+                .append("runtime", List.of(
+                        new Document("$bucket", new Document("groupBy", "$runtime")
+                                .append("boundaries", TRAMOS_DURACION)
+                                .append("default", "other")
+                                .append("output", new Document("count", new Document("$sum", 1))))))
+                .append("total", List.of(
+                        new Document("$count", "count")));
+
+        // Los filtros ya están expresados con los nombres de campo del documento, se pasan tal cual
+        AggregationOperation filtrar = contexto -> new Document("$match", match);
+        AggregationOperation agrupar = contexto -> new Document("$facet", facetas);
+
+        Document resultado = mongoTemplate.aggregate(Aggregation.newAggregation(filtrar, agrupar),
+                mongoTemplate.getCollectionName(Movie.class), Document.class).getUniqueMappedResult();
+
+        MovieFacets movieFacets = new MovieFacets();
+        if (resultado == null) {
+            return movieFacets;
+        }
+        List<Document> total = resultado.getList("total", Document.class);
+        movieFacets.setTotal(total.isEmpty() ? 0 : ((Number) total.get(0).get("count")).longValue());
+        copiarRecuentos(resultado.getList("genres", Document.class), movieFacets.getGenres());
+        copiarRecuentos(resultado.getList("years", Document.class), movieFacets.getYears());
+        copiarRecuentos(resultado.getList("status", Document.class), movieFacets.getStatus());
+
+        for (Document tramo : resultado.getList("runtime", Document.class)) {
+            Object desde = tramo.get("_id");
+            String etiqueta;
+            if (desde instanceof Number inicio) {
+                int i = TRAMOS_DURACION.indexOf(inicio.intValue());
+                etiqueta = TRAMOS_DURACION.get(i + 1) == Integer.MAX_VALUE ? inicio + "+" : inicio + "-" + TRAMOS_DURACION.get(i + 1);
+            } else {
+                etiqueta = String.valueOf(desde);
+            }
+            movieFacets.getRuntime().put(etiqueta, ((Number) tramo.get("count")).longValue());
+        }
+        return movieFacets;
+    }
+
+    private static void copiarRecuentos(List<Document> grupos, Map<String, Long> destino) {
+        for (Document grupo : grupos) {
+            Object clave = grupo.get("_id");
+            destino.put(clave == null ? "unknown" : String.valueOf(clave), ((Number) grupo.get("count")).longValue());
+        }
+    }
+
+    //Pide a MongoDB únicamente los campos del resumen, sin construir nunca el grafo completo de Movie
+    private List<MovieSummary> buscarResumenes(Query query) {
+        query.fields().include(MovieSummaryView.CAMPOS);
+        return new ArrayList<>(mongoTemplate.find(query, MovieSummaryView.class, mongoTemplate.getCollectionName(Movie.class)));
+    }
+
+    //Búsqueda de texto libre servida por el índice en memoria; solo se consulta MongoDB para traer los resúmenes de la página
+    public Page<MovieSummary> buscarPeliculas(String consulta, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size);
+        MovieSearchIndex.SearchResult resultado = movieSearchIndex.buscar(consulta, page, size);
+        if (resultado.ids().isEmpty()) {
+            return new PageImpl<>(List.of(), pageRequest, resultado.total());
+        }
+
+        Map<String, MovieSummary> porId = new HashMap<>();
+        for (MovieSummary movie : buscarResumenes(new Query(Criteria.where("id").in(resultado.ids())))) {
+            porId.put(movie.getId(), movie);
+        }
+
+        // Devolvemos los resúmenes en el orden de relevancia del índice
+        List<MovieSummary> movies = new ArrayList<>(resultado.ids().size());
+        for (String id : resultado.ids()) {
+            MovieSummary movie = porId.get(id);
+            if (movie != null) {
+                movies.add(movie);
+            }
+        }
+        return new PageImpl<>(movies, pageRequest, resultado.total());
+    }
+
+    //Autocompletado servido íntegramente desde memoria
+    public List<Suggestion> sugerirPeliculas(String prefijo, int limite) {
+        return movieSuggestIndex.sugerir(prefijo, Math.min(limite, MovieSuggestIndex.MAX_SUGERENCIAS));
+    }
+
+    //Clasificación servida desde memoria por LeaderboardService, sin consultar la base de datos
+    public List<LeaderboardEntry> obtenerTop(LeaderboardService.Criterio criterio, String genero, int limite) {
+        return leaderboardService.top(criterio, genero, limite);
+    }
+
+    /*Paginación por cursor (keyset): en lugar de skip/limit, el cursor guarda el valor del campo de ordenación y el _id
+     del último elemento devuelto, y la siguiente página se busca con predicados de rango sobre esos dos campos. Así el
+     coste de cualquier página es el mismo que el de la primera.*/
+    public CursorPage<MovieSummary> obtenerMoviesCursor(String keyword, String genre, DateCustom releaseDate, String crew, String cast, String cursor, int size, String sortBy, String direction) {
+        Sort.Direction dir = Sort.Direction.fromString(direction);
+        List<String> campos = camposOrden(sortBy);
+        Query query = construirQuery(new MovieFilter(keyword, genre, releaseDate, crew, cast));
+
+        if (cursor != null && !cursor.isBlank()) {
+            Document posicion = decodificarCursor(cursor, campos, dir);
+            query.addCriteria(criterioSiguientePagina(campos, dir, posicion.getList("v", Object.class), posicion.get("id")));
+        }
+
+        Sort sort = Sort.by(dir, "_id");
+        if (!campos.equals(List.of("_id"))) {
+            sort = Sort.by(dir, campos.toArray(String[]::new)).and(sort);
+        }
+        // Pedimos un elemento más de los necesarios para saber si existe una página siguiente
+        query.with(sort).limit(size + 1);
+        query.fields().include(MovieSummaryView.CAMPOS).include(campos.toArray(String[]::new));
+
+        List<Document> documentos = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Movie.class));
+        boolean hayMas = documentos.size() > size;
+        if (hayMas) {
+            documentos = documentos.subList(0, size);
+        }
+
+        List<MovieSummary> movies = new ArrayList<>(documentos.size());
+        for (Document documento : documentos) {
+            movies.add(mongoTemplate.getConverter().read(MovieSummaryView.class, documento));
+        }
+
+        String siguiente = null;
+        if (hayMas) {
+            Document ultimo = documentos.get(documentos.size() - 1);
+            List<Object> valores = new ArrayList<>(campos.size());
+            for (String campo : campos) {
+                valores.add(valorCampo(ultimo, campo));
+            }
+            siguiente = codificarCursor(campos, dir, valores, ultimo.get("_id"));
+        }
+        return new CursorPage<>(movies, siguiente);
+    }
+
+    /*Campos por los que se ordena el listado por cursor. La fecha se guarda como un documento {day, month, year}, y
+     MongoDB compara los documentos campo a campo, así que ordenar por el documento lo haría por el día del mes: se
+     ordena por año, mes y día (índice releaseDate_1__id_1).*/
+    private List<String> camposOrden(String sortBy) {
+        if (sortBy.equals("releaseDate")) {
+            return List.of("releaseDateCustom.year", "releaseDateCustom.month", "releaseDateCustom.day");
+        }
+        return List.of(campoDocumento(sortBy));
+    }
+
+    //Campo que se incluye en la exportación; en el JSON la fecha se llama releaseDate (por su getter), pero el campo es releaseDateCustom
+    private String campoExportado(String campo) {
+        if (campo.equals("releaseDate") || campo.startsWith("releaseDate.")) {
+            return "releaseDateCustom" + campo.substring("releaseDate".length());
+        }
+        return campoDocumento(campo);
+    }
+
+    //Traduce el nombre de la propiedad por la que se ordena al nombre del campo en el documento (por ejemplo, id -> _id)
+    private String campoDocumento(String sortBy) {
+        MongoPersistentEntity<?> entidad = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Movie.class);
+        MongoPersistentProperty propiedad = entidad.getPersistentProperty(sortBy);
+        return propiedad == null ? sortBy : propiedad.getFieldName();
+    }
+
+    /*Un documento va en las páginas siguientes si es igual al último en los i primeros campos y va detrás en el
+     siguiente, o si es igual en todos y tiene un _id posterior (desempate).*/
+    static Criteria criterioSiguientePagina(List<String> campos, Sort.Direction dir, List<Object> valores, Object id) {
+        Criteria mismoId = dir.isAscending() ? Criteria.where("_id").gt(id) : Criteria.where("_id").lt(id);
+        if (campos.equals(List.of("_id"))) {
+            return mismoId;
+        }
+
+        List<Criteria> alternativas = new ArrayList<>();
+        for (int i = 0; i <= campos.size(); i++) {
+            Criteria detras = i < campos.size() ? valoresDetras(campos.get(i), dir, valores.get(i)) : mismoId;
+            if (detras == null) {
+                continue;
+            }
+            List<Criteria> condiciones = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                condiciones.add(Criteria.where(campos.get(j)).is(valores.get(j)));
+            }
+            condiciones.add(detras);
+            alternativas.add(condiciones.size() == 1 ? condiciones.get(0) : new Criteria().andOperator(condiciones));
+        }
+        return new Criteria().orOperator(alternativas);
+    }
+
+    /*Valores del campo que van detrás de valor, o null si no hay ninguno. En MongoDB los nulos (o el campo ausente) van
+     antes que cualquier otro valor en orden ascendente y al final en descendente, y $gt/$lt no los comparan.*/
+    private static Criteria valoresDetras(String campo, Sort.Direction dir, Object valor) {
+        if (valor == null) {
+            return dir.isAscending() ? Criteria.where(campo).ne(null) : null;
+        }
+        return dir.isAscending()
+                ? Criteria.where(campo).gt(valor)
+                : new Criteria().orOperator(Criteria.where(campo).lt(valor), Criteria.where(campo).is(null));
+    }
+
+    private Object valorCampo(Document documento, String campo) {
+        return documento.getEmbedded(List.of(campo.split("\\.")), Object.class);
+    }
+
+    //El cursor es el JSON extendido de la posición codificado en base64, así se conservan los tipos (ObjectId, fechas...)
+    static String codificarCursor(List<String> campos, Sort.Direction dir, List<Object> valores, Object id) {
+        Document posicion = new Document("s", String.join(",", campos)).append("d", dir.name()).append("v", valores).append("id", id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(posicion.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Document decodificarCursor(String cursor, List<String> campos, Sort.Direction dir) {
+        Document posicion;
+        try {
+            posicion = Document.parse(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("El cursor no es válido");
+        }
+        //Un cursor solo sirve para la misma ordenación con la que se generó
+        if (!String.join(",", campos).equals(posicion.get("s")) || !dir.name().equals(posicion.get("d")) || !posicion.containsKey("id")
+                || !(posicion.get("v") instanceof List<?> valores) || valores.size() != campos.size()) {
+            throw new IllegalArgumentException("El cursor no corresponde a la ordenación solicitada");
+        }
+        return posicion;
+    }
+
+    //Construye la consulta con los filtros del listado de películas
+    private Query construirQuery(MovieFilter filtro) {
+        Query query = new Query();
+        String keyword = filtro.getKeyword(), genre = filtro.getGenre(), crew = filtro.getCrew(), cast = filtro.getCast();
+        DateCustom releaseDate = filtro.getReleaseDate();
 
         if (keyword != null) {
             query.addCriteria(Criteria.where("keywords").regex(keyword, "i"));
@@ -62,7 +417,10 @@ public class MovieService {
         }
 
         if(releaseDate != null) {
-            query.addCriteria(Criteria.where("releaseDate").is(releaseDate));
+            //La fecha se guarda en el documento como releaseDateCustom, comparamos campo a campo
+            query.addCriteria(Criteria.where("releaseDateCustom.day").is(releaseDate.getDay())
+                    .and("releaseDateCustom.month").is(releaseDate.getMonth())
+                    .and("releaseDateCustom.year").is(releaseDate.getYear()));
         }
 
         if(crew != null) {
@@ -73,59 +431,125 @@ public class MovieService {
             query.addCriteria(Criteria.where("cast.name").regex(cast, "i"));
         }
 
-        // Obtener el total de documentos que coinciden con la consulta
-        long total = mongoTemplate.count(query, Movie.class);
-        
-        // Obtener solo los documentos de la página actual
-        List<Movie> movies = mongoTemplate.find(query, Movie.class);
-        
-        // Convertir los resultados al formato específico
-        List<Movie> moviesFiltradas = movies.stream()
-            .map(this::movieConParametrosEspecificos)
-            .collect(Collectors.toList());
-
-        return new PageImpl<>(moviesFiltradas, pageRequest, total);
-    }
-
-
-
-    public Movie movieConParametrosEspecificos(Movie movie){
-        Movie movieConParametrosEspecificos = new Movie();
-        movieConParametrosEspecificos.setId(movie.getId());
-        movieConParametrosEspecificos.setTitle(movie.getTitle());
-        movieConParametrosEspecificos.setOverview(movie.getOverview());
-        movieConParametrosEspecificos.setGenres(movie.getGenres());
-        movieConParametrosEspecificos.setReleaseDate(movie.getReleaseDate());
-        movieConParametrosEspecificos.setResources(movie.getResources());
-        return movieConParametrosEspecificos;
+        return query;
     }
 
     //Funcion para crear una nueva película, el único campo obligatorio es el título
     public Movie crearPelicula(Movie movie) {
         // Guardar la película en la base de datos
-        return movieRepository.save(movie);
+        Movie guardada = movieRepository.save(movie);
+        notificarCambio(null, guardada);
+        return guardada;
     }
 
-    //Funcion para guardar los datos de los atributos de una película
-    public Movie modificarPelicula(Movie movieNew) {
-        return movieRepository.save(movieNew); // Guarda la película actualizada
+    //Funcion para guardar los datos de los atributos de una película; anterior es la película antes de modificarla
+    public Movie modificarPelicula(Movie anterior, Movie movieNew) {
+        Movie guardada = guardarSinValoraciones(movieNew); // Guarda la película actualizada
+        if (guardada != null) {
+            notificarCambio(anterior, guardada);
+        }
+        return guardada;
     }
 
-    //Funcion para eliminar una pelicula determinada
-    public void eliminarPelicula(String id) {
-
-        //Una vez eliminamos al usuario tenemos que mirar todos los usqarios de nuestra BD para ver si el usario eliminado era amigo de alguien
-        PageRequest pageRequest = PageRequest.of(0, 10, Sort.Direction.fromString("DESC"), "rating");
+    public Movie parchearPelicula(Movie anterior, List<Map<String, Object>> updates) {
+        Movie guardada = patchEngine.aplicar(Movie.class, anterior.getId(), updates);
+        if (guardada != null) {
+            notificarCambio(anterior, guardada);
+        }
+        return guardada;
+    }
 
-        //Al eliminar una película tenemos que eliminar todos los comentarios relacionados con ella
-        Page<Assessment> comentariosPelicula = assessmentRepository.findByMovieIdContaining(id, pageRequest);
+    /*En lugar de reemplazar el documento completo con save, se hace $set de cada campo de la película y $unset de los
+     que ya no tiene, excepto los del resumen de valoraciones: así no se pierden las valoraciones que RatingService haya
+     aplicado entre la lectura de la película y esta escritura. Devuelve la película guardada, o null si ya no existe.*/
+    private Movie guardarSinValoraciones(Movie movie) {
+        Document documento = new Document();
+        mongoTemplate.getConverter().write(movie, documento);
 
-        if(comentariosPelicula != null && !comentariosPelicula.isEmpty()){
-            comentariosPelicula.forEach(assessment -> {
-                assessmentRepository.deleteById(assessment.getId());
-            });
+        Update update = new Update();
+        MongoPersistentEntity<?> entidad = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Movie.class);
+        for (MongoPersistentProperty propiedad : entidad) {
+            String campo = propiedad.getFieldName();
+            if (propiedad.isIdProperty() || RatingService.CAMPOS.contains(campo)) {
+                continue;
+            }
+            if (documento.containsKey(campo)) {
+                update.set(campo, documento.get(campo));
+            } else {
+                update.unset(campo);
+            }
         }
+        update.set(EtagService.CAMPO, EtagService.nuevaVersion());
+
+        return mongoTemplate.findAndModify(new Query(Criteria.where("id").is(movie.getId())), update,
+                FindAndModifyOptions.options().returnNew(true), Movie.class);
+    }
 
+    /*Funcion para eliminar una pelicula determinada junto con todos sus comentarios. La película se borra en el momento;
+     los comentarios se borran con un único deleteMany sobre el id exacto de la película (índice movie_id_1__id_1) o,
+     si son más de movies.delete.comments-sync-limit, con un trabajo en segundo plano por lotes. Devuelve ese trabajo
+     para poder seguir su progreso, o null si los comentarios ya están borrados.*/
+    public Job eliminarPelicula(Movie movie) {
+        String id = movie.getId();
         movieRepository.deleteById(id);
+        notificarCambio(movie, null);
+
+        Query comentarios = new Query(Criteria.where("movie.id").is(id));
+        long total = mongoTemplate.count(comentarios, Assessment.class);
+        if (total == 0) {
+            return null;
+        }
+        if (total <= umbralBorrado) {
+            mongoTemplate.remove(comentarios, Assessment.class);
+            return null;
+        }
+        return jobService.lanzar(new Job(JobService.nuevoId(), BORRADO_COMENTARIOS, "Comentarios de la película " + id, total)
+                .parametro("movieId", id));
+    }
+
+    @PostConstruct
+    public void registrarTrabajos() {
+        jobService.registrar(BORRADO_COMENTARIOS, job -> borrarComentariosPorLotes(job.getParameters().get("movieId"), job));
+    }
+
+    /*Borra por lotes de _id para no bloquear la colección con un único borrado enorme y poder informar del progreso.
+     Se repite hasta que no quedan comentarios, así que también se borran los que se creen mientras tanto, y al
+     retomarlo tras un reinicio sigue contando desde el progreso guardado.*/
+    private void borrarComentariosPorLotes(String movieId, Job job) {
+        long borrados = job.getProcessed();
+        while (true) {
+            Query lote = new Query(Criteria.where("movie.id").is(movieId)).limit(loteBorrado);
+            lote.fields().include("id");
+            List<String> ids = mongoTemplate.find(lote, Assessment.class).stream().map(Assessment::getId).toList();
+            if (ids.isEmpty()) {
+                break;
+            }
+            long borradosLote = mongoTemplate.remove(new Query(Criteria.where("id").in(ids)), Assessment.class).getDeletedCount();
+            borrados += borradosLote;
+            job.setProcessed(borrados).contar("commentsDeleted", borradosLote);
+            if (borrados > job.getTotal()) {
+                job.setTotal(borrados);
+            }
+            jobService.guardarProgreso(job);
+        }
+    }
+
+    //Mantiene al día los índices en memoria y la caché de listados tras escribir una película (null si no existía o ya no existe)
+    private void notificarCambio(Movie anterior, Movie nueva) {
+        if (nueva != null) {
+            movieSearchIndex.indexar(nueva);
+            movieSuggestIndex.actualizar(nueva);
+            //El título o los géneros pueden haber cambiado; las valoraciones vienen en la película guardada
+            leaderboardService.actualizar(nueva);
+            //Los comentarios guardan una copia del título
+            if (anterior != null && nueva.getTitle() != null && !nueva.getTitle().equals(anterior.getTitle())) {
+                propagationService.programarPelicula(nueva.getId(), nueva.getTitle());
+            }
+        } else if (anterior != null) {
+            movieSearchIndex.eliminar(anterior.getId());
+            movieSuggestIndex.eliminar(anterior.getId());
+            leaderboardService.eliminar(anterior.getId());
+        }
+        movieQueryCache.invalidar(anterior, nueva);
     }
 }
@@ -0,0 +1,347 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Cast;
+import com.example.proyectoparte1.model.Crew;
+import com.example.proyectoparte1.model.Movie;
+import com.example.proyectoparte1.model.Suggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/*Autocompletado de títulos y nombres del reparto y del equipo sobre un árbol radix (trie comprimido) en memoria.
+ Cada nodo guarda ya calculadas las K sugerencias más populares de su subárbol, de forma que una consulta solo recorre
+ los caracteres del prefijo y devuelve esa lista, sin explorar el subárbol.
+
+ La popularidad de una sugerencia es el número de películas en las que aparece. Al crear, modificar o borrar una
+ película se ajustan los contadores de sus textos y se recalculan las listas de los nodos de su camino.*/
+@Service
+public class MovieSuggestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MovieSuggestIndex.class);
+
+    //Número de sugerencias que se precalculan en cada nodo, y por tanto máximo que se puede pedir
+    public static final int MAX_SUGERENCIAS = 10;
+
+    private static final Comparator<Entrada> POR_POPULARIDAD = Comparator
+            .comparingLong((Entrada e) -> e.peso).reversed()
+            .thenComparingInt(e -> e.texto.length())
+            .thenComparing(e -> e.texto);
+
+    private final MongoTemplate mongoTemplate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //Árbol que se consulta; construir lo sustituye por uno nuevo al terminar
+    private Arbol arbol = new Arbol();
+    //Mientras se construye, claves actuales de cada película cambiada (null si se borró), para aplicarlas al nuevo árbol
+    private Map<String, Set<Clave>> cambiosDuranteConstruccion;
+
+    @Autowired
+    public MovieSuggestIndex(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /*Como en MovieSearchIndex, se construye un árbol aparte mientras el actual sigue atendiendo consultas y escrituras;
+     las películas que cambian entre tanto se aplican al nuevo antes de sustituir el actual.*/
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void construir() {
+        Query query = new Query();
+        query.fields().include("title", "cast.name", "crew.name");
+        query.cursorBatchSize(1000);
+
+        lock.writeLock().lock();
+        try {
+            cambiosDuranteConstruccion = new LinkedHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long inicio = System.currentTimeMillis();
+        Arbol nuevo = new Arbol();
+        try (Stream<Movie> movies = mongoTemplate.stream(query, Movie.class)) {
+            movies.filter(movie -> movie.getId() != null).forEach(movie -> nuevo.actualizar(movie.getId(), claves(movie)));
+        } catch (RuntimeException e) {
+            log.error("No se pudo construir el índice de autocompletado", e);
+            lock.writeLock().lock();
+            try {
+                cambiosDuranteConstruccion = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            cambiosDuranteConstruccion.forEach((movieId, claves) -> {
+                if (claves == null) {
+                    nuevo.eliminar(movieId);
+                } else {
+                    nuevo.actualizar(movieId, claves);
+                }
+            });
+            cambiosDuranteConstruccion = null;
+            arbol = nuevo;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Índice de autocompletado construido: {} películas en {} ms", nuevo.clavesPorPelicula.size(), System.currentTimeMillis() - inicio);
+    }
+
+    public List<Suggestion> sugerir(String prefijo, int limite) {
+        String clave = TextAnalyzer.normalizar(prefijo).trim();
+        if (clave.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Nodo nodo = arbol.buscarNodo(clave);
+            if (nodo == null) {
+                return List.of();
+            }
+            List<Suggestion> sugerencias = new ArrayList<>(Math.min(limite, nodo.mejores.length));
+            for (int i = 0; i < nodo.mejores.length && i < limite; i++) {
+                Entrada entrada = nodo.mejores[i];
+                sugerencias.add(new Suggestion(entrada.texto, entrada.tipo, entrada.peso));
+            }
+            return sugerencias;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Añade la película, o sustituye lo que aportaba antes si ya estaba
+    public void actualizar(Movie movie) {
+        if (movie == null || movie.getId() == null) {
+            return;
+        }
+        Set<Clave> nuevas = claves(movie);
+
+        lock.writeLock().lock();
+        try {
+            arbol.actualizar(movie.getId(), nuevas);
+            if (cambiosDuranteConstruccion != null) {
+                cambiosDuranteConstruccion.put(movie.getId(), nuevas);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(String movieId) {
+        lock.writeLock().lock();
+        try {
+            arbol.eliminar(movieId);
+            if (cambiosDuranteConstruccion != null) {
+                cambiosDuranteConstruccion.put(movieId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Set<Clave> claves(Movie movie) {
+        Set<Clave> claves = new LinkedHashSet<>();
+        anhadirClave(claves, movie.getTitle(), Suggestion.Type.TITLE);
+        if (movie.getCast() != null) {
+            for (Cast cast : movie.getCast()) {
+                anhadirClave(claves, cast.getName(), Suggestion.Type.CAST);
+            }
+        }
+        if (movie.getCrew() != null) {
+            for (Crew crew : movie.getCrew()) {
+                anhadirClave(claves, crew.getName(), Suggestion.Type.CREW);
+            }
+        }
+        return claves;
+    }
+
+    private void anhadirClave(Set<Clave> claves, String texto, Suggestion.Type tipo) {
+        if (texto == null || texto.isBlank()) {
+            return;
+        }
+        // El tipo va al final de la clave tras un separador que no aparece en el texto, para que un título y un
+        // nombre que se escriban igual sean sugerencias distintas sin afectar a la búsqueda por prefijo
+        claves.add(new Clave(TextAnalyzer.normalizar(texto).trim() + '\u0000' + tipo.ordinal(), texto.trim(), tipo));
+    }
+
+    /*Árbol radix con los contadores de cada clave. No se bloquea: el actual se usa con el bloqueo de MovieSuggestIndex y
+     el que se está construyendo solo lo usa el hilo que lo construye hasta que se publica.*/
+    private static final class Arbol {
+        private final Nodo raiz = new Nodo("");
+
+        //Claves que aporta cada película, para poder descontarlas al modificarla o borrarla
+        private final Map<String, Set<Clave>> clavesPorPelicula = new HashMap<>();
+
+        private void actualizar(String movieId, Set<Clave> nuevas) {
+            Set<Clave> anteriores = clavesPorPelicula.put(movieId, nuevas);
+            if (anteriores != null) {
+                for (Clave clave : anteriores) {
+                    if (!nuevas.contains(clave)) {
+                        ajustar(clave, -1);
+                    }
+                }
+            }
+            for (Clave clave : nuevas) {
+                if (anteriores == null || !anteriores.contains(clave)) {
+                    ajustar(clave, 1);
+                }
+            }
+        }
+
+        private void eliminar(String movieId) {
+            Set<Clave> anteriores = clavesPorPelicula.remove(movieId);
+            if (anteriores != null) {
+                anteriores.forEach(clave -> ajustar(clave, -1));
+            }
+        }
+
+        //Suma delta a la popularidad de la clave y recalcula las mejores sugerencias de todos los nodos de su camino
+        private void ajustar(Clave clave, long delta) {
+            List<Nodo> ruta = new ArrayList<>();
+            Nodo nodo = insertarRuta(clave.clave(), ruta);
+
+            if (nodo.entrada == null) {
+                nodo.entrada = new Entrada(clave.texto(), clave.tipo());
+            }
+            nodo.entrada.peso += delta;
+            if (nodo.entrada.peso <= 0) {
+                nodo.entrada = null;
+            }
+
+            for (int i = ruta.size() - 1; i >= 0; i--) {
+                Nodo actual = ruta.get(i);
+                // Los nodos que se quedan vacíos se quitan del árbol
+                if (i > 0 && actual.entrada == null && actual.hijos.isEmpty()) {
+                    ruta.get(i - 1).hijos.remove(actual.etiqueta.charAt(0));
+                    continue;
+                }
+                recalcularMejores(actual);
+            }
+        }
+
+        //Recorre la clave creando los nodos que falten y partiendo las aristas cuando solo coincide parte de la etiqueta
+        private Nodo insertarRuta(String clave, List<Nodo> ruta) {
+            Nodo nodo = raiz;
+            ruta.add(raiz);
+            int i = 0;
+            while (i < clave.length()) {
+                char c = clave.charAt(i);
+                Nodo hijo = nodo.hijos.get(c);
+                if (hijo == null) {
+                    hijo = new Nodo(clave.substring(i));
+                    nodo.hijos.put(c, hijo);
+                    ruta.add(hijo);
+                    return hijo;
+                }
+                int comun = prefijoComun(hijo.etiqueta, clave, i);
+                if (comun < hijo.etiqueta.length()) {
+                    Nodo intermedio = new Nodo(hijo.etiqueta.substring(0, comun));
+                    hijo.etiqueta = hijo.etiqueta.substring(comun);
+                    intermedio.hijos.put(hijo.etiqueta.charAt(0), hijo);
+                    intermedio.mejores = hijo.mejores;
+                    nodo.hijos.put(c, intermedio);
+                    hijo = intermedio;
+                }
+                ruta.add(hijo);
+                nodo = hijo;
+                i += comun;
+            }
+            return nodo;
+        }
+
+        //Nodo cuyo subárbol contiene todas las claves que empiezan por el prefijo, o null si no hay ninguna
+        private Nodo buscarNodo(String prefijo) {
+            Nodo nodo = raiz;
+            int i = 0;
+            while (i < prefijo.length()) {
+                Nodo hijo = nodo.hijos.get(prefijo.charAt(i));
+                if (hijo == null) {
+                    return null;
+                }
+                int comun = prefijoComun(hijo.etiqueta, prefijo, i);
+                if (i + comun == prefijo.length()) {
+                    return hijo;
+                }
+                if (comun < hijo.etiqueta.length()) {
+                    return null;
+                }
+                nodo = hijo;
+                i += comun;
+            }
+            return nodo;
+        }
+    }
+
+    private static int prefijoComun(String etiqueta, String clave, int desde) {
+        int j = 0;
+        while (j < etiqueta.length() && desde + j < clave.length() && etiqueta.charAt(j) == clave.charAt(desde + j)) {
+            j++;
+        }
+        return j;
+    }
+
+    private static void recalcularMejores(Nodo nodo) {
+        List<Entrada> candidatas = new ArrayList<>();
+        if (nodo.entrada != null) {
+            candidatas.add(nodo.entrada);
+        }
+        for (Nodo hijo : nodo.hijos.values()) {
+            candidatas.addAll(Arrays.asList(hijo.mejores));
+        }
+        candidatas.sort(POR_POPULARIDAD);
+        nodo.mejores = candidatas.subList(0, Math.min(MAX_SUGERENCIAS, candidatas.size())).toArray(new Entrada[0]);
+    }
+
+    private static final class Nodo {
+        private String etiqueta;
+        private final Map<Character, Nodo> hijos = new HashMap<>(4);
+        private Entrada entrada;
+        private Entrada[] mejores = new Entrada[0];
+
+        private Nodo(String etiqueta) {
+            this.etiqueta = etiqueta;
+        }
+    }
+
+    private static final class Entrada {
+        private final String texto;
+        private final Suggestion.Type tipo;
+        private long peso;
+
+        private Entrada(String texto, Suggestion.Type tipo) {
+            this.texto = texto;
+            this.tipo = tipo;
+        }
+    }
+
+    private record Clave(String clave, String texto, Suggestion.Type tipo) {
+        //Dos claves son la misma sugerencia aunque el texto original difiera en mayúsculas o tildes
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Clave otra && clave.equals(otra.clave);
+        }
+
+        @Override
+        public int hashCode() {
+            return clave.hashCode();
+        }
+    }
+}
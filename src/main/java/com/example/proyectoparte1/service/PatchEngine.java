@@ -0,0 +1,284 @@
+package com.example.proyectoparte1.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.TypeInformation;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Aplica un JSON Patch (RFC 6902) directamente en MongoDB: cada operación se traduce a $set, $unset o $push sobre su
+ campo y todas se ejecutan en un único findAndModify, sin convertir la entidad completa a JSON y de vuelta ni reescribir
+ el documento entero. Devuelve la entidad ya modificada.
+
+ Solo se traducen las operaciones cuyo resultado es el mismo que daría PatchUtils:
+  - add de un campo de un objeto: $set (el objeto que lo contiene tiene que existir)
+  - add al final de una lista (/campo/-): $push (el campo tiene que ser una lista)
+  - replace de un campo o de una posición de una lista: $set (tiene que existir)
+  - remove de un campo de un objeto: $unset (tiene que existir)
+ Esas condiciones van en el filtro del findAndModify. Si alguna no se cumple, o hay operaciones que no se traducen (move,
+ copy, test, add en medio de una lista, remove de una posición de una lista, campos de mapas...), aplicar devuelve null
+ y quien llama usa PatchUtils, que da el mismo resultado o el mismo error que antes. Tampoco se traducen dos operaciones
+ sobre el mismo campo o sobre un campo y otro que lo contiene, porque su resultado depende del orden.
+
+ Las rutas usan los nombres de las propiedades en JSON, igual que PatchUtils. Nunca se tocan el id del documento ni los
+ campos de solo lectura (@JsonProperty READ_ONLY, como el resumen de valoraciones de las películas), que PatchUtils
+ también ignora al volver a convertir la entidad.*/
+@Service
+public class PatchEngine {
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper mapper;
+    private final MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext;
+    private final Counter directos;
+    private final Counter conPatchUtils;
+    private final Map<Class<?>, Map<String, MongoPersistentProperty>> propiedades = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PatchEngine(MongoTemplate mongoTemplate, ObjectMapper mapper, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.mapper = mapper;
+        this.mappingContext = mongoTemplate.getConverter().getMappingContext();
+        this.directos = Counter.builder("patch.requests").tag("mode", "direct")
+                .description("Parches aplicados directamente con operadores de MongoDB").register(meterRegistry);
+        this.conPatchUtils = Counter.builder("patch.requests").tag("mode", "fallback")
+                .description("Parches que se aplican sobre la entidad completa con PatchUtils").register(meterRegistry);
+    }
+
+    //Entidad modificada, o null si el parche no se puede traducir o sus condiciones no se cumplen (hay que usar PatchUtils)
+    public <T> T aplicar(Class<T> tipo, Object id, List<Map<String, Object>> updates) {
+        return aplicar(tipo, id, updates, null);
+    }
+
+    /*Como aplicar, pero solo si el documento cumple además esperado (p. ej. que sigue teniendo los valores que leyó quien
+     llama y de los que depende lo que hace después); si no, devuelve null.*/
+    public <T> T aplicar(Class<T> tipo, Object id, List<Map<String, Object>> updates, Criteria esperado) {
+        Traduccion traduccion = traducir(tipo, updates);
+        if (traduccion == null) {
+            conPatchUtils.increment();
+            return null;
+        }
+        //Por el nombre de la propiedad id de la entidad (email en User), que MongoTemplate pasa a _id
+        String propiedadId = mappingContext.getRequiredPersistentEntity(tipo).getRequiredIdProperty().getName();
+        Query query = new Query(Criteria.where(propiedadId).is(id));
+        //En un $and, porque esperado puede ser sobre el mismo campo que alguna condición del parche
+        List<Criteria> condiciones = new ArrayList<>(traduccion.condiciones().values());
+        if (esperado != null) {
+            condiciones.add(esperado);
+        }
+        if (!condiciones.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(condiciones));
+        }
+        traduccion.update().set(EtagService.CAMPO, EtagService.nuevaVersion());
+
+        T modificado = mongoTemplate.findAndModify(query, traduccion.update(), FindAndModifyOptions.options().returnNew(true), tipo);
+        if (modificado == null) {
+            conPatchUtils.increment();
+        } else {
+            directos.increment();
+        }
+        return modificado;
+    }
+
+    private Traduccion traducir(Class<?> tipo, List<Map<String, Object>> updates) {
+        if (updates == null || updates.isEmpty()) {
+            return null;
+        }
+        Update update = new Update();
+        Map<String, Criteria> condiciones = new LinkedHashMap<>();
+        List<String> campos = new ArrayList<>();
+
+        for (Map<String, Object> operacion : updates) {
+            if (!(operacion.get("op") instanceof String op) || !(operacion.get("path") instanceof String ruta)) {
+                return null;
+            }
+            Destino destino = resolver(tipo, ruta);
+            if (destino == null || solapa(campos, destino.campo())) {
+                return null;
+            }
+            campos.add(destino.campo());
+
+            switch (op) {
+                case "add" -> {
+                    Object valor = convertir(operacion, destino.tipo());
+                    if (valor == null || (destino.indice() && !destino.alFinal())) {
+                        return null;
+                    }
+                    if (destino.alFinal()) {
+                        update.push(destino.campo(), valor);
+                        condiciones.putIfAbsent(destino.campo(), Criteria.where(destino.campo()).type(4));
+                    } else {
+                        update.set(destino.campo(), valor);
+                        if (destino.padre() != null) {
+                            condiciones.putIfAbsent(destino.padre(), Criteria.where(destino.padre()).exists(true));
+                        }
+                    }
+                }
+                case "replace" -> {
+                    Object valor = convertir(operacion, destino.tipo());
+                    if (valor == null || destino.alFinal()) {
+                        return null;
+                    }
+                    update.set(destino.campo(), valor);
+                    condiciones.putIfAbsent(destino.campo(), Criteria.where(destino.campo()).exists(true));
+                }
+                case "remove" -> {
+                    //Quitar una posición de una lista desplaza las siguientes; con $pull se quitarían todas las iguales
+                    if (destino.indice()) {
+                        return null;
+                    }
+                    update.unset(destino.campo());
+                    condiciones.putIfAbsent(destino.campo(), Criteria.where(destino.campo()).exists(true));
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return new Traduccion(update, condiciones);
+    }
+
+    /*Recorre la ruta JSON Pointer sobre las propiedades de la entidad. Devuelve el campo con los nombres de las propiedades
+     (MongoTemplate los pasa a los nombres guardados, p. ej. movie.id a movie._id) y el tipo del valor, o null si la ruta
+     no es de una propiedad conocida o no se puede modificar.*/
+    private Destino resolver(Class<?> tipo, String ruta) {
+        if (!ruta.startsWith("/") || ruta.length() == 1) {
+            return null;
+        }
+        String[] segmentos = ruta.substring(1).split("/", -1);
+        TypeInformation<?> actual = TypeInformation.of(tipo);
+        StringBuilder campo = new StringBuilder();
+        String padre = null;
+        boolean indice = false;
+        boolean alFinal = false;
+
+        for (int i = 0; i < segmentos.length; i++) {
+            String segmento = segmentos[i].replace("~1", "/").replace("~0", "~");
+            boolean ultimo = i == segmentos.length - 1;
+            String nombre = segmento;
+            indice = false;
+
+            if (actual.isMap()) {
+                return null;
+            }
+            if (actual.isCollectionLike()) {
+                TypeInformation<?> elemento = actual.getComponentType();
+                if (elemento == null) {
+                    return null;
+                }
+                if (segmento.equals("-") && ultimo) {
+                    alFinal = true;
+                    actual = elemento;
+                    break;
+                }
+                if (!segmento.matches("0|[1-9][0-9]{0,8}")) {
+                    return null;
+                }
+                indice = true;
+                actual = elemento;
+            } else {
+                //La ruta usa los nombres JSON, como PatchUtils (p. ej. /releaseDate es la propiedad releaseDateCustom)
+                MongoPersistentProperty propiedad = propiedades(actual.getType()).get(segmento);
+                if (propiedad == null || (i == 0 && propiedad.isIdProperty()) || soloLectura(propiedad)) {
+                    return null;
+                }
+                nombre = propiedad.getName();
+                actual = propiedad.getTypeInformation();
+            }
+
+            if (!ultimo) {
+                padre = campo.length() == 0 ? nombre : campo + "." + nombre;
+            }
+            campo.append(campo.length() == 0 ? "" : ".").append(nombre);
+        }
+        JavaType javaType = mapper.getTypeFactory().constructType(actual.toTypeDescriptor().getResolvableType().getType());
+        return new Destino(campo.toString(), padre, javaType, indice, alFinal);
+    }
+
+    /*Propiedades de MongoDB que se pueden escribir desde JSON, por su nombre JSON. Cada propiedad JSON se enlaza con la
+     propiedad de MongoDB que tiene su mismo campo Java; el nombre JSON puede ser otro (@JsonProperty en el campo, como
+     releaseDateCustom en Movie). Las propiedades JSON sin campo (solo getter y setter) y las que Jackson no puede leer
+     no se enlazan y se dejan a PatchUtils.*/
+    private Map<String, MongoPersistentProperty> propiedades(Class<?> tipo) {
+        return propiedades.computeIfAbsent(tipo, this::enlazar);
+    }
+
+    private Map<String, MongoPersistentProperty> enlazar(Class<?> tipo) {
+        MongoPersistentEntity<?> entidad = mappingContext.getPersistentEntity(tipo);
+        if (entidad == null) {
+            return Map.of();
+        }
+        Map<Field, MongoPersistentProperty> porCampo = new HashMap<>();
+        for (MongoPersistentProperty propiedad : entidad) {
+            if (propiedad.getField() != null) {
+                porCampo.put(propiedad.getField(), propiedad);
+            }
+        }
+
+        Map<String, MongoPersistentProperty> enlazadas = new HashMap<>();
+        JavaType javaType = mapper.getTypeFactory().constructType(tipo);
+        for (BeanPropertyDefinition definicion : mapper.getDeserializationConfig().introspect(javaType).findProperties()) {
+            if (!definicion.couldDeserialize() || definicion.getField() == null) {
+                continue;
+            }
+            MongoPersistentProperty propiedad = porCampo.get(definicion.getField().getAnnotated());
+            if (propiedad != null) {
+                enlazadas.put(definicion.getName(), propiedad);
+            }
+        }
+        return Map.copyOf(enlazadas);
+    }
+
+    private static boolean soloLectura(MongoPersistentProperty propiedad) {
+        JsonProperty json = propiedad.findAnnotation(JsonProperty.class);
+        return json != null && json.access() == JsonProperty.Access.READ_ONLY;
+    }
+
+    //Un campo y otro que lo contiene no pueden ir en la misma actualización, y su resultado dependería del orden
+    private static boolean solapa(List<String> campos, String campo) {
+        for (String otro : campos) {
+            if (otro.equals(campo) || otro.startsWith(campo + ".") || campo.startsWith(otro + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //El valor con el tipo de la propiedad, como lo dejaría PatchUtils; null si falta o no es válido para ese tipo
+    private Object convertir(Map<String, Object> operacion, JavaType tipo) {
+        Object valor = operacion.get("value");
+        if (valor == null) {
+            return null;
+        }
+        try {
+            return mapper.convertValue(valor, tipo);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private record Destino(String campo, String padre, JavaType tipo, boolean indice, boolean alFinal) {
+    }
+
+    private record Traduccion(Update update, Map<String, Criteria> condiciones) {
+    }
+}
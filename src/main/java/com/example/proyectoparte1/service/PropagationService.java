@@ -0,0 +1,173 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Assessment;
+import com.example.proyectoparte1.model.PropagationTask;
+import com.example.proyectoparte1.model.User;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*Copia a los comentarios los cambios del título de una película o del nombre de un usuario, ya que cada comentario
+ guarda su propia copia de ambos (y las listas de amigos, la del nombre).
+
+ Cada cambio se guarda como tarea en la colección propagations, una por entidad: si la misma película cambia varias
+ veces seguidas, la tarea se sobrescribe con el último valor y se retrasa (propagation.debounce), así que solo se
+ propaga una vez. Un hilo en segundo plano recoge las tareas vencidas y actualiza los comentarios por lotes de _id
+ (propagation.batch-size) sin pasar de propagation.max-docs-per-second, para no quitarle MongoDB a las peticiones.
+
+ Como las tareas están en MongoDB, las que queden a medias al parar la aplicación se retoman al arrancar (o cuando
+ vence el bloqueo de otra instancia). Las actualizaciones solo tocan los comentarios que aún tienen el valor antiguo,
+ de forma que repetir una tarea no cambia nada.*/
+@Service
+public class PropagationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PropagationService.class);
+
+    //Tiempo que una instancia se reserva una tarea; se renueva en cada lote
+    private static final Duration BLOQUEO = Duration.ofMinutes(2);
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration retraso;
+    private final int tamanoLote;
+    private final int maxPorSegundo;
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public PropagationService(MongoTemplate mongoTemplate,
+                              @Value("${propagation.debounce:5s}") Duration retraso,
+                              @Value("${propagation.batch-size:500}") int tamanoLote,
+                              @Value("${propagation.max-docs-per-second:2000}") int maxPorSegundo) {
+        this.mongoTemplate = mongoTemplate;
+        this.retraso = retraso;
+        this.tamanoLote = tamanoLote;
+        this.maxPorSegundo = maxPorSegundo;
+        this.executor = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "propagation");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void arrancar() {
+        executor.scheduleWithFixedDelay(this::procesarPendientes, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public void programarPelicula(String movieId, String title) {
+        programar(PropagationTask.Type.MOVIE, movieId, title);
+    }
+
+    public void programarUsuario(String email, String name) {
+        programar(PropagationTask.Type.USER, email, name);
+    }
+
+    //Crea o sobrescribe la tarea de la entidad con el último valor y vuelve a empezar la espera
+    private void programar(PropagationTask.Type tipo, String entityId, String valor) {
+        Update update = new Update()
+                .set("type", tipo)
+                .set("entityId", entityId)
+                .set("value", valor)
+                .set("dueAt", Instant.now().plus(retraso))
+                .inc("version", 1);
+        mongoTemplate.upsert(new Query(Criteria.where("id").is(tipo + ":" + entityId)), update, PropagationTask.class);
+    }
+
+    private void procesarPendientes() {
+        try {
+            PropagationTask tarea;
+            while ((tarea = reservar()) != null) {
+                procesar(tarea);
+            }
+        } catch (RuntimeException e) {
+            //Se reintenta en la siguiente pasada; la tarea sigue en la colección
+            log.error("Error propagando cambios a los comentarios", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Reserva la tarea vencida más antigua que no esté reservando otra instancia
+    private PropagationTask reservar() {
+        Instant ahora = Instant.now();
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("dueAt").lte(ahora),
+                new Criteria().orOperator(Criteria.where("lockedUntil").exists(false), Criteria.where("lockedUntil").lt(ahora))))
+                .with(Sort.by("dueAt"));
+        return mongoTemplate.findAndModify(query, new Update().set("lockedUntil", ahora.plus(BLOQUEO)),
+                FindAndModifyOptions.options().returnNew(true), PropagationTask.class);
+    }
+
+    private void procesar(PropagationTask tarea) throws InterruptedException {
+        long inicio = System.currentTimeMillis();
+        long comentarios = tarea.getType() == PropagationTask.Type.MOVIE
+                ? actualizarPorLotes(tarea, "movie.id", "movie.title")
+                : actualizarPorLotes(tarea, "user.email", "user.name");
+
+        //El nombre del usuario también está copiado en las listas de amigos
+        long usuarios = 0;
+        if (tarea.getType() == PropagationTask.Type.USER) {
+            String nombre = tarea.getValue();
+            Update update = new Update().set("friends.$.name", nombre).set(EtagService.CAMPO, EtagService.nuevaVersion());
+            usuarios = mongoTemplate.updateMulti(new Query(Criteria.where("friends").elemMatch(
+                    Criteria.where("email").is(tarea.getEntityId()).and("name").ne(nombre))), update, User.class).getModifiedCount();
+        }
+
+        //Solo se borra si nadie la ha vuelto a programar mientras tanto; si no, se libera para procesar el nuevo valor
+        boolean terminada = mongoTemplate.remove(new Query(Criteria.where("id").is(tarea.getId()).and("version").is(tarea.getVersion())),
+                PropagationTask.class).getDeletedCount() > 0;
+        if (!terminada) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(tarea.getId())), new Update().unset("lockedUntil"), PropagationTask.class);
+        }
+        log.info("Propagado {} a {} comentarios y {} usuarios en {} ms", tarea.getId(), comentarios, usuarios, System.currentTimeMillis() - inicio);
+    }
+
+    //clave es el campo del comentario con el id de la entidad y campo la copia que hay que actualizar
+    private long actualizarPorLotes(PropagationTask tarea, String clave, String campo) throws InterruptedException {
+        long total = 0;
+        while (true) {
+            long inicioLote = System.nanoTime();
+            //Comentarios de la entidad que aún tienen otro valor (índices movie_id_1__id_1 y user_id_1__id_1)
+            Query lote = new Query(Criteria.where(clave).is(tarea.getEntityId()).and(campo).ne(tarea.getValue())).limit(tamanoLote);
+            lote.fields().include("id");
+            List<String> ids = mongoTemplate.find(lote, Assessment.class).stream().map(Assessment::getId).toList();
+            if (ids.isEmpty()) {
+                return total;
+            }
+            Update update = new Update().set(campo, tarea.getValue()).set(EtagService.CAMPO, EtagService.nuevaVersion());
+            long modificados = mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids).and(campo).ne(tarea.getValue())), update, Assessment.class).getModifiedCount();
+            total += modificados;
+
+            //Renueva la reserva y respeta el límite de documentos por segundo
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(tarea.getId())),
+                    new Update().set("lockedUntil", Instant.now().plus(BLOQUEO)), PropagationTask.class);
+            long minimoMs = ids.size() * 1000L / maxPorSegundo;
+            long transcurridoMs = (System.nanoTime() - inicioLote) / 1_000_000;
+            if (minimoMs > transcurridoMs) {
+                Thread.sleep(minimoMs - transcurridoMs);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.proyectoparte1.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*Pool acotado para lanzar consultas a MongoDB en paralelo con el hilo de la petición. Si el pool y su cola están llenos,
+ la tarea se ejecuta en el propio hilo que la lanza, de forma que con carga alta se vuelve a la ejecución secuencial
+ en lugar de acumular trabajo sin límite.*/
+@Component
+public class QueryExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    public QueryExecutor(@Value("${movies.query-executor.threads:8}") int hilos,
+                         @Value("${movies.query-executor.queue-size:200}") int tamanhoCola) {
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(tamanhoCola),
+                tarea -> {
+                    Thread hilo = new Thread(tarea, "mongo-query-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> tarea) {
+        return CompletableFuture.supplyAsync(tarea, executor);
+    }
+
+    //Espera el resultado relanzando la excepción original de la consulta en lugar de la CompletionException
+    public static <T> T esperar(CompletableFuture<T> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdown();
+    }
+}
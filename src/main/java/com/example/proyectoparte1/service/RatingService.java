@@ -0,0 +1,215 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Assessment;
+import com.example.proyectoparte1.model.Job;
+import com.example.proyectoparte1.model.Movie;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/*Mantiene en cada película el resumen de sus valoraciones (ratingCount, ratingSum, ratingHistogram y ratingAverage)
+ para no tener que recorrer sus comentarios cada vez que se muestra la media.
+
+ Cada alta, cambio o baja de un comentario aplica su diferencia con una única actualización atómica del documento de la
+ película. Es una actualización con pipeline en lugar de $inc porque así, en la misma operación, se recalcula también
+ la media, que se guarda para poder ordenar por ella con un índice.*/
+@Service
+public class RatingService {
+
+    private static final Logger log = LoggerFactory.getLogger(RatingService.class);
+
+    //Campos de la película que mantiene este servicio
+    public static final Set<String> CAMPOS = Set.of("ratingCount", "ratingSum", "ratingAverage", "ratingHistogram");
+
+    private static final Document HAY_VALORACIONES = new Document("$gt", List.of("$ratingCount", 0));
+
+    //Tipo del trabajo que recalcula el resumen de todas las películas
+    private static final String RECALCULO = "ratings-repair";
+
+    private final MongoTemplate mongoTemplate;
+    private final MovieQueryCache movieQueryCache;
+    private final LeaderboardService leaderboardService;
+    private final JobService jobService;
+
+    @Autowired
+    public RatingService(MongoTemplate mongoTemplate, MovieQueryCache movieQueryCache, LeaderboardService leaderboardService,
+                         JobService jobService) {
+        this.mongoTemplate = mongoTemplate;
+        this.movieQueryCache = movieQueryCache;
+        this.leaderboardService = leaderboardService;
+        this.jobService = jobService;
+    }
+
+    @PostConstruct
+    public void registrarTrabajos() {
+        jobService.registrar(RECALCULO, job -> {
+            recalcular();
+            job.setProcessed(job.getTotal());
+        });
+    }
+
+    /*Aplica a la película el cambio de una valoración: anterior es la nota que había (null en un comentario nuevo) y
+     nueva la que queda (null si se borra el comentario). Devuelve la película con los campos de filtrado y el resumen
+     de valoraciones ya actualizados, o null si la película no existe.*/
+    public Movie registrar(String movieId, Integer anterior, Integer nueva) {
+        if (movieId == null || (anterior == null && nueva == null)) {
+            return null;
+        }
+        int deltaCount = (nueva != null ? 1 : 0) - (anterior != null ? 1 : 0);
+        int deltaSum = (nueva != null ? nueva : 0) - (anterior != null ? anterior : 0);
+        Map<Integer, Long> deltaHistograma = new HashMap<>();
+        if (!Objects.equals(anterior, nueva)) {
+            if (anterior != null) {
+                deltaHistograma.merge(anterior, -1L, Long::sum);
+            }
+            if (nueva != null) {
+                deltaHistograma.merge(nueva, 1L, Long::sum);
+            }
+        }
+        return aplicar(movieId, deltaCount, deltaSum, deltaHistograma);
+    }
+
+    /*Descuenta de la película varias valoraciones borradas a la vez (número de valoraciones por nota) con una sola
+     actualización, en lugar de una por valoración. Devuelve la película actualizada, o null si no existe.*/
+    public Movie registrarBajas(String movieId, Map<Integer, Long> porNota) {
+        if (movieId == null || porNota.isEmpty()) {
+            return null;
+        }
+        long deltaCount = 0;
+        long deltaSum = 0;
+        Map<Integer, Long> deltaHistograma = new HashMap<>();
+        for (Map.Entry<Integer, Long> nota : porNota.entrySet()) {
+            deltaCount -= nota.getValue();
+            deltaSum -= (long) nota.getKey() * nota.getValue();
+            deltaHistograma.put(nota.getKey(), -nota.getValue());
+        }
+        return aplicar(movieId, deltaCount, deltaSum, deltaHistograma);
+    }
+
+    private Movie aplicar(String movieId, long deltaCount, long deltaSum, Map<Integer, Long> deltaHistograma) {
+        Document incrementos = new Document()
+                .append("ratingCount", sumar("$ratingCount", deltaCount))
+                .append("ratingSum", sumar("$ratingSum", deltaSum))
+                .append(EtagService.CAMPO, EtagService.nuevaVersion());
+        for (Map.Entry<Integer, Long> nota : deltaHistograma.entrySet()) {
+            incrementos.append("ratingHistogram." + nota.getKey(), sumar("$ratingHistogram." + nota.getKey(), nota.getValue()));
+        }
+
+        AggregationUpdate update = AggregationUpdate.from(List.of(
+                contexto -> new Document("$set", incrementos),
+                contexto -> new Document("$set", new Document()
+                        .append("ratingAverage", media("$ratingSum", "$ratingCount"))
+                        //Al quitar la última valoración el resumen desaparece, como en una película sin comentarios
+                        .append("ratingCount", siHay(HAY_VALORACIONES, "$ratingCount"))
+                        .append("ratingSum", siHay(HAY_VALORACIONES, "$ratingSum"))
+                        //Las notas que se quedan a cero se quitan, como si nunca hubieran tenido valoraciones
+                        .append("ratingHistogram", siHay(HAY_VALORACIONES, sinCeros("$ratingHistogram"))))
+        ));
+
+        Query query = new Query(Criteria.where("id").is(movieId));
+        //Solo lo necesario para invalidar la caché de listados y recolocar la película en las clasificaciones
+        query.fields().include("title", "keywords", "genres", "releaseDateCustom", "crew.name", "cast.name", "ratingCount", "ratingSum", "ratingAverage");
+        Movie movie = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Movie.class);
+        if (movie != null) {
+            movieQueryCache.invalidarValoraciones(movie);
+            leaderboardService.actualizar(movie);
+        }
+        return movie;
+    }
+
+    /*Recalcula el resumen de todas las películas a partir de la colección comments, por si se desajustó (comentarios
+     importados directamente en la base de datos, fallos a mitad de una escritura...). Se hace en el servidor con una
+     sola agregación sobre films: $lookup de los comentarios de cada película agrupados por nota (usa el índice
+     movie._id de comments) y $merge del resultado sobre la propia película. Solo cambia el _etag de las películas
+     cuyo resumen era distinto: el histograma se compara como conjunto de notas, sin las que están a cero y sin
+     importar el orden de las claves. Necesita MongoDB 5.0 o posterior ($lookup con localField y pipeline).*/
+    public void recalcular() {
+        long inicio = System.currentTimeMillis();
+        String films = mongoTemplate.getCollectionName(Movie.class);
+        String comments = mongoTemplate.getCollectionName(Assessment.class);
+
+        Document porNota = new Document("$lookup", new Document("from", comments)
+                .append("localField", "_id")
+                .append("foreignField", "movie._id")
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("rating", new Document("$type", "number"))),
+                        new Document("$group", new Document("_id", "$rating").append("n", new Document("$sum", 1))),
+                        new Document("$sort", new Document("_id", 1))))
+                .append("as", "notas"));
+
+        Document resumen = new Document("$project", new Document()
+                .append("ratingCount", new Document("$sum", "$notas.n"))
+                .append("ratingSum", new Document("$sum", new Document("$map", new Document("input", "$notas")
+                        .append("in", new Document("$multiply", List.of("$$this._id", "$$this.n"))))))
+                .append("ratingHistogram", new Document("$arrayToObject", new Document("$map", new Document("input", "$notas")
+                        .append("in", new Document("k", new Document("$toString", "$$this._id")).append("v", "$$this.n"))))));
+
+        //Con cero valoraciones los campos se eliminan
+        Document hayValoraciones = new Document("$gt", List.of("$$new.ratingCount", 0));
+        Document sinCambios = new Document("$and", List.of(
+                new Document("$eq", List.of(new Document("$ifNull", List.of("$ratingCount", 0)), "$$new.ratingCount")),
+                new Document("$eq", List.of(new Document("$ifNull", List.of("$ratingSum", 0)), "$$new.ratingSum")),
+                new Document("$setEquals", List.of(
+                        new Document("$objectToArray", sinCeros("$ratingHistogram")),
+                        new Document("$objectToArray", "$$new.ratingHistogram")))));
+        Document actualizar = new Document("$set", new Document()
+                .append(EtagService.CAMPO, new Document("$cond", List.of(sinCambios, "$" + EtagService.CAMPO, EtagService.nuevaVersion())))
+                .append("ratingCount", siHay(hayValoraciones, "$$new.ratingCount"))
+                .append("ratingSum", siHay(hayValoraciones, "$$new.ratingSum"))
+                .append("ratingHistogram", siHay(hayValoraciones, "$$new.ratingHistogram"))
+                .append("ratingAverage", media("$$new.ratingSum", "$$new.ratingCount")));
+
+        Document merge = new Document("$merge", new Document("into", films)
+                .append("on", "_id")
+                .append("whenMatched", List.of(actualizar))
+                .append("whenNotMatched", "discard"));
+
+        mongoTemplate.getCollection(films).aggregate(List.of(porNota, resumen, merge)).allowDiskUse(true).toCollection();
+        movieQueryCache.invalidarTodo();
+        leaderboardService.construir();
+        log.info("Resumen de valoraciones recalculado en {} ms", System.currentTimeMillis() - inicio);
+    }
+
+    //Lanza recalcular como trabajo en segundo plano, que se consulta en /admin/jobs/{id}
+    public Job lanzarRecalculo() {
+        long peliculas = mongoTemplate.estimatedCount(Movie.class);
+        return jobService.lanzar(new Job(JobService.nuevoId(), RECALCULO, "Resumen de valoraciones de todas las películas", peliculas));
+    }
+
+    private static Document sumar(String campo, long delta) {
+        return new Document("$add", List.of(new Document("$ifNull", List.of(campo, 0)), delta));
+    }
+
+    //Media si hay valoraciones; si no, el campo desaparece del documento
+    private static Document media(String suma, String cuenta) {
+        return new Document("$cond", List.of(
+                new Document("$gt", List.of(cuenta, 0)),
+                new Document("$divide", List.of(suma, cuenta)),
+                "$$REMOVE"));
+    }
+
+    //El histograma sin las notas con cero valoraciones; vacío si no hay histograma
+    private static Document sinCeros(String histograma) {
+        return new Document("$arrayToObject", new Document("$filter", new Document()
+                .append("input", new Document("$objectToArray", new Document("$ifNull", List.of(histograma, new Document()))))
+                .append("cond", new Document("$ne", List.of("$$this.v", 0)))));
+    }
+
+    private static Document siHay(Document condicion, Object valor) {
+        return new Document("$cond", List.of(condicion, valor, "$$REMOVE"));
+    }
+}
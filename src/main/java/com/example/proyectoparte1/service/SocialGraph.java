@@ -0,0 +1,300 @@
+package com.example.proyectoparte1.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*Grafo social compacto para "personas que quizá conozcas" y "N amigos en común".
+
+ Los emails se internan como enteros 0..n-1 y las listas de amigos se guardan en formato CSR: un array de vecinos con
+ todas las listas una detrás de otra, ordenadas, y un array de desplazamientos donde empieza la de cada usuario. Así los
+ amigos en común son la intersección de dos tramos ordenados, y las recomendaciones son los amigos de los amigos
+ contados en paralelo con fork/join.
+
+ El grafo es inmutable y se construye a partir de FriendshipIndex, que UserService mantiene al día. Cuando el índice
+ cambia, la siguiente consulta lanza la reconstrucción en segundo plano y responde con el grafo anterior; quien muestre
+ el resultado debe descartar a los que ya sean amigos.*/
+@Component
+public class SocialGraph {
+
+    private static final Logger log = LoggerFactory.getLogger(SocialGraph.class);
+
+    //Número de vecinos a partir del cual el recuento de amigos de amigos se divide entre varias tareas
+    private static final int UMBRAL_PARALELO = 4096;
+
+    public record Candidato(String email, int comunes) {
+    }
+
+    private final FriendshipIndex friendshipIndex;
+    private final AtomicBoolean reconstruyendo = new AtomicBoolean();
+    private volatile Grafo grafo;
+
+    @Autowired
+    public SocialGraph(FriendshipIndex friendshipIndex) {
+        this.friendshipIndex = friendshipIndex;
+    }
+
+    public int amigosEnComun(String email, String otro) {
+        Grafo g = actual();
+        int a = g.id(email);
+        int b = g.id(otro);
+        if (a < 0 || b < 0) {
+            return 0;
+        }
+        return interseccion(g.vecinos, g.desplazamientos[a], g.desplazamientos[a + 1],
+                g.vecinos, g.desplazamientos[b], g.desplazamientos[b + 1]);
+    }
+
+    //Amigos de los amigos del usuario que no son él ni ya amigos suyos, ordenados por amigos en común
+    public List<Candidato> recomendaciones(String email, int limite) {
+        Grafo g = actual();
+        int u = g.id(email);
+        if (u < 0 || limite <= 0) {
+            return List.of();
+        }
+        int inicio = g.desplazamientos[u];
+        int fin = g.desplazamientos[u + 1];
+        Recuento recuento = ForkJoinPool.commonPool().invoke(new ContarAmigosDeAmigos(g, inicio, fin));
+
+        //Los limite mejores con un montículo acotado: el peor arriba para poder sustituirlo
+        PriorityQueue<int[]> mejores = new PriorityQueue<>(limite + 1, (x, y) ->
+                x[1] != y[1] ? Integer.compare(x[1], y[1]) : g.emails[y[0]].compareTo(g.emails[x[0]]));
+        for (int i = 0; i < recuento.tamano; i++) {
+            int candidato = recuento.ids[i];
+            if (candidato == u || Arrays.binarySearch(g.vecinos, inicio, fin, candidato) >= 0) {
+                continue;
+            }
+            mejores.add(new int[]{candidato, recuento.veces[i]});
+            if (mejores.size() > limite) {
+                mejores.poll();
+            }
+        }
+        List<Candidato> resultado = new ArrayList<>(mejores.size());
+        while (!mejores.isEmpty()) {
+            int[] mejor = mejores.poll();
+            resultado.add(new Candidato(g.emails[mejor[0]], mejor[1]));
+        }
+        Collections.reverse(resultado);
+        return resultado;
+    }
+
+    private Grafo actual() {
+        Grafo g = grafo;
+        if (g == null) {
+            //Primera consulta: se construye en el momento
+            synchronized (this) {
+                if (grafo == null) {
+                    grafo = construir();
+                }
+                return grafo;
+            }
+        }
+        if (g.version != friendshipIndex.version() && reconstruyendo.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    grafo = construir();
+                } catch (RuntimeException e) {
+                    log.error("No se pudo reconstruir el grafo social", e);
+                } finally {
+                    reconstruyendo.set(false);
+                }
+            });
+        }
+        return g;
+    }
+
+    private Grafo construir() {
+        long inicio = System.currentTimeMillis();
+        //La versión se lee antes de copiar las listas: si cambian mientras tanto, la próxima consulta reconstruye otra vez
+        long version = friendshipIndex.version();
+
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> emails = new ArrayList<>();
+        List<int[]> filas = new ArrayList<>();
+        long aristas = 0;
+        for (Map.Entry<String, Set<String>> lista : friendshipIndex.listas().entrySet()) {
+            int propietario = internar(lista.getKey(), ids, emails, filas);
+            String[] amigos = lista.getValue().toArray(new String[0]);
+            int[] fila = new int[amigos.length];
+            for (int i = 0; i < amigos.length; i++) {
+                fila[i] = internar(amigos[i], ids, emails, filas);
+            }
+            Arrays.sort(fila);
+            filas.set(propietario, fila);
+            aristas += fila.length;
+        }
+
+        int n = emails.size();
+        int[] desplazamientos = new int[n + 1];
+        int[] vecinos = new int[Math.toIntExact(aristas)];
+        for (int i = 0; i < n; i++) {
+            int[] fila = filas.get(i);
+            System.arraycopy(fila, 0, vecinos, desplazamientos[i], fila.length);
+            desplazamientos[i + 1] = desplazamientos[i] + fila.length;
+        }
+        log.info("Grafo social construido: {} usuarios, {} relaciones en {} ms", n, aristas, System.currentTimeMillis() - inicio);
+        return new Grafo(version, emails.toArray(new String[0]), ids, desplazamientos, vecinos);
+    }
+
+    private static final int[] SIN_AMIGOS = new int[0];
+
+    private static int internar(String email, Map<String, Integer> ids, List<String> emails, List<int[]> filas) {
+        Integer id = ids.get(email);
+        if (id == null) {
+            id = emails.size();
+            ids.put(email, id);
+            emails.add(email);
+            filas.add(SIN_AMIGOS);
+        }
+        return id;
+    }
+
+    //Tamaño de la intersección de dos tramos ordenados; si uno es mucho más corto se buscan sus elementos en el otro
+    private static int interseccion(int[] a, int desdeA, int hastaA, int[] b, int desdeB, int hastaB) {
+        int tamanoA = hastaA - desdeA;
+        int tamanoB = hastaB - desdeB;
+        if (tamanoA > tamanoB) {
+            return interseccion(b, desdeB, hastaB, a, desdeA, hastaA);
+        }
+        int comunes = 0;
+        if (tamanoA * 32 < tamanoB) {
+            for (int i = desdeA; i < hastaA; i++) {
+                if (Arrays.binarySearch(b, desdeB, hastaB, a[i]) >= 0) {
+                    comunes++;
+                }
+            }
+            return comunes;
+        }
+        int i = desdeA;
+        int j = desdeB;
+        while (i < hastaA && j < hastaB) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                comunes++;
+                i++;
+                j++;
+            }
+        }
+        return comunes;
+    }
+
+    private static final class Grafo {
+        private final long version;
+        private final String[] emails;
+        private final Map<String, Integer> ids;
+        private final int[] desplazamientos;
+        private final int[] vecinos;
+
+        private Grafo(long version, String[] emails, Map<String, Integer> ids, int[] desplazamientos, int[] vecinos) {
+            this.version = version;
+            this.emails = emails;
+            this.ids = ids;
+            this.desplazamientos = desplazamientos;
+            this.vecinos = vecinos;
+        }
+
+        private int id(String email) {
+            Integer id = ids.get(email);
+            return id == null ? -1 : id;
+        }
+    }
+
+    //Ids distintos ordenados con las veces que aparece cada uno
+    private record Recuento(int[] ids, int[] veces, int tamano) {
+    }
+
+    /*Cuenta cuántas veces aparece cada usuario en las listas de los amigos de las posiciones [desde, hasta) del array de
+     vecinos. Cada hoja concatena y ordena sus listas y las comprime en (id, veces); las tareas padre mezclan los dos
+     recuentos ordenados sumando las veces.*/
+    private static final class ContarAmigosDeAmigos extends RecursiveTask<Recuento> {
+        private final Grafo g;
+        private final int desde;
+        private final int hasta;
+
+        private ContarAmigosDeAmigos(Grafo g, int desde, int hasta) {
+            this.g = g;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected Recuento compute() {
+            int total = 0;
+            for (int i = desde; i < hasta; i++) {
+                int amigo = g.vecinos[i];
+                total += g.desplazamientos[amigo + 1] - g.desplazamientos[amigo];
+            }
+            if (total <= UMBRAL_PARALELO || hasta - desde == 1) {
+                return contar(total);
+            }
+            int medio = (desde + hasta) >>> 1;
+            ContarAmigosDeAmigos izquierda = new ContarAmigosDeAmigos(g, desde, medio);
+            izquierda.fork();
+            Recuento derecha = new ContarAmigosDeAmigos(g, medio, hasta).compute();
+            return mezclar(izquierda.join(), derecha);
+        }
+
+        private Recuento contar(int total) {
+            int[] todos = new int[total];
+            int posicion = 0;
+            for (int i = desde; i < hasta; i++) {
+                int amigo = g.vecinos[i];
+                int inicio = g.desplazamientos[amigo];
+                int longitud = g.desplazamientos[amigo + 1] - inicio;
+                System.arraycopy(g.vecinos, inicio, todos, posicion, longitud);
+                posicion += longitud;
+            }
+            Arrays.sort(todos);
+            int[] ids = new int[total];
+            int[] veces = new int[total];
+            int tamano = 0;
+            for (int i = 0; i < total; i++) {
+                if (tamano > 0 && ids[tamano - 1] == todos[i]) {
+                    veces[tamano - 1]++;
+                } else {
+                    ids[tamano] = todos[i];
+                    veces[tamano] = 1;
+                    tamano++;
+                }
+            }
+            return new Recuento(ids, veces, tamano);
+        }
+
+        private static Recuento mezclar(Recuento a, Recuento b) {
+            int[] ids = new int[a.tamano + b.tamano];
+            int[] veces = new int[a.tamano + b.tamano];
+            int i = 0;
+            int j = 0;
+            int tamano = 0;
+            while (i < a.tamano || j < b.tamano) {
+                if (j == b.tamano || (i < a.tamano && a.ids[i] < b.ids[j])) {
+                    ids[tamano] = a.ids[i];
+                    veces[tamano++] = a.veces[i++];
+                } else if (i == a.tamano || b.ids[j] < a.ids[i]) {
+                    ids[tamano] = b.ids[j];
+                    veces[tamano++] = b.veces[j++];
+                } else {
+                    ids[tamano] = a.ids[i];
+                    veces[tamano++] = a.veces[i++] + b.veces[j++];
+                }
+            }
+            return new Recuento(ids, veces, tamano);
+        }
+    }
+}
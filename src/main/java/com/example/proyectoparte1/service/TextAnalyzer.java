@@ -0,0 +1,46 @@
+package com.example.proyectoparte1.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+//Normalización y tokenización del texto que se indexa en memoria (búsqueda y autocompletado)
+public final class TextAnalyzer {
+
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    //Palabras demasiado frecuentes como para aportar algo a la relevancia
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "he", "her", "his", "in", "is", "it",
+            "its", "of", "on", "or", "she", "that", "the", "their", "they", "this", "to", "was", "who", "with",
+            "de", "del", "el", "en", "la", "las", "los", "un", "una", "y"
+    );
+
+    private TextAnalyzer() {}
+
+    //Minúsculas y sin tildes, para que "Amélie" y "amelie" coincidan
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinTildes = MARCAS_DIACRITICAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinTildes.toLowerCase(Locale.ROOT);
+    }
+
+    public static List<String> tokenizar(String texto) {
+        List<String> tokens = new ArrayList<>();
+        if (texto == null || texto.isBlank()) {
+            return tokens;
+        }
+        for (String token : SEPARADORES.split(normalizar(texto))) {
+            if (!token.isEmpty() && !STOPWORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,31 +1,92 @@
 package com.example.proyectoparte1.service;
 
+import com.example.proyectoparte1.model.Assessment;
+import com.example.proyectoparte1.model.FriendRecommendation;
+import com.example.proyectoparte1.model.Job;
 import com.example.proyectoparte1.model.User;
 import com.example.proyectoparte1.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
+    //Nombre que queda en los comentarios anonimizados de un usuario eliminado
+    private static final String USUARIO_ELIMINADO = "Usuario eliminado";
+
+    //Tipo del trabajo que anonimiza o borra los comentarios de un usuario eliminado
+    private static final String BORRADO_USUARIO = "user-delete";
+
     private final UserRepository userRepository;
+    private final EtagService etagService;
+    private final MongoTemplate mongoTemplate;
+    private final JobService jobService;
+    private final RatingService ratingService;
+    private final FriendshipIndex friendshipIndex;
+    private final SocialGraph socialGraph;
+    private final PropagationService propagationService;
+    private final AuthenticationService authenticationService;
+    private final PatchEngine patchEngine;
+    private final boolean borrarComentarios;
+    private final int loteComentarios;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, EtagService etagService, MongoTemplate mongoTemplate,
+                       JobService jobService, RatingService ratingService, FriendshipIndex friendshipIndex, SocialGraph socialGraph,
+                       PropagationService propagationService, AuthenticationService authenticationService,
+                       PatchEngine patchEngine,
+                       @Value("${users.delete.comments:anonymize}") String politicaComentarios,
+                       @Value("${users.delete.comments-batch-size:1000}") int loteComentarios) {
         this.userRepository = userRepository;
+        this.etagService = etagService;
+        this.mongoTemplate = mongoTemplate;
+        this.jobService = jobService;
+        this.ratingService = ratingService;
+        this.friendshipIndex = friendshipIndex;
+        this.socialGraph = socialGraph;
+        this.propagationService = propagationService;
+        this.authenticationService = authenticationService;
+        this.patchEngine = patchEngine;
+        this.borrarComentarios = switch (politicaComentarios.trim().toLowerCase(Locale.ROOT)) {
+            case "delete" -> true;
+            case "anonymize" -> false;
+            default -> throw new IllegalArgumentException("users.delete.comments debe ser anonymize o delete: " + politicaComentarios);
+        };
+        this.loteComentarios = loteComentarios;
     }
 
     public User obtenerUsuario(String email) {
         return userRepository.findById(email).orElse(null);
     }
 
+    //Versión actual del usuario sin cargar el documento, null si no existe
+    public String etagUsuario(String email) {
+        return etagService.etag(User.class, email);
+    }
+
     public Page<User> obtenerTodosUsuarios(int page, int size, String sortBy, String direction) {
         //Creamos el objeto Pageable
         PageRequest pageable = PageRequest.of(page, size, Sort.Direction.fromString(direction), sortBy);
@@ -33,88 +94,209 @@ public class UserService {
     }
 
     public User crearUsuario(User user) {
-        return userRepository.save(user);
+        User guardado = userRepository.save(user);
+        authenticationService.invalidar(guardado.getEmail());
+        friendshipIndex.reemplazar(guardado.getEmail(), guardado.getFriends());
+        return guardado;
+    }
+
+    /*Elimina al usuario y todas sus referencias. Se quita de la lista de amigos de los demás con un único updateMany
+     ($pull sobre friends, índice friends_id_1) y sus comentarios se anonimizan o se borran, según users.delete.comments,
+     en un trabajo en segundo plano por lotes (índice user_id_1__id_1). Devuelve ese trabajo, que cuenta los documentos
+     afectados en cada paso. El trabajo guarda el email y la política con la que se lanzó, para retomarlo igual tras un
+     reinicio aunque se haya cambiado la configuración.*/
+    public Job eliminarUsuario(User user) {
+        String email = user.getEmail();
+        userRepository.deleteById(email);
+        authenticationService.invalidar(email);
+
+        Update quitarAmigo = new Update()
+                .pull("friends", new Document("_id", email))
+                .set(EtagService.CAMPO, EtagService.nuevaVersion());
+        long amigos = mongoTemplate.updateMulti(new Query(Criteria.where("friends.email").is(email)), quitarAmigo, User.class).getModifiedCount();
+        friendshipIndex.eliminar(email);
+
+        Query comentarios = new Query(Criteria.where("user.email").is(email));
+        long total = mongoTemplate.count(comentarios, Assessment.class);
+        Job job = jobService.lanzar(new Job(JobService.nuevoId(), BORRADO_USUARIO, "Referencias del usuario " + email, total)
+                .parametro("email", email)
+                .parametro("comments", borrarComentarios ? "delete" : "anonymize")
+                .contar("friendsUpdated", amigos));
+        log.info("Usuario {} eliminado: quitado de {} listas de amigos, {} comentarios pendientes de {}",
+                email, amigos, total, borrarComentarios ? "borrar" : "anonimizar");
+        return job;
+    }
+
+    @PostConstruct
+    public void registrarTrabajos() {
+        jobService.registrar(BORRADO_USUARIO, job -> procesarComentarios(job.getParameters().get("email"),
+                "delete".equals(job.getParameters().get("comments")), job));
+    }
+
+    /*Anonimiza o borra los comentarios del usuario por lotes hasta que no queda ninguno con su email, así que al
+     retomarlo solo encuentra los que faltaban y sigue contando desde el progreso guardado.*/
+    private void procesarComentarios(String email, boolean borrar, Job job) {
+        String tipo = borrar ? "commentsDeleted" : "commentsAnonymized";
+        long procesados = job.getProcessed();
+        while (true) {
+            long lote = borrar ? borrarComentarios(email) : anonimizarComentarios(email);
+            if (lote == 0) {
+                break;
+            }
+            procesados += lote;
+            job.setProcessed(procesados).contar(tipo, lote);
+            jobService.guardarProgreso(job);
+        }
+    }
+
+    //Siguiente lote de comentarios del usuario: solo los campos necesarios para procesarlos
+    private List<Assessment> loteComentarios(String email) {
+        Query query = new Query(Criteria.where("user.email").is(email)).limit(loteComentarios);
+        query.fields().include("id", "rating", "movie.id");
+        return mongoTemplate.find(query, Assessment.class);
     }
 
-    public void eliminarUsuario(User user) {
-        String sortBy = "id", direction = "DESC";
-        //Una vez eliminamos al usuario tenemos que mirar todos los usqarios de nuestra BD para ver si el usario eliminado era amigo de alguien
-        PageRequest pageRequest = PageRequest.of(0, 10, Sort.Direction.fromString(direction), sortBy);
-        Page<User> usuariosAmigos = userRepository.findByFriendsEmailContaining(user.getEmail(), pageRequest);
+    //Los comentarios anonimizados dejan de tener email, así que el siguiente lote ya no los incluye
+    private long anonimizarComentarios(String email) {
+        List<String> ids = loteComentarios(email).stream().map(Assessment::getId).toList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Update anonimizar = new Update()
+                .unset("user.email")
+                .set("user.name", USUARIO_ELIMINADO)
+                .set(EtagService.CAMPO, EtagService.nuevaVersion());
+        return mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids).and("user.email").is(email)), anonimizar, Assessment.class).getModifiedCount();
+    }
 
-        if(usuariosAmigos!=null && !usuariosAmigos.isEmpty()){
-            //Recorremos la page eliminando en cada uno de los amigos de los usuarios al user eliminado
-            usuariosAmigos.forEach(userAmigo -> {
-                eliminarAmigo(userAmigo, user);
-            });
+    //Al borrarlos se descuentan sus valoraciones del resumen de cada película
+    private long borrarComentarios(String email) {
+        List<Assessment> lote = loteComentarios(email);
+        if (lote.isEmpty()) {
+            return 0;
         }
-        //Por ultimo eliminamos al usuario de todo
-        userRepository.deleteById(user.getEmail());
+        List<String> ids = lote.stream().map(Assessment::getId).toList();
+        long borrados = mongoTemplate.remove(new Query(Criteria.where("id").in(ids)), Assessment.class).getDeletedCount();
+        //Una sola actualización del resumen por película del lote, con sus valoraciones agrupadas por nota
+        Map<String, Map<Integer, Long>> porPelicula = new HashMap<>();
+        for (Assessment assessment : lote) {
+            if (assessment.getMovie() != null && assessment.getMovie().getId() != null && assessment.getRating() != null) {
+                porPelicula.computeIfAbsent(assessment.getMovie().getId(), id -> new HashMap<>())
+                        .merge(assessment.getRating(), 1L, Long::sum);
+            }
+        }
+        porPelicula.forEach(ratingService::registrarBajas);
+        return borrados;
     }
 
-    public User actualizarUsuario(User usuarioActualizado) {
+    public User actualizarUsuario(User anterior, User usuarioActualizado) {
         /*volver a llamar a findById es innecesario si ya se ha verificado previamente que el usuario existe y no se ha modificado el email (que actúa como ID en la base de datos).
          Si la existencia del usuario ya se confirmó y los campos restringidos (email y birthday) no han cambiado, puedes simplemente llamar a save directamente con usuarioActualizado.*/
 
         //return userRepository.findById(usuarioActualizado.getEmail()).map(user -> userRepository.save(usuarioActualizado)).orElse(null);
-        return userRepository.save(usuarioActualizado);
+        User guardado = userRepository.save(usuarioActualizado);
+        despuesDeModificar(anterior, guardado);
+        return guardado;
     }
 
-    public User eliminarAmigo(User mainUser, User amigoEliminar) {
-        // Obtenemos la lista de amigos del usuario
-        List<User> friendList = mainUser.getFriends();
-
-        // Verificamos que la lista de amigos no sea nula
-        if (friendList != null) {
-            // Filtramos la lista para excluir el amigo a eliminar basado en su ID o email
-            boolean removed = friendList.removeIf(amigo -> amigo.getEmail().equals(amigoEliminar.getEmail()));
-
-            // Si se elimina al amigo, guardamos la lista actualizada
-            if (removed) {
-                mainUser.setFriends(friendList);
-                return userRepository.save(mainUser);
-            }
+    public User parchearUsuario(User anterior, List<Map<String, Object>> updates) {
+        User guardado = patchEngine.aplicar(User.class, anterior.getEmail(), updates);
+        if (guardado != null) {
+            despuesDeModificar(anterior, guardado);
         }
+        return guardado;
+    }
 
-        // Si el usuario a eliminar no estaba en la lista, devolvemos null
-        return null;
+    private void despuesDeModificar(User anterior, User guardado) {
+        //Las credenciales guardadas para el login dejan de valer si cambian la contraseña o los roles
+        if (!Objects.equals(guardado.getPassword(), anterior.getPassword()) || !Objects.equals(guardado.getRoles(), anterior.getRoles())) {
+            authenticationService.invalidar(guardado.getEmail());
+        }
+        //El parche puede haber cambiado la lista de amigos
+        friendshipIndex.reemplazar(guardado.getEmail(), guardado.getFriends());
+        //Los comentarios y las listas de amigos guardan una copia del nombre
+        if (guardado.getName() != null && !guardado.getName().equals(anterior.getName())) {
+            propagationService.programarUsuario(guardado.getEmail(), guardado.getName());
+        }
     }
 
+    /*Alta y baja de amigos con una sola operación atómica sobre la lista friends ($addToSet / $pull), sin leer ni reescribir
+     el documento completo: dos cambios simultáneos en la lista ya no se pisan. Devuelven el usuario con solo email, name
+     y friends (sin contraseña ni roles), o null si no se hizo el cambio.*/
+
+    //null si el usuario no existe o el amigo no está en su lista
+    public User eliminarAmigo(String email, String friendEmail) {
+        Query query = new Query(Criteria.where("email").is(email).and("friends.email").is(friendEmail));
+        Update update = new Update()
+                .pull("friends", new Document("_id", friendEmail))
+                .set(EtagService.CAMPO, EtagService.nuevaVersion());
+        User user = mongoTemplate.findAndModify(proyeccionAmigos(query), update, FindAndModifyOptions.options().returnNew(true), User.class);
+        if (user != null) {
+            friendshipIndex.quitar(email, friendEmail);
+        }
+        return user;
+    }
 
-    public User anhadirAmigo(User mainUser, User friend){
+    //null si el usuario no existe o ya tenía a ese amigo en su lista
+    public User anhadirAmigo(String email, User friend) {
+        //En la lista solo se guarda el email y el nombre del amigo
+        User friendFiltrado = new User();
+        friendFiltrado.setEmail(friend.getEmail());
+        friendFiltrado.setName(friend.getName());
+
+        //La condición sobre friends.email evita duplicados aunque el nombre guardado del amigo sea distinto
+        Query query = new Query(Criteria.where("email").is(email).and("friends.email").ne(friend.getEmail()));
+        Update update = new Update()
+                .addToSet("friends", friendFiltrado)
+                .set(EtagService.CAMPO, EtagService.nuevaVersion());
+        User user = mongoTemplate.findAndModify(proyeccionAmigos(query), update, FindAndModifyOptions.options().returnNew(true), User.class);
+        if (user != null) {
+            friendshipIndex.anhadir(email, friend.getEmail());
+        }
+        return user;
+    }
 
-        List<User> friendsList = mainUser.getFriends(); // Obtenemos la lista actual de amigos
+    public boolean existeUsuario(String email) {
+        return userRepository.existsById(email);
+    }
 
-        // Si la lista de amigos es null, creamos una nueva lista
-        if (friendsList == null) {
-            friendsList = new ArrayList<>();
+    private static Query proyeccionAmigos(Query query) {
+        query.fields().include("email", "name", "friends");
+        return query;
+    }
 
-            //Creamos una nueva instacia de user para guardar en la lista solo el email y el nombre
-            User friendFiltrado = new User();
-            friendFiltrado.setEmail(friend.getEmail());
-            friendFiltrado.setName(friend.getName());
-            friendsList.add(friendFiltrado);
 
+    //Personas que quizá conozca el usuario, con sus amigos en común; los nombres se leen en una sola consulta
+    public List<FriendRecommendation> recomendarAmigos(String email, int limite) {
+        //El grafo puede ir por detrás del índice de amistades: se descartan los que ya son amigos
+        List<SocialGraph.Candidato> candidatos = socialGraph.recomendaciones(email, limite + friendshipIndex.amigos(email).size()).stream()
+                .filter(candidato -> !friendshipIndex.esAmigo(email, candidato.email()))
+                .limit(limite)
+                .toList();
+        if (candidatos.isEmpty()) {
+            return List.of();
+        }
 
-            mainUser.setFriends(friendsList);
-            return userRepository.save(mainUser);
+        Query query = new Query(Criteria.where("email").in(candidatos.stream().map(SocialGraph.Candidato::email).toList()));
+        query.fields().include("email", "name");
+        Map<String, String> nombres = new HashMap<>();
+        for (User user : mongoTemplate.find(query, User.class)) {
+            nombres.put(user.getEmail(), user.getName());
         }
-        else{
-            //En el caso de que ya exista la lista de amigos , miramos si el usuario que queremos anhadir a amigo no lo es ya
-            if(!friendsList.contains(friend)){
-                //Creamos una nueva instacia de user para guardar en la lista solo el email y el nombre
-                User friendFiltrado = new User();
-                friendFiltrado.setEmail(friend.getEmail());
-                friendFiltrado.setName(friend.getName());
-                friendsList.add(friendFiltrado);
-                mainUser.setFriends(friendsList); // Establecemos la lista actualizada de nuevo en el objeto
-                //Guardamos la lista de amigos en la BD
-                return userRepository.save(mainUser);
+
+        List<FriendRecommendation> recomendaciones = new ArrayList<>(candidatos.size());
+        for (SocialGraph.Candidato candidato : candidatos) {
+            //Si ya no existe no se recomienda
+            if (nombres.containsKey(candidato.email())) {
+                recomendaciones.add(new FriendRecommendation(candidato.email(), nombres.get(candidato.email()), candidato.comunes()));
             }
         }
-        return null;
+        return recomendaciones;
     }
 
+    public int amigosEnComun(String email, String otroEmail) {
+        return socialGraph.amigosEnComun(email, otroEmail);
+    }
 
     public Boolean isAmigo(String mainEmail, String friendEmail) {
 
@@ -124,24 +306,8 @@ public class UserService {
           es el propio usuario, y solo necesita verificar si el usuario es amigo del propietario de la información.
         */
 
-        // Recuperamos a los usuarios
-        User mainUser = userRepository.findById(mainEmail).orElse(null);
-        User friendUser = userRepository.findById(friendEmail).orElse(null);
-
-        // Si cualquiera de los usuarios no existe o si en la lista de amigos del user que estamos intentando obtener es null, devolvemos false
-        if (mainUser == null || friendUser == null || friendUser.getFriends() == null) {
-            return false;
-        }
-
-        // Verificamos si mainUser está en la lista de amigos de el usuario objetivo, en este caso friendUser
-        for (User friend : friendUser.getFriends()) {
-            if (friend.getEmail().equals(mainEmail)) { // Compara con mainEmail para ver si el usuario es amigo
-                return true;
-            }
-        }
-
-        // Si no está en la lista, no son amigos
-        return false;
+        // Miramos en el índice en memoria si mainUser está en la lista de amigos del usuario objetivo, en este caso friendUser
+        return friendshipIndex.esAmigo(friendEmail, mainEmail);
     }
 }
 
@@ -0,0 +1,144 @@
+package com.example.proyectoparte1.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/*Latencia de una página de comentarios (la página y su recuento, como hace el repositorio) según crece la colección,
+ comparando la consulta exacta sobre movie._id con el índice (movie._id, rating, _id) frente a la antigua expresión
+ regular sin anclar de findByMovieIdContaining.
+
+ No se ejecuta con el resto de tests: necesita un MongoDB y tarda. Se lanza con
+   ./gradlew test --tests '*AssessmentQueryBenchmarkTest' -Dbenchmark=true
+ y admite -Dbenchmark.mongo=mongodb://host:27017, -Dbenchmark.sizes=100000,1000000,10000000 y
+ -Dbenchmark.regex-max=1000000 (a partir de ese tamaño no se mide la expresión regular, que recorre toda la colección).
+ Trabaja en la base de datos practica1_benchmark, que se elimina al terminar.*/
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AssessmentQueryBenchmarkTest {
+
+    private static final int PELICULAS = 50_000;
+    private static final int USUARIOS = 500_000;
+    private static final int LOTE = 10_000;
+    private static final int REPETICIONES = 200;
+
+    private MongoClient client;
+    private MongoCollection<Document> comments;
+    private final Random random = new Random(42);
+
+    @BeforeAll
+    void conectar() {
+        client = MongoClients.create(System.getProperty("benchmark.mongo", "mongodb://localhost:27017"));
+        comments = client.getDatabase("practica1_benchmark").getCollection("comments");
+        comments.drop();
+        // Los mismos índices que declara IndexManager para comments
+        comments.createIndex(new Document("movie._id", 1).append("rating", 1).append("_id", 1), new IndexOptions().name("movie_id_1_rating_1__id_1"));
+        comments.createIndex(new Document("user._id", 1).append("rating", 1).append("_id", 1), new IndexOptions().name("user_id_1_rating_1__id_1"));
+    }
+
+    @AfterAll
+    void limpiar() {
+        if (client != null) {
+            client.getDatabase("practica1_benchmark").drop();
+            client.close();
+        }
+    }
+
+    @Test
+    void latenciaDePaginaSegunTamano() {
+        long[] tamanos = Arrays.stream(System.getProperty("benchmark.sizes", "100000,1000000,10000000").split(","))
+                .map(String::trim).mapToLong(Long::parseLong).toArray();
+        long maxRegex = Long.parseLong(System.getProperty("benchmark.regex-max", "1000000"));
+
+        System.out.printf("%12s %-8s %10s %10s %10s%n", "comentarios", "consulta", "p50 (ms)", "p95 (ms)", "p99 (ms)");
+        long insertados = 0;
+        for (long tamano : tamanos) {
+            insertados = rellenar(insertados, tamano);
+
+            // Plan de la consulta exacta: debe resolverse con el índice y sin ordenar en memoria
+            Document plan = comments.find(porPelicula(idPelicula(0)))
+                    .sort(new Document("rating", 1).append("_id", 1)).limit(10)
+                    .explain();
+            assertFalse(plan.toJson().contains("COLLSCAN"), "La página de comentarios de una película no usa el índice");
+            assertFalse(plan.toJson().contains("\"SORT\""), "La página de comentarios de una película se ordena en memoria");
+
+            imprimir(tamano, "exacta", medir(pelicula -> porPelicula(pelicula)));
+            if (tamano <= maxRegex) {
+                imprimir(tamano, "regex", medir(pelicula -> new Document("movie._id", new Document("$regex", Pattern.quote(pelicula)))));
+            }
+        }
+    }
+
+    //Inserta comentarios hasta llegar al tamaño pedido; las películas siguen una distribución sesgada como las reales
+    private long rellenar(long desde, long hasta) {
+        List<Document> lote = new ArrayList<>(LOTE);
+        for (long i = desde; i < hasta; i++) {
+            int pelicula = (int) Math.min(PELICULAS - 1, Math.abs(random.nextGaussian()) * PELICULAS / 4);
+            int usuario = random.nextInt(USUARIOS);
+            lote.add(new Document("rating", 1 + random.nextInt(10))
+                    .append("user", new Document("_id", "user" + usuario + "@example.com").append("name", "Usuario " + usuario))
+                    .append("movie", new Document("_id", idPelicula(pelicula)).append("title", "Película " + pelicula))
+                    .append("comment", "Comentario " + i));
+            if (lote.size() == LOTE) {
+                comments.insertMany(lote, new InsertManyOptions().ordered(false));
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            comments.insertMany(lote, new InsertManyOptions().ordered(false));
+        }
+        return hasta;
+    }
+
+    //Página aleatoria de una película aleatoria: la consulta de la página y la del total, como Page del repositorio
+    private double[] medir(Function<String, Bson> filtro) {
+        double[] tiempos = new double[REPETICIONES];
+        for (int i = 0; i < REPETICIONES; i++) {
+            String pelicula = idPelicula((int) Math.min(PELICULAS - 1, Math.abs(random.nextGaussian()) * PELICULAS / 4));
+            int pagina = random.nextInt(5);
+            long inicio = System.nanoTime();
+            comments.find(filtro.apply(pelicula)).sort(new Document("rating", 1).append("_id", 1))
+                    .skip(pagina * 10).limit(10).into(new ArrayList<>());
+            comments.countDocuments(filtro.apply(pelicula));
+            tiempos[i] = (System.nanoTime() - inicio) / 1_000_000.0;
+        }
+        Arrays.sort(tiempos);
+        return tiempos;
+    }
+
+    private static void imprimir(long tamano, String consulta, double[] tiempos) {
+        System.out.printf("%12d %-8s %10.2f %10.2f %10.2f%n", tamano, consulta,
+                percentil(tiempos, 0.50), percentil(tiempos, 0.95), percentil(tiempos, 0.99));
+    }
+
+    private static double percentil(double[] ordenados, double p) {
+        return ordenados[Math.min(ordenados.length - 1, (int) Math.ceil(p * ordenados.length) - 1)];
+    }
+
+    private static Bson porPelicula(String pelicula) {
+        return new Document("movie._id", pelicula);
+    }
+
+    //Ids con el formato de un ObjectId en hexadecimal, como los de las películas reales
+    private static String idPelicula(int numero) {
+        return String.format("%024x", numero);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Assessment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*Mezcla de la portada: orden por fecha entre amigos, lecturas por amigo y caché por tamaño pedido.*/
+class FeedServiceTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private QueryExecutor queryExecutor;
+    private FriendshipIndex friendshipIndex;
+    private FeedService feedService;
+
+    @BeforeEach
+    void preparar() {
+        mongo.insertar("users", new Document("_id", "ana").append("friends", List.of(
+                new Document("_id", "bea"), new Document("_id", "carlos"), new Document("_id", "dani"))));
+        //bea escribe a menudo, carlos una vez, dani nunca; c0 es anterior a que se guardase createdAt
+        mongo.insertar("comments",
+                valoracion("b1", "bea", 10), valoracion("b2", "bea", 8), valoracion("b3", "bea", 6), valoracion("b4", "bea", 1),
+                valoracion("c1", "carlos", 9), new Document("_id", "c0").append("user", new Document("_id", "carlos")));
+
+        MongoTemplate mongoTemplate = mongo.template();
+        queryExecutor = new QueryExecutor(2, 10);
+        friendshipIndex = new FriendshipIndex(mongoTemplate, Duration.ofSeconds(5));
+        feedService = new FeedService(mongoTemplate, friendshipIndex, queryExecutor, new SimpleMeterRegistry(), Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void cerrar() {
+        queryExecutor.cerrar();
+    }
+
+    @Test
+    void mezclaPorFechaConLasQueNoTienenFechaAlFinal() {
+        friendshipIndex.cargar();
+
+        assertEquals(List.of("b1", "c1", "b2", "b3", "b4", "c0"), ids(feedService.obtenerFeed("ana", 10)));
+    }
+
+    @Test
+    void soloSeSigueLeyendoDeLosAmigosQueAportanMasDeUnaValoracion() {
+        friendshipIndex.cargar();
+        int antes = mongo.busquedas();
+
+        assertEquals(List.of("b1", "c1"), ids(feedService.obtenerFeed("ana", 2)));
+        //La última de cada uno de los tres amigos y el resto de bea; con c1 ya está completa y de carlos no se lee más
+        assertEquals(4, mongo.busquedas() - antes);
+    }
+
+    @Test
+    void laPortadaGuardadaSirveParaMenosYSeVuelveAMezclarParaMas() {
+        friendshipIndex.cargar();
+
+        feedService.obtenerFeed("ana", 3);
+        int antes = mongo.busquedas();
+        assertEquals(List.of("b1", "c1"), ids(feedService.obtenerFeed("ana", 2)));
+        assertEquals(antes, mongo.busquedas());
+
+        assertEquals(List.of("b1", "c1", "b2", "b3", "b4"), ids(feedService.obtenerFeed("ana", 5)));
+        assertTrue(mongo.busquedas() > antes);
+    }
+
+    @Test
+    void mientrasSeCargaElIndiceSeLeenLosAmigosDeMongoYNoSeGuarda() {
+        assertEquals(List.of("b1", "c1"), ids(feedService.obtenerFeed("ana", 2)));
+        int antes = mongo.busquedas();
+
+        assertEquals(List.of("b1", "c1"), ids(feedService.obtenerFeed("ana", 2)));
+        assertTrue(mongo.busquedas() > antes);
+    }
+
+    private static Document valoracion(String id, String autor, int dia) {
+        return new Document("_id", id)
+                .append("user", new Document("_id", autor))
+                .append("createdAt", Date.from(Instant.parse("2024-10-01T00:00:00Z").plus(Duration.ofDays(dia))));
+    }
+
+    private static List<String> ids(List<Assessment> feed) {
+        return feed.stream().map(Assessment::getId).toList();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.User;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*Índice de amistades con varias instancias: contador compartido de cambios, recarga y consultas a MongoDB mientras no
+ está al día.*/
+class FriendshipIndexTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private MongoTemplate mongoTemplate;
+    private FriendshipIndex index;
+
+    @BeforeEach
+    void preparar() {
+        mongo.insertar("users",
+                new Document("_id", "ana").append("friends", List.of(new Document("_id", "bea"))),
+                new Document("_id", "bea"),
+                new Document("_id", "carlos").append("friends", List.of(new Document("_id", "ana"))));
+        mongoTemplate = mongo.template();
+        index = new FriendshipIndex(mongoTemplate, Duration.ofSeconds(5));
+        index.cargar();
+    }
+
+    @AfterEach
+    void cerrar() {
+        index.cerrar();
+    }
+
+    @Test
+    void losCambiosDeEstaInstanciaNoObliganARecargar() {
+        index.anhadir("ana", "carlos");
+        int antes = mongo.busquedas();
+
+        index.comprobar();
+
+        assertTrue(index.alDia());
+        //Solo la lectura del contador
+        assertEquals(1, mongo.busquedas() - antes);
+        assertTrue(index.esAmigo("ana", "carlos"));
+    }
+
+    @Test
+    void unCambioDeOtraInstanciaSeVeEnLaSiguienteComprobacion() {
+        otraInstanciaQuitaAmigos("ana");
+        assertTrue(index.esAmigo("ana", "bea"));
+
+        index.comprobar();
+
+        assertTrue(index.alDia());
+        assertFalse(index.esAmigo("ana", "bea"));
+        assertEquals(Set.of(), index.amigos("ana"));
+    }
+
+    @Test
+    void siOtraInstanciaCambioAlgoAntesQueEstaSeConsultaMongoHastaRecargar() {
+        otraInstanciaQuitaAmigos("ana");
+        index.anhadir("carlos", "bea");
+
+        assertFalse(index.alDia());
+        int antes = mongo.busquedas();
+        assertFalse(index.esAmigo("ana", "bea"));
+        assertEquals(1, mongo.busquedas() - antes);
+
+        index.comprobar();
+        assertTrue(index.alDia());
+        assertFalse(index.esAmigo("ana", "bea"));
+    }
+
+    @Test
+    void losCambiosDuranteLaCargaSeConservan() {
+        //El cambio llega mientras se leen los usuarios, que aún no lo tienen
+        mongo.alBuscar(() -> {
+            mongo.alBuscar(() -> { });
+            index.reemplazar("bea", List.of(new User().setEmail("carlos")));
+            index.eliminar("ana");
+        });
+
+        index.cargar();
+
+        assertTrue(index.esAmigo("bea", "carlos"));
+        assertEquals(Set.of(), index.amigos("ana"));
+        assertEquals(Set.of(), index.amigos("carlos"));
+    }
+
+    private void otraInstanciaQuitaAmigos(String email) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(email)), new Update().set("friends", List.of()), "users");
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is("friendships")), new Update().inc("version", 1), "versions");
+    }
+}
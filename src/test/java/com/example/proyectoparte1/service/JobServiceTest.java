@@ -0,0 +1,104 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Job;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*Trabajos guardados en la colección jobs: progreso persistido, reanudación de los que quedaron a medias y reservas.*/
+class JobServiceTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private final List<Long> inicios = new CopyOnWriteArrayList<>();
+    private JobService jobService;
+
+    @BeforeEach
+    void preparar() {
+        jobService = new JobService(mongo.template(), 1);
+        jobService.registrar("prueba", job -> {
+            inicios.add(job.getProcessed());
+            for (long i = job.getProcessed(); i < job.getTotal(); i++) {
+                job.setProcessed(i + 1).contar("hechos", 1);
+                jobService.guardarProgreso(job);
+            }
+        });
+    }
+
+    @AfterEach
+    void cerrar() {
+        jobService.cerrar();
+    }
+
+    @Test
+    void elTrabajoLanzadoSeGuardaConSuProgresoYSuFinal() throws InterruptedException {
+        Job job = jobService.lanzar(new Job(JobService.nuevoId(), "prueba", "Prueba", 3).parametro("movieId", "m1"));
+
+        Job guardado = esperarFin(job.getId());
+        assertEquals(Job.Status.COMPLETED, guardado.getStatus());
+        assertEquals(3, guardado.getProcessed());
+        assertEquals(Map.of("hechos", 3L), guardado.getCounts());
+        assertEquals(Map.of("movieId", "m1"), guardado.getParameters());
+        assertNull(guardado.getLockedUntil());
+    }
+
+    @Test
+    void alArrancarSeRetomaElTrabajoAbandonadoDesdeSuProgreso() throws InterruptedException {
+        mongo.insertar("jobs", pendiente("abandonado", 2, Instant.now().minus(Duration.ofMinutes(1))));
+
+        jobService.arrancar();
+
+        assertEquals(Job.Status.COMPLETED, esperarFin("abandonado").getStatus());
+        assertEquals(List.of(2L), inicios);
+    }
+
+    @Test
+    void noSeTomaUnTrabajoReservadoPorOtraInstancia() throws InterruptedException {
+        mongo.insertar("jobs", pendiente("reservado", 0, Instant.now().plus(Duration.ofMinutes(1))));
+
+        jobService.arrancar();
+        Thread.sleep(200);
+
+        assertEquals(Job.Status.RUNNING, jobService.obtener("reservado").getStatus());
+        assertEquals(List.of(), inicios);
+    }
+
+    @Test
+    void unTipoSinEjecutorNoSeLanza() {
+        assertThrows(IllegalArgumentException.class, () -> jobService.lanzar(new Job(JobService.nuevoId(), "otro", "Otro", 1)));
+        assertEquals(List.of(), jobService.listar());
+    }
+
+    private static Document pendiente(String id, long procesados, Instant reserva) {
+        return new Document("_id", id)
+                .append("type", "prueba")
+                .append("description", "Pendiente")
+                .append("status", "RUNNING")
+                .append("total", 4L)
+                .append("processed", procesados)
+                .append("startedAt", Date.from(Instant.now().minus(Duration.ofHours(1))))
+                .append("lockedUntil", Date.from(reserva));
+    }
+
+    private Job esperarFin(String id) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Job job = jobService.obtener(id);
+            if (job != null && job.getStatus() != Job.Status.RUNNING) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("El trabajo " + id + " no terminó");
+    }
+}
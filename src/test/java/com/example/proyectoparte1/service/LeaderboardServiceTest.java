@@ -0,0 +1,88 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.LeaderboardEntry;
+import com.example.proyectoparte1.model.Movie;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*Recarga en segundo plano de una clasificación que se queda incompleta (K = 2, se guardan 4 películas).*/
+class LeaderboardServiceTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private LeaderboardService leaderboard;
+
+    @BeforeEach
+    void preparar() {
+        leaderboard = new LeaderboardService(mongo.template(), 2, 0);
+        //m5 no cabe y la clasificación deja de estar completa
+        for (Movie movie : List.of(pelicula("m1", 50), pelicula("m2", 40), pelicula("m3", 30), pelicula("m4", 25), pelicula("m5", 24))) {
+            leaderboard.actualizar(movie);
+        }
+        mongo.insertar("films", documento("m4", 25), documento("m5", 24), documento("m6", 10));
+    }
+
+    @AfterEach
+    void cerrar() {
+        leaderboard.cerrar();
+    }
+
+    @Test
+    void clasificacionIncompletaSeRecargaSinBloquearLasLecturasNiLosCambios() throws InterruptedException {
+        CountDownLatch cargando = new CountDownLatch(1);
+        CountDownLatch continuar = new CountDownLatch(1);
+        mongo.alBuscar(() -> {
+            cargando.countDown();
+            esperar(continuar);
+        });
+
+        leaderboard.eliminar("m1");
+        leaderboard.eliminar("m2");
+        assertEquals(List.of("m3", "m4"), top());
+        //Con una sola película ya no se garantiza el top 2: empieza la recarga
+        leaderboard.eliminar("m3");
+        assertTrue(cargando.await(5, TimeUnit.SECONDS));
+
+        //Durante la carga se sigue sirviendo la clasificación actual y se aceptan cambios
+        assertEquals(List.of("m4"), top());
+        leaderboard.actualizar(pelicula("m7", 60));
+        leaderboard.eliminar("m4");
+        assertEquals(List.of("m7"), top());
+        continuar.countDown();
+
+        //La recargada incluye lo leído de MongoDB y los cambios que llegaron durante la carga
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (top().size() < 2 && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("m7", "m5"), top());
+    }
+
+    private List<String> top() {
+        return leaderboard.top(LeaderboardService.Criterio.REVIEWS, null, 10).stream().map(LeaderboardEntry::getMovieId).toList();
+    }
+
+    private static void esperar(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Movie pelicula(String id, long valoraciones) {
+        return new Movie().setId(id).setTitle(id).setRatingCount(valoraciones).setRatingSum(valoraciones * 5);
+    }
+
+    private static Document documento(String id, long valoraciones) {
+        return new Document("_id", id).append("title", id).append("ratingCount", valoraciones).append("ratingSum", valoraciones * 5);
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.proyectoparte1.service;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/*MongoTemplate sobre colecciones en memoria, para probar servicios que usan MongoTemplate o un repositorio sin
+ arrancar un MongoDB. Implementa find con igualdad, $in, $ne, $exists, rangos, $or y $and sobre campos (también con
+ puntos), con orden, salto y límite, countDocuments y estimatedDocumentCount; la proyección se ignora. De las
+ escrituras, insertOne, updateOne, updateMany, findOneAndUpdate (estos tres también con upsert) y deleteMany con $set, $unset e
+ $inc, también sobre campos con puntos. Cualquier otra operación lanza UnsupportedOperationException, así que un test
+ que la necesite falla en lugar de dar un resultado falso.*/
+class MongoEnMemoria implements MongoDatabaseFactory {
+
+    private static final CodecRegistry CODECS = MongoClientSettings.getDefaultCodecRegistry();
+
+    private final Map<String, List<Document>> colecciones = new ConcurrentHashMap<>();
+    private volatile Runnable alBuscar = () -> { };
+    private final AtomicInteger busquedas = new AtomicInteger();
+    private final MongoDatabase database = proxy(MongoDatabase.class, (self, metodo, args) -> switch (metodo.getName()) {
+        case "getName" -> "test";
+        case "getCodecRegistry" -> CODECS;
+        case "getCollection" -> coleccion((String) args[0]);
+        default -> {
+            if (metodo.getReturnType() == MongoDatabase.class) {
+                yield self;
+            }
+            throw new UnsupportedOperationException(metodo.toString());
+        }
+    });
+
+    MongoTemplate template() {
+        return new MongoTemplate(this);
+    }
+
+    //Añade los documentos a la colección con ese nombre
+    void insertar(String coleccion, Document... documentos) {
+        colecciones.computeIfAbsent(coleccion, nombre -> new CopyOnWriteArrayList<>()).addAll(List.of(documentos));
+    }
+
+    //Acción que se ejecuta al empezar cada find, para simular escrituras concurrentes con una lectura
+    void alBuscar(Runnable accion) {
+        this.alBuscar = accion;
+    }
+
+    //Número de find ejecutados
+    int busquedas() {
+        return busquedas.get();
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase() {
+        return database;
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase(String dbName) {
+        return database;
+    }
+
+    @Override
+    public PersistenceExceptionTranslator getExceptionTranslator() {
+        return excepcion -> null;
+    }
+
+    @Override
+    public ClientSession getSession(ClientSessionOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MongoDatabaseFactory withSession(ClientSession session) {
+        throw new UnsupportedOperationException();
+    }
+
+    private Object coleccion(String nombre) {
+        return proxy(com.mongodb.client.MongoCollection.class, (self, metodo, args) -> switch (metodo.getName()) {
+            case "getNamespace" -> new MongoNamespace("test", nombre);
+            case "getCodecRegistry" -> CODECS;
+            case "getDocumentClass" -> Document.class;
+            case "find" -> resultados(buscar(nombre, args != null && args.length > 0 && args[0] instanceof Bson filtro ? filtro : null));
+            case "countDocuments" -> (long) buscar(nombre, args != null && args.length > 0 ? (Bson) args[0] : null).size();
+            case "estimatedDocumentCount" -> (long) colecciones.getOrDefault(nombre, List.of()).size();
+            case "insertOne" -> {
+                insertar(nombre, new Document((Document) args[0]));
+                yield InsertOneResult.acknowledged(null);
+            }
+            case "updateOne" -> {
+                boolean upsert = args.length > 2 && args[2] instanceof UpdateOptions opciones && opciones.isUpsert();
+                Document modificado = modificar(nombre, (Bson) args[0], null, (Bson) args[1], false, upsert);
+                yield UpdateResult.acknowledged(modificado == null ? 0 : 1, modificado == null ? 0L : 1L, null);
+            }
+            case "updateMany" -> {
+                long modificados = modificarTodos(nombre, (Bson) args[0], (Bson) args[1]);
+                yield UpdateResult.acknowledged(modificados, modificados, null);
+            }
+            case "findOneAndUpdate" -> {
+                FindOneAndUpdateOptions opciones = args.length > 2 ? (FindOneAndUpdateOptions) args[2] : new FindOneAndUpdateOptions();
+                yield modificar(nombre, (Bson) args[0], (Document) opciones.getSort(), (Bson) args[1],
+                        opciones.getReturnDocument() == ReturnDocument.AFTER, opciones.isUpsert());
+            }
+            case "deleteMany" -> {
+                Document condiciones = (Document) args[0];
+                List<Document> documentos = colecciones.computeIfAbsent(nombre, clave -> new CopyOnWriteArrayList<>());
+                long antes = documentos.size();
+                documentos.removeIf(documento -> cumple(documento, condiciones));
+                yield DeleteResult.acknowledged(antes - documentos.size());
+            }
+            default -> {
+                if (metodo.getReturnType() == com.mongodb.client.MongoCollection.class) {
+                    yield self;
+                }
+                throw new UnsupportedOperationException(metodo.toString());
+            }
+        });
+    }
+
+    private List<Document> buscar(String coleccion, Bson filtro) {
+        alBuscar.run();
+        busquedas.incrementAndGet();
+        Document condiciones = filtro == null ? new Document() : (Document) filtro;
+        List<Document> encontrados = new ArrayList<>();
+        for (Document documento : colecciones.getOrDefault(coleccion, List.of())) {
+            if (cumple(documento, condiciones)) {
+                encontrados.add(new Document(documento));
+            }
+        }
+        return encontrados;
+    }
+
+    /*Aplica la modificación al primero que cumple el filtro; devuelve una copia de cómo estaba, o de cómo queda. Con
+     upsert, si no hay ninguno se crea con las igualdades del filtro.*/
+    private synchronized Document modificar(String coleccion, Bson filtro, Document orden, Bson modificacion, boolean nuevo, boolean upsert) {
+        Document condiciones = (Document) filtro;
+        List<Document> candidatos = colecciones.getOrDefault(coleccion, List.of()).stream()
+                .filter(documento -> cumple(documento, condiciones)).toList();
+        List<Document> ordenados = ordenar(candidatos, orden, 1);
+        if (ordenados.isEmpty()) {
+            if (!upsert) {
+                return null;
+            }
+            Document creado = new Document();
+            condiciones.forEach((campo, valor) -> {
+                if (!campo.startsWith("$") && !(valor instanceof Document)) {
+                    creado.put(campo, valor);
+                }
+            });
+            aplicar(creado, (Document) modificacion);
+            insertar(coleccion, creado);
+            return nuevo ? new Document(creado) : null;
+        }
+        Document documento = ordenados.get(0);
+        Document anterior = new Document(documento);
+        aplicar(documento, (Document) modificacion);
+        return nuevo ? new Document(documento) : anterior;
+    }
+
+    private synchronized long modificarTodos(String coleccion, Bson filtro, Bson modificacion) {
+        Document condiciones = (Document) filtro;
+        long modificados = 0;
+        for (Document documento : colecciones.getOrDefault(coleccion, List.of())) {
+            if (cumple(documento, condiciones)) {
+                aplicar(documento, (Document) modificacion);
+                modificados++;
+            }
+        }
+        return modificados;
+    }
+
+    private static void aplicar(Document documento, Document modificacion) {
+        for (Map.Entry<String, Object> operador : modificacion.entrySet()) {
+            for (Map.Entry<String, Object> campo : ((Document) operador.getValue()).entrySet()) {
+                //Los campos con puntos se modifican dentro del subdocumento, que se crea si no existe
+                String[] ruta = campo.getKey().split("\\.");
+                Document padre = documento;
+                for (int i = 0; i < ruta.length - 1; i++) {
+                    if (!(padre.get(ruta[i]) instanceof Document)) {
+                        padre.put(ruta[i], new Document());
+                    }
+                    padre = (Document) padre.get(ruta[i]);
+                }
+                String nombre = ruta[ruta.length - 1];
+                switch (operador.getKey()) {
+                    case "$set" -> padre.put(nombre, campo.getValue());
+                    case "$unset" -> padre.remove(nombre);
+                    case "$inc" -> padre.put(nombre, padre.get(nombre) instanceof Number actual
+                            ? actual.longValue() + ((Number) campo.getValue()).longValue() : campo.getValue());
+                    default -> throw new UnsupportedOperationException(operador.getKey());
+                }
+            }
+        }
+    }
+
+    private static boolean cumple(Document documento, Document condiciones) {
+        for (Map.Entry<String, Object> condicion : condiciones.entrySet()) {
+            if (condicion.getKey().equals("$or") || condicion.getKey().equals("$and")) {
+                List<?> alternativas = (List<?>) condicion.getValue();
+                boolean alguna = alternativas.stream().anyMatch(alternativa -> cumple(documento, (Document) alternativa));
+                boolean todas = alternativas.stream().allMatch(alternativa -> cumple(documento, (Document) alternativa));
+                if (condicion.getKey().equals("$or") ? !alguna : !todas) {
+                    return false;
+                }
+                continue;
+            }
+            List<String> ruta = List.of(condicion.getKey().split("\\."));
+            boolean existe = existe(documento, ruta);
+            Object valor = existe ? documento.getEmbedded(ruta, Object.class) : null;
+            if (condicion.getValue() instanceof Document operadores && operadores.keySet().stream().allMatch(clave -> clave.startsWith("$"))) {
+                for (Map.Entry<String, Object> operador : operadores.entrySet()) {
+                    boolean cumple = switch (operador.getKey()) {
+                        case "$in" -> ((Collection<?>) operador.getValue()).stream().anyMatch(opcion -> igual(valor, opcion));
+                        case "$ne" -> !igual(valor, operador.getValue());
+                        case "$exists" -> existe == (Boolean) operador.getValue();
+                        case "$gt" -> enRango(valor, operador.getValue(), c -> c > 0);
+                        case "$gte" -> enRango(valor, operador.getValue(), c -> c >= 0);
+                        case "$lt" -> enRango(valor, operador.getValue(), c -> c < 0);
+                        case "$lte" -> enRango(valor, operador.getValue(), c -> c <= 0);
+                        default -> throw new UnsupportedOperationException(operador.getKey());
+                    };
+                    if (!cumple) {
+                        return false;
+                    }
+                }
+            } else if (!igual(valor, condicion.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean existe(Document documento, List<String> ruta) {
+        Object actual = documento;
+        for (String parte : ruta) {
+            if (!(actual instanceof Document subdocumento) || !subdocumento.containsKey(parte)) {
+                return false;
+            }
+            actual = subdocumento.get(parte);
+        }
+        return true;
+    }
+
+    //Solo compara valores del mismo tipo (los números entre sí); con tipos distintos no cumple ningún rango
+    private static boolean enRango(Object valor, Object limite, IntPredicate comparacion) {
+        if (valor instanceof Number && limite instanceof Number
+                || valor instanceof Comparable<?> && limite != null && valor.getClass() == limite.getClass()) {
+            return comparacion.test(compararValores(valor, limite));
+        }
+        return false;
+    }
+
+    //Como en MongoDB, un valor de un array también cumple la igualdad
+    private static boolean igual(Object valor, Object esperado) {
+        if (valor instanceof List<?> lista && !(esperado instanceof List<?>)) {
+            return lista.stream().anyMatch(elemento -> Objects.equals(elemento, esperado));
+        }
+        return Objects.equals(valor, esperado);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object resultados(List<Document> documentos) {
+        Document[] orden = {null};
+        int[] salto = {0};
+        int[] limite = {0};
+        return proxy(com.mongodb.client.FindIterable.class, (self, metodo, args) -> {
+            switch (metodo.getName()) {
+                case "sort" -> orden[0] = (Document) args[0];
+                case "skip" -> salto[0] = (Integer) args[0];
+                case "limit" -> limite[0] = (Integer) args[0];
+                case "iterator", "cursor" -> {
+                    return cursor(ordenar(saltar(documentos, orden[0], salto[0]), null, limite[0]).iterator());
+                }
+                case "first" -> {
+                    List<Document> lista = ordenar(saltar(documentos, orden[0], salto[0]), null, limite[0]);
+                    return lista.isEmpty() ? null : lista.get(0);
+                }
+                case "into" -> {
+                    ((Collection<Document>) args[0]).addAll(ordenar(saltar(documentos, orden[0], salto[0]), null, limite[0]));
+                    return args[0];
+                }
+                default -> {
+                }
+            }
+            if (metodo.getReturnType().isInstance(self)) {
+                return self;
+            }
+            throw new UnsupportedOperationException(metodo.toString());
+        });
+    }
+
+    private static List<Document> saltar(List<Document> documentos, Document orden, int salto) {
+        List<Document> lista = ordenar(documentos, orden, 0);
+        return lista.subList(Math.min(salto, lista.size()), lista.size());
+    }
+
+    //Orden de MongoDB para valores del mismo tipo, con los nulos y los campos ausentes antes que cualquier valor
+    private static List<Document> ordenar(List<Document> documentos, Document orden, int limite) {
+        List<Document> lista = new ArrayList<>(documentos);
+        if (orden != null) {
+            Comparator<Document> comparador = (a, b) -> 0;
+            for (Map.Entry<String, Object> campo : orden.entrySet()) {
+                List<String> ruta = List.of(campo.getKey().split("\\."));
+                Comparator<Document> porCampo = Comparator.comparing(documento -> existe(documento, ruta) ? documento.getEmbedded(ruta, Object.class) : null,
+                        Comparator.nullsFirst(MongoEnMemoria::compararValores));
+                comparador = comparador.thenComparing(((Number) campo.getValue()).intValue() < 0 ? porCampo.reversed() : porCampo);
+            }
+            lista.sort(comparador);
+        }
+        //En MongoDB un límite 0 es sin límite
+        return limite > 0 && lista.size() > limite ? lista.subList(0, limite) : lista;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compararValores(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static Object cursor(Iterator<Document> documentos) {
+        return proxy(com.mongodb.client.MongoCursor.class, (self, metodo, args) -> switch (metodo.getName()) {
+            case "hasNext" -> documentos.hasNext();
+            case "next" -> documentos.next();
+            case "tryNext" -> documentos.hasNext() ? documentos.next() : null;
+            case "available" -> documentos.hasNext() ? 1 : 0;
+            case "close" -> null;
+            case "getServerCursor", "getServerAddress" -> null;
+            default -> throw new UnsupportedOperationException(metodo.toString());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> tipo, InvocationHandler manejador) {
+        return (T) Proxy.newProxyInstance(MongoEnMemoria.class.getClassLoader(), new Class<?>[]{tipo}, (self, metodo, args) -> {
+            if (metodo.getDeclaringClass() == Object.class) {
+                return switch (metodo.getName()) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    default -> tipo.getSimpleName() + " en memoria";
+                };
+            }
+            return manejador.invoke(self, metodo, args);
+        });
+    }
+}
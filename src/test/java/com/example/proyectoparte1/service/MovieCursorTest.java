@@ -0,0 +1,122 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.controller.MovieController;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*Predicado de la página siguiente y codificación del cursor de obtenerMoviesCursor. No necesita MongoDB: se comparan
+ los documentos de consulta que genera Criteria.*/
+class MovieCursorTest {
+
+    private static final List<String> FECHA = List.of("releaseDateCustom.year", "releaseDateCustom.month", "releaseDateCustom.day");
+
+    @Test
+    void ordenPorIdSoloComparaElId() {
+        assertEquals(doc("_id", doc("$gt", "b")),
+                MovieService.criterioSiguientePagina(List.of("_id"), Sort.Direction.ASC, List.of("b"), "b").getCriteriaObject());
+        assertEquals(doc("_id", doc("$lt", "b")),
+                MovieService.criterioSiguientePagina(List.of("_id"), Sort.Direction.DESC, List.of("b"), "b").getCriteriaObject());
+    }
+
+    @Test
+    void ascendenteVaDetrasDelValorODesempataPorId() {
+        Document esperado = doc("$or", List.of(
+                doc("title", doc("$gt", "Alien")),
+                doc("$and", List.of(doc("title", "Alien"), doc("_id", doc("$gt", "m7"))))));
+
+        assertEquals(esperado, MovieService.criterioSiguientePagina(List.of("title"), Sort.Direction.ASC, List.of("Alien"), "m7").getCriteriaObject());
+    }
+
+    @Test
+    void descendenteIncluyeLosDocumentosSinValor() {
+        Document esperado = doc("$or", List.of(
+                doc("$or", List.of(doc("title", doc("$lt", "Alien")), doc("title", null))),
+                doc("$and", List.of(doc("title", "Alien"), doc("_id", doc("$lt", "m7"))))));
+
+        assertEquals(esperado, MovieService.criterioSiguientePagina(List.of("title"), Sort.Direction.DESC, List.of("Alien"), "m7").getCriteriaObject());
+    }
+
+    @Test
+    void ultimoSinValorEnAscendenteSigueConLosQueTienenValor() {
+        Document esperado = doc("$or", List.of(
+                doc("title", doc("$ne", null)),
+                doc("$and", List.of(doc("title", null), doc("_id", doc("$gt", "m7"))))));
+
+        assertEquals(esperado, MovieService.criterioSiguientePagina(List.of("title"), Sort.Direction.ASC, Arrays.asList((Object) null), "m7").getCriteriaObject());
+    }
+
+    @Test
+    void ultimoSinValorEnDescendenteSoloDesempataPorId() {
+        // En descendente los nulos van al final, así que después de uno solo quedan otros nulos con un _id anterior
+        Document esperado = doc("$or", List.of(
+                doc("$and", List.of(doc("title", null), doc("_id", doc("$lt", "m7"))))));
+
+        assertEquals(esperado, MovieService.criterioSiguientePagina(List.of("title"), Sort.Direction.DESC, Arrays.asList((Object) null), "m7").getCriteriaObject());
+    }
+
+    @Test
+    void fechaSeComparaPorAnhoMesYDia() {
+        Document esperado = doc("$or", List.of(
+                doc("releaseDateCustom.year", doc("$gt", 1999)),
+                doc("$and", List.of(doc("releaseDateCustom.year", 1999), doc("releaseDateCustom.month", doc("$gt", 3)))),
+                doc("$and", List.of(doc("releaseDateCustom.year", 1999), doc("releaseDateCustom.month", 3),
+                        doc("releaseDateCustom.day", doc("$gt", 31)))),
+                doc("$and", List.of(doc("releaseDateCustom.year", 1999), doc("releaseDateCustom.month", 3),
+                        doc("releaseDateCustom.day", 31), doc("_id", doc("$gt", "m7"))))));
+
+        assertEquals(esperado, MovieService.criterioSiguientePagina(FECHA, Sort.Direction.ASC, List.of(1999, 3, 31), "m7").getCriteriaObject());
+    }
+
+    @Test
+    void cursorConservaValoresYTipos() {
+        ObjectId id = new ObjectId();
+        String cursor = MovieService.codificarCursor(FECHA, Sort.Direction.DESC, Arrays.asList(1999, null, 31), id);
+
+        Document posicion = MovieService.decodificarCursor(cursor, FECHA, Sort.Direction.DESC);
+
+        assertEquals(Arrays.asList(1999, null, 31), posicion.getList("v", Object.class));
+        assertEquals(id, posicion.get("id"));
+    }
+
+    @Test
+    void cursorDeOtraOrdenacionNoSeAcepta() {
+        String cursor = MovieService.codificarCursor(List.of("title"), Sort.Direction.ASC, List.of("Alien"), "m7");
+
+        assertThrows(IllegalArgumentException.class, () -> MovieService.decodificarCursor(cursor, List.of("title"), Sort.Direction.DESC));
+        assertThrows(IllegalArgumentException.class, () -> MovieService.decodificarCursor(cursor, FECHA, Sort.Direction.ASC));
+    }
+
+    @Test
+    void cursorMalFormadoNoSeAcepta() {
+        String sinValores = Base64.getUrlEncoder().encodeToString("{\"s\": \"title\", \"d\": \"ASC\", \"id\": \"m7\"}".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, () -> MovieService.decodificarCursor("%%%", List.of("title"), Sort.Direction.ASC));
+        assertThrows(IllegalArgumentException.class, () -> MovieService.decodificarCursor("bm8gZXMganNvbg", List.of("title"), Sort.Direction.ASC));
+        assertThrows(IllegalArgumentException.class, () -> MovieService.decodificarCursor(sinValores, List.of("title"), Sort.Direction.ASC));
+    }
+
+    @Test
+    void cursorMalFormadoDevuelve400() {
+        // El cursor se comprueba antes de consultar la base de datos, así que el servicio no necesita sus dependencias
+        MovieService movieService = new MovieService(null, null, null, null, null, null, null, null, null, null, 0, 0);
+        MovieController controller = new MovieController(movieService, null, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, controller.obtenerTodasPeliculas(null, null, null, null, null, 0, 10,
+                "releaseDate", "ASC", true, "%%%").getStatusCode());
+    }
+
+    private static Document doc(String clave, Object valor) {
+        return new Document(clave, valor);
+    }
+}
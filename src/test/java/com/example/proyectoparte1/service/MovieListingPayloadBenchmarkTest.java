@@ -0,0 +1,168 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.MovieSummaryView;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*Bytes por página del listado de películas: una página por defecto (orden por título, 10 películas) con los documentos
+ completos, como se leían antes, frente a la misma página con solo los campos de MovieSummaryView.CAMPOS, que es lo que
+ pide ahora obtenerTodasMovies. El tamaño se mide en el servidor con $bsonSize sobre cada documento de la página.
+
+ No se ejecuta con el resto de tests: necesita un MongoDB 4.4 o posterior. Se lanza con
+   ./gradlew test --tests '*MovieListingPayloadBenchmarkTest' -Dbenchmark=true
+ y admite -Dbenchmark.mongo=mongodb://host:27017 y -Dbenchmark.movies=20000 (películas del catálogo generado).
+ Trabaja en la base de datos practica1_benchmark, que se elimina al terminar.*/
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MovieListingPayloadBenchmarkTest {
+
+    private static final int TAMANO_PAGINA = 10;
+    private static final int PAGINAS = 50;
+    private static final int LOTE = 1_000;
+    private static final List<String> GENEROS = List.of("Drama", "Comedy", "Thriller", "Action", "Romance", "Horror",
+            "Documentary", "Animation", "Crime", "Science Fiction", "Adventure", "Family");
+
+    private MongoClient client;
+    private MongoCollection<Document> films;
+    private final Random random = new Random(42);
+
+    @BeforeAll
+    void conectar() {
+        client = MongoClients.create(System.getProperty("benchmark.mongo", "mongodb://localhost:27017"));
+        films = client.getDatabase("practica1_benchmark").getCollection("films");
+        films.drop();
+        // El mismo índice que declara IndexManager para la ordenación por defecto
+        films.createIndex(new Document("title", 1).append("_id", 1), new IndexOptions().name("title_1__id_1"));
+        rellenar(Integer.parseInt(System.getProperty("benchmark.movies", "20000")));
+    }
+
+    @AfterAll
+    void limpiar() {
+        if (client != null) {
+            client.getDatabase("practica1_benchmark").drop();
+            client.close();
+        }
+    }
+
+    @Test
+    void bytesPorPagina() {
+        long total = films.countDocuments();
+        int paginas = (int) Math.min(PAGINAS, total / TAMANO_PAGINA);
+        long completos = 0;
+        long proyectados = 0;
+        long maximoCompleto = 0;
+        long maximoProyectado = 0;
+        for (int i = 0; i < paginas; i++) {
+            int pagina = random.nextInt((int) (total / TAMANO_PAGINA));
+            long completo = bytesPagina(pagina, false);
+            long proyectado = bytesPagina(pagina, true);
+            completos += completo;
+            proyectados += proyectado;
+            maximoCompleto = Math.max(maximoCompleto, completo);
+            maximoProyectado = Math.max(maximoProyectado, proyectado);
+        }
+
+        System.out.printf("%d películas, %d páginas de %d al azar%n", total, paginas, TAMANO_PAGINA);
+        System.out.printf("%-22s %14s %14s%n", "", "media (bytes)", "máximo (bytes)");
+        System.out.printf("%-22s %14d %14d%n", "documentos completos", completos / paginas, maximoCompleto);
+        System.out.printf("%-22s %14d %14d%n", "campos del resumen", proyectados / paginas, maximoProyectado);
+        System.out.printf("reducción: %.1f%%%n", 100.0 * (completos - proyectados) / completos);
+
+        assertTrue(proyectados < completos, "La proyección del listado no reduce el tamaño de la página");
+    }
+
+    //Suma de $bsonSize de los documentos de una página del orden por defecto, completos o con los campos del resumen
+    private long bytesPagina(int pagina, boolean proyectar) {
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$sort", new Document("title", 1)));
+        pipeline.add(new Document("$skip", pagina * TAMANO_PAGINA));
+        pipeline.add(new Document("$limit", TAMANO_PAGINA));
+        if (proyectar) {
+            Document campos = new Document();
+            for (String campo : MovieSummaryView.CAMPOS) {
+                campos.append(campo, 1);
+            }
+            pipeline.add(new Document("$project", campos));
+        }
+        pipeline.add(new Document("$group", new Document("_id", null)
+                .append("bytes", new Document("$sum", new Document("$bsonSize", "$$ROOT")))));
+        Document resultado = films.aggregate(pipeline).first();
+        return resultado == null ? 0 : ((Number) resultado.get("bytes")).longValue();
+    }
+
+    //Catálogo con el tamaño de una ficha real: reparto y equipo largos, palabras clave, productoras y recursos
+    private void rellenar(int peliculas) {
+        List<Document> lote = new ArrayList<>(LOTE);
+        for (int i = 0; i < peliculas; i++) {
+            lote.add(pelicula(i));
+            if (lote.size() == LOTE) {
+                films.insertMany(lote, new InsertManyOptions().ordered(false));
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            films.insertMany(lote, new InsertManyOptions().ordered(false));
+        }
+    }
+
+    private Document pelicula(int numero) {
+        List<Document> cast = new ArrayList<>();
+        for (int i = 0, n = 20 + random.nextInt(280); i < n; i++) {
+            cast.add(new Document("_id", "person" + random.nextInt(1_000_000))
+                    .append("name", "Actor " + random.nextInt(1_000_000))
+                    .append("country", "Spain")
+                    .append("picture", "https://image.example.com/people/" + random.nextInt(1_000_000) + ".jpg")
+                    .append("character", "Personaje " + i));
+        }
+        List<Document> crew = new ArrayList<>();
+        for (int i = 0, n = 10 + random.nextInt(140); i < n; i++) {
+            crew.add(new Document("_id", "person" + random.nextInt(1_000_000))
+                    .append("name", "Técnico " + random.nextInt(1_000_000))
+                    .append("job", i == 0 ? "Director" : "Crew"));
+        }
+        List<String> keywords = new ArrayList<>();
+        for (int i = 0, n = 5 + random.nextInt(25); i < n; i++) {
+            keywords.add("keyword" + random.nextInt(20_000));
+        }
+        List<Document> producers = new ArrayList<>();
+        for (int i = 0, n = 1 + random.nextInt(6); i < n; i++) {
+            producers.add(new Document("name", "Productora " + random.nextInt(5_000))
+                    .append("logo", "https://image.example.com/logos/" + random.nextInt(5_000) + ".png")
+                    .append("country", "US"));
+        }
+        List<Document> resources = List.of(
+                new Document("url", "https://image.example.com/posters/" + numero + ".jpg").append("type", "POSTER"),
+                new Document("url", "https://image.example.com/backdrops/" + numero + ".jpg").append("type", "BACKDROP"));
+
+        return new Document("title", "Película " + numero)
+                .append("overview", "Sinopsis de la película " + numero + ". " + "Lorem ipsum dolor sit amet. ".repeat(10 + random.nextInt(20)))
+                .append("tagline", "Lema de la película " + numero)
+                .append("genres", List.of(GENEROS.get(random.nextInt(GENEROS.size())), GENEROS.get(random.nextInt(GENEROS.size()))))
+                .append("releaseDateCustom", new Document("day", 1 + random.nextInt(28)).append("month", 1 + random.nextInt(12))
+                        .append("year", 1950 + random.nextInt(75)))
+                .append("keywords", keywords)
+                .append("producers", producers)
+                .append("crew", crew)
+                .append("cast", cast)
+                .append("resources", resources)
+                .append("budget", (long) random.nextInt(200_000_000))
+                .append("revenue", (long) random.nextInt(900_000_000))
+                .append("runtime", 80 + random.nextInt(100))
+                .append("status", "RELEASED");
+    }
+}
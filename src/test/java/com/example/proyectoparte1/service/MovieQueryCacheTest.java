@@ -0,0 +1,83 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Movie;
+import com.example.proyectoparte1.model.MovieFacets;
+import com.example.proyectoparte1.model.MovieFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*Invalidación de la caché del listado cuando una escritura coincide con una consulta en curso.*/
+class MovieQueryCacheTest {
+
+    private static final MovieFilter DRAMA = new MovieFilter(null, "drama", null, null, null);
+    private static final MovieFilter COMEDIA = new MovieFilter(null, "comedy", null, null, null);
+
+    private MovieQueryCache cache;
+    private final AtomicInteger consultas = new AtomicInteger();
+
+    @BeforeEach
+    void preparar() {
+        cache = new MovieQueryCache(new SimpleMeterRegistry(), 1 << 20, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void escrituraDuranteLaConsultaDeUnFiltroAfectadoNoDejaElResultadoGuardado() {
+        Movie drama = new Movie().setId("m1").setGenres(List.of("Drama"));
+
+        cache.obtenerFacetas(DRAMA, () -> {
+            cache.invalidar(null, drama);
+            return facetas();
+        });
+        cache.obtenerFacetas(DRAMA, this::facetas);
+
+        assertEquals(2, consultas.get());
+    }
+
+    @Test
+    void escrituraDeOtroFiltroNoImpideGuardarElResultado() {
+        Movie comedia = new Movie().setId("m2").setGenres(List.of("Comedy"));
+
+        cache.obtenerFacetas(DRAMA, () -> {
+            cache.invalidar(null, comedia);
+            cache.invalidarValoraciones(comedia);
+            return facetas();
+        });
+        cache.obtenerFacetas(DRAMA, this::facetas);
+
+        assertEquals(1, consultas.get());
+    }
+
+    @Test
+    void soloSeInvalidanLosFiltrosQueIncluyenLaPelicula() {
+        cache.obtenerFacetas(DRAMA, this::facetas);
+        cache.obtenerFacetas(COMEDIA, this::facetas);
+
+        cache.invalidar(new Movie().setId("m1").setGenres(List.of("Drama")), null);
+        cache.obtenerFacetas(DRAMA, this::facetas);
+        cache.obtenerFacetas(COMEDIA, this::facetas);
+
+        assertEquals(3, consultas.get());
+    }
+
+    @Test
+    void expresionInvalidaSeConsideraCoincidente() {
+        MovieFilter invalido = new MovieFilter("(", null, null, null, null);
+
+        assertTrue(invalido.coincide(new Movie().setKeywords(List.of("x"))));
+        assertFalse(invalido.coincide(new Movie()));
+    }
+
+    private MovieFacets facetas() {
+        consultas.incrementAndGet();
+        return new MovieFacets();
+    }
+}
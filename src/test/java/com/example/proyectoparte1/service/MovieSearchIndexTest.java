@@ -0,0 +1,95 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Movie;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*Ranking BM25 del buscador y construcción del índice mientras llegan escrituras.*/
+class MovieSearchIndexTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private MovieSearchIndex index;
+
+    @BeforeEach
+    void preparar() {
+        index = new MovieSearchIndex(mongo.template());
+    }
+
+    @Test
+    void elTituloPesaMasQueLaSinopsis() {
+        index.indexar(pelicula("sinopsis", "Otra cosa", "A story about a dragon"));
+        index.indexar(pelicula("titulo", "Dragon", "A story about something"));
+
+        assertEquals(List.of("titulo", "sinopsis"), index.buscar("dragon", 0, 10).ids());
+    }
+
+    @Test
+    void elTerminoRaroPesaMasQueElComun() {
+        index.indexar(pelicula("comun", "Love", null));
+        index.indexar(pelicula("raro", "Dragon", null));
+        index.indexar(pelicula("otra1", "Love story", null));
+        index.indexar(pelicula("otra2", "Love again", null));
+
+        assertEquals("raro", index.buscar("love dragon", 0, 1).ids().get(0));
+    }
+
+    @Test
+    void aIgualFrecuenciaGanaElDocumentoMasCorto() {
+        index.indexar(pelicula("largo", "Dragon", "one two three four five six seven eight nine ten"));
+        index.indexar(pelicula("corto", "Dragon", "one"));
+
+        assertEquals(List.of("corto", "largo"), index.buscar("dragon", 0, 10).ids());
+    }
+
+    @Test
+    void paginaYTotalDeResultados() {
+        for (int i = 0; i < 5; i++) {
+            index.indexar(pelicula("m" + i, "Dragon" + " dragon".repeat(i), null));
+        }
+
+        MovieSearchIndex.SearchResult segunda = index.buscar("dragon", 1, 2);
+        assertEquals(List.of("m2", "m1"), segunda.ids());
+        assertEquals(5, segunda.total());
+        assertEquals(List.of(), index.buscar("dragon", 3, 2).ids());
+    }
+
+    @Test
+    void laPeliculaModificadaOBorradaDejaDeCoincidirConLoAnterior() {
+        index.indexar(pelicula("m1", "Dragon", null));
+        index.indexar(pelicula("m2", "Dragon", null));
+
+        index.indexar(pelicula("m1", "Castle", null));
+        index.eliminar("m2");
+
+        assertEquals(List.of(), index.buscar("dragon", 0, 10).ids());
+        assertEquals(List.of("m1"), index.buscar("castle", 0, 10).ids());
+    }
+
+    @Test
+    void lasEscriturasDuranteLaConstruccionNoSeDeshacen() {
+        mongo.insertar("films",
+                new Document("_id", "m1").append("title", "Dragon"),
+                new Document("_id", "m2").append("title", "Dragon"));
+        //Mientras se lee la colección, m1 se modifica, m2 se borra y m3 se crea; la lectura aún ve los documentos antiguos
+        mongo.alBuscar(() -> {
+            mongo.alBuscar(() -> { });
+            index.indexar(pelicula("m1", "Castle", null));
+            index.eliminar("m2");
+            index.indexar(pelicula("m3", "Dragon", null));
+        });
+
+        index.construir();
+
+        assertEquals(List.of("m3"), index.buscar("dragon", 0, 10).ids());
+        assertEquals(List.of("m1"), index.buscar("castle", 0, 10).ids());
+    }
+
+    private static Movie pelicula(String id, String titulo, String sinopsis) {
+        return new Movie().setId(id).setTitle(titulo).setOverview(sinopsis);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Cast;
+import com.example.proyectoparte1.model.Movie;
+import com.example.proyectoparte1.model.Suggestion;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*Árbol radix del autocompletado: prefijos que parten aristas, popularidad, bajas y construcción con escrituras.*/
+class MovieSuggestIndexTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private MovieSuggestIndex index;
+
+    @BeforeEach
+    void preparar() {
+        index = new MovieSuggestIndex(mongo.template());
+    }
+
+    @Test
+    void sugiereLasClavesQueEmpiezanPorElPrefijoAunqueCorteUnaArista() {
+        index.actualizar(pelicula("m1", "Star Wars"));
+        index.actualizar(pelicula("m2", "Star Trek"));
+        index.actualizar(pelicula("m3", "Stardust"));
+
+        assertEquals(List.of("Stardust", "Star Trek", "Star Wars"), textos(index.sugerir("sta", 10)));
+        assertEquals(List.of("Star Trek"), textos(index.sugerir("Star T", 10)));
+        assertEquals(List.of("Star Wars"), textos(index.sugerir("star w", 10)));
+        assertEquals(List.of(), textos(index.sugerir("stax", 10)));
+    }
+
+    @Test
+    void ignoraMayusculasYTildesYOrdenaPorPopularidad() {
+        index.actualizar(pelicula("m1", "Amélie"));
+        index.actualizar(pelicula("m2", "Alien").setCast(List.of(reparto("Amelia Earhart"))));
+        index.actualizar(pelicula("m3", "Amelia").setCast(List.of(reparto("Amelia Earhart"))));
+
+        List<Suggestion> sugerencias = index.sugerir("AME", 10);
+        assertEquals(List.of("Amelia Earhart", "Amelia", "Amélie"), textos(sugerencias));
+        assertEquals(2, sugerencias.get(0).getWeight());
+        assertEquals(Suggestion.Type.CAST, sugerencias.get(0).getType());
+        assertEquals(1, index.sugerir("ame", 1).size());
+    }
+
+    @Test
+    void alModificarOBorrarSeDescuentaLoQueAportaba() {
+        index.actualizar(pelicula("m1", "Matrix").setCast(List.of(reparto("Keanu Reeves"))));
+        index.actualizar(pelicula("m2", "John Wick").setCast(List.of(reparto("Keanu Reeves"))));
+
+        index.actualizar(pelicula("m1", "Matrix Reloaded").setCast(List.of(reparto("Keanu Reeves"))));
+        index.eliminar("m2");
+
+        assertEquals(List.of("Matrix Reloaded"), textos(index.sugerir("matrix", 10)));
+        assertEquals(1, index.sugerir("keanu", 10).get(0).getWeight());
+        assertEquals(List.of(), textos(index.sugerir("john", 10)));
+    }
+
+    @Test
+    void lasEscriturasDuranteLaConstruccionNoSeDeshacen() {
+        mongo.insertar("films",
+                new Document("_id", "m1").append("title", "Matrix"),
+                new Document("_id", "m2").append("title", "Memento"));
+        //Mientras se lee la colección, m1 se modifica, m2 se borra y m3 se crea; la lectura aún ve los documentos antiguos
+        mongo.alBuscar(() -> {
+            mongo.alBuscar(() -> { });
+            index.actualizar(pelicula("m1", "Matrix Reloaded"));
+            index.eliminar("m2");
+            index.actualizar(pelicula("m3", "Metropolis"));
+        });
+
+        index.construir();
+
+        assertEquals(List.of("Metropolis", "Matrix Reloaded"), textos(index.sugerir("m", 10)));
+    }
+
+    private static Movie pelicula(String id, String titulo) {
+        return new Movie().setId(id).setTitle(titulo);
+    }
+
+    private static Cast reparto(String nombre) {
+        return new Cast(null, nombre, null, null, null, null, null, null);
+    }
+
+    private static List<String> textos(List<Suggestion> sugerencias) {
+        return sugerencias.stream().map(Suggestion::getText).toList();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Assessment;
+import com.example.proyectoparte1.model.DateCustom;
+import com.example.proyectoparte1.model.Movie;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/*Traducción de JSON Patch a operadores de MongoDB: rutas con nombres JSON, condiciones y casos que se dejan a PatchUtils.*/
+class PatchEngineTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private MongoTemplate mongoTemplate;
+    private PatchEngine patchEngine;
+
+    @BeforeEach
+    void preparar() {
+        mongo.insertar("films", new Document("_id", "m1")
+                .append("title", "Matrix")
+                .append("releaseDateCustom", new Document("day", 31).append("month", 3).append("year", 1999))
+                .append("ratingCount", 10L));
+        mongo.insertar("comments", new Document("_id", "c1")
+                .append("rating", 4)
+                .append("comment", "Bien")
+                .append("movie", new Document("_id", "m1")));
+        mongoTemplate = mongo.template();
+        patchEngine = new PatchEngine(mongoTemplate, new ObjectMapper().registerModule(new JavaTimeModule()), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void laRutaUsaElNombreJsonAunqueElCampoSeLlameDistinto() {
+        Movie movie = patchEngine.aplicar(Movie.class, "m1", List.of(
+                operacion("replace", "/releaseDate", Map.of("day", 1, "month", 4, "year", 1999)),
+                operacion("replace", "/title", "The Matrix")));
+
+        assertNotNull(movie);
+        assertEquals(new DateCustom(1, 4, 1999), movie.getReleaseDate());
+        Document guardado = pelicula();
+        assertEquals(new Document("day", 1).append("month", 4).append("year", 1999), guardado.get("releaseDateCustom"));
+        assertEquals("The Matrix", guardado.getString("title"));
+        assertNotNull(guardado.get(EtagService.CAMPO));
+    }
+
+    @Test
+    void addYRemoveDeUnCampo() {
+        assertNotNull(patchEngine.aplicar(Movie.class, "m1", List.of(operacion("add", "/tagline", "Free your mind"))));
+        assertEquals("Free your mind", pelicula().getString("tagline"));
+
+        assertNotNull(patchEngine.aplicar(Movie.class, "m1", List.of(remove("/tagline"))));
+        assertEquals(false, pelicula().containsKey("tagline"));
+    }
+
+    @Test
+    void noSeTraducenElIdNiLosCamposDeSoloLecturaNiLasRutasDesconocidas() {
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(operacion("replace", "/id", "m2"))));
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(operacion("replace", "/ratingCount", 0))));
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(operacion("replace", "/releaseDateCustom", Map.of("year", 2000)))));
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(operacion("replace", "/noExiste", "x"))));
+        assertEquals("Matrix", pelicula().getString("title"));
+    }
+
+    @Test
+    void noSeTraducenOperacionesSolapadasNiOtrasOperaciones() {
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(
+                operacion("replace", "/releaseDate", Map.of("day", 1, "month", 4, "year", 1999)),
+                operacion("replace", "/releaseDate/year", 2000))));
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(Map.of("op", "move", "from", "/title", "path", "/tagline"))));
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(remove("/genres/0"))));
+    }
+
+    @Test
+    void siNoSeCumplenLasCondicionesSeDejaAPatchUtils() {
+        //replace y remove de un campo que no existe dan error en PatchUtils
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(operacion("replace", "/tagline", "x"))));
+        assertNull(patchEngine.aplicar(Movie.class, "m1", List.of(remove("/overview"))));
+        assertNull(patchEngine.aplicar(Movie.class, "otra", List.of(operacion("replace", "/title", "x"))));
+    }
+
+    @Test
+    void soloSeAplicaSiElDocumentoSigueComoEsperaQuienLlama() {
+        List<Map<String, Object>> parche = List.of(operacion("replace", "/rating", 5));
+
+        assertNull(patchEngine.aplicar(Assessment.class, "c1", parche,
+                Criteria.where("rating").is(3).and("movie.id").is("m1")));
+        assertNull(patchEngine.aplicar(Assessment.class, "c1", parche,
+                Criteria.where("rating").is(4).and("movie.id").is("m2")));
+
+        Assessment guardado = patchEngine.aplicar(Assessment.class, "c1", parche,
+                Criteria.where("rating").is(4).and("movie.id").is("m1"));
+        assertNotNull(guardado);
+        assertEquals(5, guardado.getRating());
+    }
+
+    private Document pelicula() {
+        return mongoTemplate.findOne(new Query(Criteria.where("_id").is("m1")), Document.class, "films");
+    }
+
+    private static Map<String, Object> operacion(String op, String ruta, Object valor) {
+        return Map.of("op", op, "path", ruta, "value", valor);
+    }
+
+    private static Map<String, Object> remove(String ruta) {
+        return Map.of("op", "remove", "path", ruta);
+    }
+}
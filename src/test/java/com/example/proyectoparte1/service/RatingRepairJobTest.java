@@ -0,0 +1,59 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.controller.AdminController;
+import com.example.proyectoparte1.model.Job;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*El recálculo del resumen de valoraciones se lanza como trabajo y la respuesta enlaza su progreso.*/
+class RatingRepairJobTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private JobService jobService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void preparar() {
+        mongo.insertar("films", new Document("_id", "m1"), new Document("_id", "m2"));
+        MongoTemplate mongoTemplate = mongo.template();
+        jobService = new JobService(mongoTemplate, 1);
+        RatingService ratingService = new RatingService(mongoTemplate, null, null, jobService);
+        ratingService.registrarTrabajos();
+        mockMvc = MockMvcBuilders.standaloneSetup(new AdminController(null, ratingService, jobService)).build();
+    }
+
+    @AfterEach
+    void cerrar() {
+        jobService.cerrar();
+    }
+
+    @Test
+    void devuelve202ConElEnlaceAlTrabajo() throws Exception {
+        MvcResult resultado = mockMvc.perform(post("/admin/ratings/repair"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.type").value("ratings-repair"))
+                .andExpect(jsonPath("$.total").value(2))
+                .andReturn();
+
+        String ubicacion = resultado.getResponse().getHeader("Location");
+        assertNotNull(ubicacion);
+        String id = ubicacion.substring(ubicacion.lastIndexOf('/') + 1);
+        assertTrue(ubicacion.endsWith("/admin/jobs/" + id));
+        Job job = jobService.obtener(id);
+        assertNotNull(job);
+        assertEquals("ratings-repair", job.getType());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.proyectoparte1.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*Grafo social: amigos en común, recomendaciones ordenadas, recuento en paralelo y reconstrucción tras un cambio.*/
+class SocialGraphTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private FriendshipIndex index;
+    private SocialGraph grafo;
+
+    @BeforeEach
+    void preparar() {
+        index = new FriendshipIndex(mongo.template(), Duration.ofSeconds(5));
+        index.cargar();
+        grafo = new SocialGraph(index);
+    }
+
+    @AfterEach
+    void cerrar() {
+        index.cerrar();
+    }
+
+    @Test
+    void amigosEnComunSegunLasListasDeCadaUno() {
+        amigos("ana", "bea", "carlos", "diego");
+        amigos("eva", "bea", "diego", "fran");
+        amigos("bea", "ana");
+
+        assertEquals(2, grafo.amigosEnComun("ana", "eva"));
+        assertEquals(2, grafo.amigosEnComun("eva", "ana"));
+        assertEquals(0, grafo.amigosEnComun("ana", "bea"));
+        assertEquals(0, grafo.amigosEnComun("ana", "nadie"));
+    }
+
+    @Test
+    void recomiendaAmigosDeAmigosPorAmigosEnComunSinElNiSusAmigos() {
+        amigos("ana", "bea", "carlos", "diego");
+        amigos("bea", "ana", "carlos", "eva", "fran");
+        amigos("carlos", "ana", "eva", "gema");
+        amigos("diego", "eva", "fran", "hugo");
+
+        List<SocialGraph.Candidato> recomendaciones = grafo.recomendaciones("ana", 10);
+
+        //eva está en tres listas; fran en dos; gema y hugo en una, a igualdad por email
+        assertEquals(List.of(
+                new SocialGraph.Candidato("eva", 3),
+                new SocialGraph.Candidato("fran", 2),
+                new SocialGraph.Candidato("gema", 1),
+                new SocialGraph.Candidato("hugo", 1)), recomendaciones);
+        assertEquals(List.of("eva", "fran"), grafo.recomendaciones("ana", 2).stream().map(SocialGraph.Candidato::email).toList());
+        assertEquals(List.of(), grafo.recomendaciones("ana", 0));
+        assertEquals(List.of(), grafo.recomendaciones("nadie", 10));
+    }
+
+    @Test
+    void elRecuentoEnParaleloCoincideConElDirecto() {
+        //80 amigos con 80 amigos cada uno superan el umbral a partir del cual el recuento se reparte entre tareas
+        Map<String, Integer> esperado = new HashMap<>();
+        for (int i = 0; i < 80; i++) {
+            index.anhadir("ana", "amigo" + i);
+            for (int j = 0; j < 80; j++) {
+                String candidato = "usuario" + ((i * 7 + j) % 300);
+                index.anhadir("amigo" + i, candidato);
+                esperado.merge(candidato, 1, Integer::sum);
+            }
+        }
+
+        List<SocialGraph.Candidato> recomendaciones = grafo.recomendaciones("ana", 20);
+
+        List<SocialGraph.Candidato> mejores = new ArrayList<>();
+        esperado.forEach((email, comunes) -> mejores.add(new SocialGraph.Candidato(email, comunes)));
+        mejores.sort(Comparator.comparingInt(SocialGraph.Candidato::comunes).reversed().thenComparing(SocialGraph.Candidato::email));
+        assertEquals(mejores.subList(0, 20), recomendaciones);
+    }
+
+    @Test
+    void trasUnCambioSeReconstruyeEnSegundoPlano() throws InterruptedException {
+        amigos("ana", "bea");
+        amigos("bea", "carlos");
+        assertEquals(List.of(new SocialGraph.Candidato("carlos", 1)), grafo.recomendaciones("ana", 10));
+
+        index.anhadir("bea", "diego");
+
+        //La consulta que detecta el cambio aún puede responder con el grafo anterior
+        for (int i = 0; i < 100 && grafo.recomendaciones("ana", 10).size() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of(new SocialGraph.Candidato("carlos", 1), new SocialGraph.Candidato("diego", 1)),
+                grafo.recomendaciones("ana", 10));
+    }
+
+    private void amigos(String email, String... amigos) {
+        for (String amigo : amigos) {
+            index.anhadir(email, amigo);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.model.Job;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*El trabajo que anonimiza los comentarios de un usuario eliminado se retoma tras un reinicio con el email y la política
+ con los que se lanzó.*/
+class UserDeleteJobTest {
+
+    private final MongoEnMemoria mongo = new MongoEnMemoria();
+    private JobService jobService;
+
+    @BeforeEach
+    void preparar() {
+        //Antes del reinicio ya se había anonimizado c1; quedan c2 y c3, y el comentario de bea no se toca
+        mongo.insertar("comments",
+                new Document("_id", "c1").append("user", new Document("name", "Usuario eliminado")),
+                new Document("_id", "c2").append("user", new Document("_id", "ana").append("name", "Ana")),
+                new Document("_id", "c3").append("user", new Document("_id", "ana").append("name", "Ana")),
+                new Document("_id", "c4").append("user", new Document("_id", "bea").append("name", "Bea")));
+        mongo.insertar("jobs", new Document("_id", "borrado-ana")
+                .append("type", "user-delete")
+                .append("description", "Referencias del usuario ana")
+                .append("parameters", new Document("email", "ana").append("comments", "anonymize"))
+                .append("status", "RUNNING")
+                .append("total", 3L)
+                .append("processed", 1L)
+                .append("counts", new Document("friendsUpdated", 2L).append("commentsAnonymized", 1L))
+                .append("startedAt", Date.from(Instant.now().minus(Duration.ofHours(1))))
+                .append("lockedUntil", Date.from(Instant.now().minus(Duration.ofMinutes(1)))));
+
+        MongoTemplate mongoTemplate = mongo.template();
+        jobService = new JobService(mongoTemplate, 1);
+        //La configuración actual es borrar, pero el trabajo se lanzó para anonimizar
+        UserService userService = new UserService(null, null, mongoTemplate, jobService, null, null, null,
+                null, null, null, "delete", 1);
+        userService.registrarTrabajos();
+    }
+
+    @AfterEach
+    void cerrar() {
+        jobService.cerrar();
+    }
+
+    @Test
+    void alArrancarSeAnonimizanLosComentariosQueFaltabanConLaPoliticaDelTrabajo() throws InterruptedException {
+        jobService.arrancar();
+
+        Job job = esperarFin("borrado-ana");
+        assertEquals(Job.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getProcessed());
+        assertEquals(Map.of("friendsUpdated", 2L, "commentsAnonymized", 3L), job.getCounts());
+        assertEquals(List.of("c1", "c2", "c3"), anonimizados());
+        assertEquals(4, mongo.template().getCollection("comments").countDocuments());
+    }
+
+    private List<String> anonimizados() {
+        Query query = new Query(Criteria.where("user.name").is("Usuario eliminado").and("user._id").exists(false));
+        return mongo.template().find(query, Document.class, "comments")
+                .stream().map(documento -> documento.getString("_id")).sorted().toList();
+    }
+
+    private Job esperarFin(String id) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Job job = jobService.obtener(id);
+            if (job != null && job.getStatus() != Job.Status.RUNNING) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("El trabajo " + id + " no terminó");
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.proyectoparte1.service;
+
+import com.example.proyectoparte1.controller.UserController;
+import com.example.proyectoparte1.model.User;
+import com.example.proyectoparte1.repository.UserRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*La versión de un usuario se busca por su @Id (email, guardado en _id), no por un campo id que User no tiene.*/
+class UserEtagTest {
+
+    private MockMvc mockMvc;
+    private EtagService etagService;
+
+    @BeforeEach
+    void preparar() {
+        MongoEnMemoria mongo = new MongoEnMemoria();
+        mongo.insertar("users", new Document("_id", "ana@example.com").append("name", "Ana").append(EtagService.CAMPO, "v1"));
+        MongoTemplate mongoTemplate = mongo.template();
+
+        etagService = new EtagService(mongoTemplate);
+        UserRepository userRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(UserRepository.class);
+        UserService userService = new UserService(userRepository, etagService, mongoTemplate, null, null, null, null,
+                null, null, null, "anonymize", 1000);
+        mockMvc = MockMvcBuilders.standaloneSetup(new UserController(userService, null, null, null)).build();
+    }
+
+    @Test
+    void etagSeBuscaPorElEmail() {
+        assertEquals("v1", etagService.etag(User.class, "ana@example.com"));
+        assertNull(etagService.etag(User.class, "nadie@example.com"));
+    }
+
+    @Test
+    void obtenerUsuarioDevuelve200ConSuEtag() throws Exception {
+        mockMvc.perform(get("/users/{email}", "ana@example.com"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"v1\""))
+                .andExpect(jsonPath("$.name").value("Ana"));
+    }
+
+    @Test
+    void usuarioQueNoExisteDevuelve404() throws Exception {
+        mockMvc.perform(get("/users/{email}", "nadie@example.com")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void mismaVersionDevuelve304() throws Exception {
+        mockMvc.perform(get("/users/{email}", "ana@example.com").header("If-None-Match", "\"v1\""))
+                .andExpect(status().isNotModified());
+    }
+}